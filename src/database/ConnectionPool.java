@@ -0,0 +1,286 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ograniczona pula połączeń do bazy SQLite.
+ * Połączenia są otwierane leniwie (maksymalnie maxSize), a close() na połączeniu
+ * wydanym z puli nie zamyka fizycznego połączenia, tylko zwraca je do puli.
+ * Każde fizyczne połączenie ma własny StatementCache, więc prepareStatement(sql)
+ * na tym samym SQL zwraca wcześniej przygotowane zapytanie.
+ */
+public class ConnectionPool {
+
+    /**
+     * Fabryka fizycznych połączeń (otwiera nowe połączenie z bazą)
+     */
+    public interface ConnectionFactory {
+        Connection open() throws SQLException;
+    }
+
+    private final ConnectionFactory factory;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final int statementCacheSize;
+
+    private final BlockingQueue<PooledConnection> idle;
+    private final List<PooledConnection> all = new ArrayList<>();
+    private volatile boolean shutdown = false;
+
+    // Statystyki
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong returned = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+
+    public ConnectionPool(ConnectionFactory factory, int maxSize, long acquireTimeoutMillis,
+                          int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Rozmiar puli musi być dodatni: " + maxSize);
+        }
+        this.factory = factory;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.idle = new ArrayBlockingQueue<>(maxSize);
+    }
+
+    /**
+     * Pobiera połączenie z puli. Jeśli wszystkie są zajęte, a pula osiągnęła
+     * maksymalny rozmiar, czeka najwyżej acquireTimeoutMillis.
+     */
+    public Connection borrow() throws SQLException {
+        if (shutdown) {
+            throw new SQLException("Pula połączeń została zamknięta");
+        }
+
+        PooledConnection physical = idle.poll();
+        if (physical == null) {
+            physical = openIfBelowLimit();
+        }
+        if (physical == null) {
+            waits.incrementAndGet();
+            try {
+                physical = idle.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Przerwano oczekiwanie na połączenie z puli", e);
+            }
+            if (physical == null) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Przekroczono czas oczekiwania na połączenie z puli (" +
+                        acquireTimeoutMillis + " ms, rozmiar puli: " + maxSize + ")");
+            }
+        }
+
+        borrowed.incrementAndGet();
+        active.incrementAndGet();
+        return wrap(physical);
+    }
+
+    private PooledConnection openIfBelowLimit() throws SQLException {
+        synchronized (all) {
+            if (all.size() >= maxSize) {
+                return null;
+            }
+            PooledConnection physical = new PooledConnection(factory.open(), statementCacheSize);
+            all.add(physical);
+            opened.incrementAndGet();
+            return physical;
+        }
+    }
+
+    private void release(PooledConnection physical) {
+        active.decrementAndGet();
+        returned.incrementAndGet();
+
+        try {
+            if (physical.connection.isClosed()) {
+                discard(physical);
+                return;
+            }
+            // Przywróć stan domyślny, żeby następny użytkownik dostał "czyste" połączenie
+            physical.statementCache.releaseAll();
+            if (!physical.connection.getAutoCommit()) {
+                physical.connection.rollback();
+                physical.connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            discard(physical);
+            return;
+        }
+
+        if (shutdown || !idle.offer(physical)) {
+            discard(physical);
+        }
+    }
+
+    private void discard(PooledConnection physical) {
+        synchronized (all) {
+            all.remove(physical);
+        }
+        physical.statementCache.closeAll();
+        try {
+            physical.connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Zamyka wszystkie fizyczne połączenia. Połączenia aktualnie wypożyczone
+     * zostaną zamknięte w chwili zwrotu.
+     */
+    public void shutdown() {
+        shutdown = true;
+        PooledConnection physical;
+        while ((physical = idle.poll()) != null) {
+            discard(physical);
+        }
+    }
+
+    public PoolStats getStats() {
+        int total;
+        synchronized (all) {
+            total = all.size();
+        }
+        return new PoolStats(maxSize, total, idle.size(), active.get(), opened.get(),
+                borrowed.get(), returned.get(), waits.get(), timeouts.get());
+    }
+
+    /**
+     * Opakowuje fizyczne połączenie w obiekt, którego close() zwraca połączenie do puli
+     */
+    private Connection wrap(PooledConnection physical) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(physical));
+    }
+
+    /**
+     * Fizyczne połączenie wraz z jego cache zapytań
+     */
+    private static class PooledConnection {
+        private final Connection connection;
+        private final StatementCache statementCache;
+
+        PooledConnection(Connection connection, int statementCacheSize) {
+            this.connection = connection;
+            this.statementCache = new StatementCache(connection, statementCacheSize);
+        }
+    }
+
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final PooledConnection physical;
+        private boolean closed = false;
+
+        PooledConnectionHandler(PooledConnection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || physical.connection.isClosed();
+                case "prepareStatement":
+                    // Tylko wariant prepareStatement(String) korzysta z cache
+                    if (!closed && args.length == 1) {
+                        return physical.statementCache.prepare((String) args[0]);
+                    }
+                    break;
+                case "unwrap":
+                    if (args[0] == Connection.class) {
+                        return proxy;
+                    }
+                    break;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical.connection + "]";
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("Połączenie zostało już zwrócone do puli");
+            }
+            try {
+                return method.invoke(physical.connection, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Migawka statystyk puli połączeń
+     */
+    public static class PoolStats {
+        private final int maxSize;
+        private final int totalConnections;
+        private final int idleConnections;
+        private final int activeConnections;
+        private final int openedConnections;
+        private final long borrowCount;
+        private final long returnCount;
+        private final long waitCount;
+        private final long timeoutCount;
+
+        public PoolStats(int maxSize, int totalConnections, int idleConnections, int activeConnections,
+                         int openedConnections, long borrowCount, long returnCount,
+                         long waitCount, long timeoutCount) {
+            this.maxSize = maxSize;
+            this.totalConnections = totalConnections;
+            this.idleConnections = idleConnections;
+            this.activeConnections = activeConnections;
+            this.openedConnections = openedConnections;
+            this.borrowCount = borrowCount;
+            this.returnCount = returnCount;
+            this.waitCount = waitCount;
+            this.timeoutCount = timeoutCount;
+        }
+
+        public int getMaxSize() { return maxSize; }
+        public int getTotalConnections() { return totalConnections; }
+        public int getIdleConnections() { return idleConnections; }
+        public int getActiveConnections() { return activeConnections; }
+        public int getOpenedConnections() { return openedConnections; }
+        public long getBorrowCount() { return borrowCount; }
+        public long getReturnCount() { return returnCount; }
+        public long getWaitCount() { return waitCount; }
+        public long getTimeoutCount() { return timeoutCount; }
+
+        @Override
+        public String toString() {
+            return String.format("Pula: %d/%d połączeń (aktywne: %d, wolne: %d), otwarte łącznie: %d, " +
+                            "wypożyczenia: %d, zwroty: %d, oczekiwania: %d, przekroczenia czasu: %d",
+                    totalConnections, maxSize, activeConnections, idleConnections, openedConnections,
+                    borrowCount, returnCount, waitCount, timeoutCount);
+        }
+    }
+}
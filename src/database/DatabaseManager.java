@@ -1,30 +1,193 @@
 package database;
 
 import java.sql.*;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 
 public class DatabaseManager {
     private static final String DB_URL = "jdbc:sqlite:database/library.db";
-    private static Connection connection;
+    // Flaga SQLITE_OPEN_READONLY przekazywana do sterownika jako open_mode
+    private static final int SQLITE_OPEN_READONLY = 0x00000001;
 
+    // Maksymalna liczba jednocześnie otwartych połączeń w puli (jedno zajmuje wątek zapisujący)
+    private static final int POOL_SIZE = 3;
+    // Osobna pula połączeń tylko do odczytu (listy, raporty, wyszukiwanie)
+    private static final int READ_POOL_SIZE = 4;
+    // Jak długo czekać na wolne połączenie z puli
+    private static final long POOL_ACQUIRE_TIMEOUT_MS = 10_000;
+    // Liczba przygotowanych zapytań trzymanych w cache każdego połączenia
+    private static final int STATEMENT_CACHE_SIZE = 64;
+    // Group commit - maksymalna liczba operacji i czas zbierania jednej grupy zapisów
+    private static final int WRITE_BATCH_SIZE = 64;
+    private static final long WRITE_BATCH_DELAY_MS = 2;
+
+    // Profil PRAGMA można wybrać przez -Dbiblioteka.db.profile=safe|fast|bulk-load
+    private static volatile PragmaProfile pragmaProfile = profileFromProperty();
+
+    private static ConnectionPool pool;
+    private static ConnectionPool readPool;
+    private static volatile WriteQueue writeQueue;
+
+    // Literówka w nazwie profilu nie może zatrzymać aplikacji (błąd w inicjalizatorze klasy) -
+    // zostaje profil domyślny
+    private static PragmaProfile profileFromProperty() {
+        String name = System.getProperty("biblioteka.db.profile", PragmaProfile.FAST.toString());
+        try {
+            return PragmaProfile.fromName(name);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage() + " - używam profilu " + PragmaProfile.FAST
+                    + " (dostępne: safe, fast, bulk-load)");
+            return PragmaProfile.FAST;
+        }
+    }
+
+    /**
+     * Zwraca połączenie z puli. Wywołanie close() na zwróconym połączeniu
+     * oddaje je do puli zamiast zamykać plik bazy danych.
+     */
     public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            try {
-                Class.forName("org.sqlite.JDBC");
-                connection = DriverManager.getConnection(DB_URL);
-            } catch (ClassNotFoundException e) {
-                throw new SQLException("SQLite JDBC driver not found", e);
-            }
+        return getPool().borrow();
+    }
+
+    /**
+     * Zwraca połączenie tylko do odczytu (flaga SQLITE_OPEN_READONLY + PRAGMA query_only).
+     * Przy WAL odczyty na tych połączeniach nie czekają na zapisy wątku zapisującego.
+     */
+    public static Connection getReadConnection() throws SQLException {
+        return getReadPool().borrow();
+    }
+
+    private static synchronized ConnectionPool getPool() throws SQLException {
+        if (pool == null) {
+            loadDriver();
+            pool = new ConnectionPool(DatabaseManager::openConnection, POOL_SIZE, POOL_ACQUIRE_TIMEOUT_MS,
+                    STATEMENT_CACHE_SIZE);
+        }
+        return pool;
+    }
+
+    private static synchronized ConnectionPool getReadPool() throws SQLException {
+        if (readPool == null) {
+            loadDriver();
+            readPool = new ConnectionPool(DatabaseManager::openReadOnlyConnection, READ_POOL_SIZE,
+                    POOL_ACQUIRE_TIMEOUT_MS, STATEMENT_CACHE_SIZE);
+        }
+        return readPool;
+    }
+
+    private static void loadDriver() throws SQLException {
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite JDBC driver not found", e);
+        }
+    }
+
+    /**
+     * Zwraca kolejkę zapisów. Wszystkie operacje modyfikujące dane powinny
+     * przechodzić przez nią, żeby do bazy pisał tylko jeden wątek.
+     */
+    public static synchronized WriteQueue getWriteQueue() throws SQLException {
+        if (writeQueue == null) {
+            writeQueue = new WriteQueue(getPool().borrow(), WRITE_BATCH_SIZE, WRITE_BATCH_DELAY_MS);
+        }
+        return writeQueue;
+    }
+
+    /**
+     * Wysyła operację zapisu do kolejki zapisów
+     */
+    public static <T> CompletableFuture<T> submitWrite(WriteQueue.WriteCommand<T> command) {
+        try {
+            return getWriteQueue().submit(command);
+        } catch (SQLException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Rejestruje akcję wykonywaną po zatwierdzeniu bieżącej operacji z kolejki zapisów
+     * (poza operacją zapisu - od razu)
+     */
+    public static void afterCommit(Runnable action) {
+        WriteQueue queue = writeQueue;
+        if (queue != null) {
+            queue.afterCommit(action);
+        } else {
+            action.run();
         }
-        return connection;
     }
 
-    public static void closeConnection() {
+    private static Connection openConnection() throws SQLException {
+        Connection conn = DriverManager.getConnection(DB_URL);
         try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
-            }
+            getPragmaProfile().apply(conn);
         } catch (SQLException e) {
-            e.printStackTrace();
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    private static Connection openReadOnlyConnection() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("open_mode", String.valueOf(SQLITE_OPEN_READONLY));
+        Connection conn = DriverManager.getConnection(DB_URL, properties);
+        try {
+            getPragmaProfile().applyReadOnly(conn);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        return conn;
+    }
+
+    public static PragmaProfile getPragmaProfile() {
+        return pragmaProfile;
+    }
+
+    /**
+     * Zmienia profil PRAGMA. Istniejące połączenia są zamykane, więc nowy profil
+     * obowiązuje dla wszystkich kolejnych wywołań getConnection().
+     */
+    public static synchronized void setPragmaProfile(PragmaProfile profile) {
+        if (profile == null || profile == pragmaProfile) {
+            return;
+        }
+        pragmaProfile = profile;
+        closeConnection();
+    }
+
+    /**
+     * Zwraca statystyki puli połączeń (null jeśli pula nie została jeszcze utworzona)
+     */
+    public static synchronized ConnectionPool.PoolStats getPoolStats() {
+        return pool != null ? pool.getStats() : null;
+    }
+
+    public static synchronized ConnectionPool.PoolStats getReadPoolStats() {
+        return readPool != null ? readPool.getStats() : null;
+    }
+
+    /**
+     * Zwraca łączne liczniki trafień/chybień cache przygotowanych zapytań
+     */
+    public static StatementCache.CacheStats getStatementCacheStats() {
+        return StatementCache.getGlobalStats();
+    }
+
+    public static synchronized void closeConnection() {
+        if (writeQueue != null) {
+            writeQueue.shutdown();
+            writeQueue = null;
+        }
+        if (readPool != null) {
+            readPool.shutdown();
+            readPool = null;
+        }
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
         }
     }
-}
\ No newline at end of file
+}
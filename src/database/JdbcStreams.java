@@ -0,0 +1,107 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Strumieniowe odczytywanie wyników zapytania - wiersze są mapowane dopiero
+ * podczas przechodzenia strumienia, zamiast budować całą listę w pamięci.
+ * Zwrócony strumień trzyma połączenie, więc MUSI zostać zamknięty
+ * (najlepiej w try-with-resources); close() zwalnia ResultSet i oddaje połączenie do puli.
+ */
+public class JdbcStreams {
+
+    public interface ParameterBinder {
+        void bind(PreparedStatement pstmt) throws SQLException;
+    }
+
+    public interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * Błąd bazy danych podczas przechodzenia strumienia
+     */
+    public static class StreamReadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public StreamReadException(SQLException cause) {
+            super(cause.getMessage(), cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+            return (SQLException) super.getCause();
+        }
+    }
+
+    private JdbcStreams() {}
+
+    /**
+     * Wykonuje zapytanie na połączeniu tylko do odczytu i zwraca leniwy strumień wierszy
+     */
+    public static <T> Stream<T> stream(String sql, ParameterBinder binder, RowMapper<T> mapper,
+                                       int fetchSize) throws SQLException {
+        Connection conn = DatabaseManager.getReadConnection();
+        PreparedStatement pstmt = null;
+        ResultSet rs;
+        try {
+            pstmt = conn.prepareStatement(sql);
+            pstmt.setFetchSize(fetchSize);
+            if (binder != null) {
+                binder.bind(pstmt);
+            }
+            rs = pstmt.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(pstmt, conn);
+            throw e;
+        }
+
+        PreparedStatement statement = pstmt;
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    throw new StreamReadException(e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+            closeQuietly(statement, conn);
+        });
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt, Connection conn) {
+        try {
+            if (pstmt != null) {
+                pstmt.close();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Zestaw ustawień PRAGMA SQLite stosowany przy otwieraniu każdego połączenia.
+ * Wszystkie profile używają WAL, dzięki czemu odczyty (np. listy w AdminDashboard)
+ * nie blokują się na zapisach wypożyczeń i zwrotów.
+ */
+public enum PragmaProfile {
+    // Maksymalna trwałość - fsync przy każdym zatwierdzeniu transakcji
+    SAFE("safe", "WAL", "FULL", 0L, -8_000, "MEMORY", 5_000),
+    // Domyślny profil pracy - WAL + NORMAL jest bezpieczny przy awarii aplikacji
+    FAST("fast", "WAL", "NORMAL", 268_435_456L, -64_000, "MEMORY", 5_000),
+    // Import dużych ilości danych - bez fsync, duży cache (ryzyko utraty danych przy awarii systemu)
+    BULK_LOAD("bulk-load", "WAL", "OFF", 1_073_741_824L, -256_000, "MEMORY", 30_000);
+
+    private final String name;
+    private final String journalMode;
+    private final String synchronous;
+    private final long mmapSize;
+    private final int cacheSize;          // wartość ujemna = rozmiar w KiB (semantyka SQLite)
+    private final String tempStore;
+    private final int busyTimeoutMillis;
+
+    PragmaProfile(String name, String journalMode, String synchronous, long mmapSize,
+                  int cacheSize, String tempStore, int busyTimeoutMillis) {
+        this.name = name;
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.mmapSize = mmapSize;
+        this.cacheSize = cacheSize;
+        this.tempStore = tempStore;
+        this.busyTimeoutMillis = busyTimeoutMillis;
+    }
+
+    public String getName() { return name; }
+    public String getJournalMode() { return journalMode; }
+    public String getSynchronous() { return synchronous; }
+    public long getMmapSize() { return mmapSize; }
+    public int getCacheSize() { return cacheSize; }
+    public String getTempStore() { return tempStore; }
+    public int getBusyTimeoutMillis() { return busyTimeoutMillis; }
+
+    /**
+     * Stosuje profil do świeżo otwartego połączenia
+     */
+    public void apply(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            // busy_timeout jako pierwszy - zmiana journal_mode też może czekać na blokadę
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            stmt.execute("PRAGMA journal_mode = " + journalMode);
+            stmt.execute("PRAGMA synchronous = " + synchronous);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+        }
+    }
+
+    /**
+     * Stosuje profil do połączenia tylko do odczytu. journal_mode i synchronous
+     * dotyczą zapisu, więc są pomijane; dodatkowo włączane jest query_only.
+     */
+    public void applyReadOnly(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+            stmt.execute("PRAGMA mmap_size = " + mmapSize);
+            stmt.execute("PRAGMA cache_size = " + cacheSize);
+            stmt.execute("PRAGMA temp_store = " + tempStore);
+            stmt.execute("PRAGMA query_only = 1");
+        }
+    }
+
+    /**
+     * Zwraca profil o podanej nazwie ("safe", "fast", "bulk-load")
+     */
+    public static PragmaProfile fromName(String name) {
+        if (name != null) {
+            for (PragmaProfile profile : values()) {
+                if (profile.name.equalsIgnoreCase(name.trim())) {
+                    return profile;
+                }
+            }
+        }
+        throw new IllegalArgumentException("Nieznany profil bazy danych: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,669 @@
+package database;
+
+import util.Isbn;
+import util.TextNormalizer;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wersjonowane migracje schematu. Numer ostatniej zastosowanej migracji jest
+ * zapisany w tabeli schema_version; każda migracja wykonuje się dokładnie raz,
+ * w osobnej transakcji. Nowe zmiany schematu dodajemy jako kolejny wpis w MIGRATIONS
+ * - nigdy nie zmieniamy migracji, które zostały już wydane.
+ */
+public class SchemaMigrations {
+
+    /**
+     * Pojedynczy krok migracji wykonywany w transakcji
+     */
+    public interface MigrationStep {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    public static class Migration {
+        private final int version;
+        private final String description;
+        private final MigrationStep step;
+
+        public Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+
+        public int getVersion() { return version; }
+        public String getDescription() { return description; }
+    }
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "Schemat bazowy i naprawa danych ze starszych wersji", SchemaMigrations::createBaseSchema),
+            new Migration(2, "Domyślny administrator i przykładowe książki", SchemaMigrations::addDefaultData),
+            new Migration(3, "Indeksy dla najczęstszych zapytań", SchemaMigrations::createIndexes),
+            new Migration(4, "Znormalizowane klucze tytułu i autora", SchemaMigrations::addNormalizedKeys),
+            new Migration(5, "Indeks pełnotekstowy FTS5 książek", SchemaMigrations::createFullTextIndex),
+            new Migration(6, "Indeksy trigramowe dla filtrów \"zawiera\"", SchemaMigrations::createTrigramIndexes),
+            new Migration(7, "Słownik indeksu pełnotekstowego", SchemaMigrations::createFullTextVocabulary),
+            new Migration(8, "Tytuły z liczbą egzemplarzy", SchemaMigrations::createWorks),
+            new Migration(9, "Liczbowy klucz ISBN-13", SchemaMigrations::addIsbnKey),
+            new Migration(10, "Kolejka rezerwacji tytułów", SchemaMigrations::createHolds),
+            new Migration(11, "Usunięcie indeksu ISBN zastąpionego przez isbn_key", SchemaMigrations::dropIsbnTextIndex)
+    );
+
+    /**
+     * Indeks pomocniczy z zarządzanego zestawu wraz z migracją, która go wprowadziła
+     */
+    public static class IndexDefinition {
+        private final int version;
+        private final String name;
+        private final String table;
+        private final String columns;
+        private final String usedBy;
+
+        public IndexDefinition(int version, String name, String table, String columns, String usedBy) {
+            this.version = version;
+            this.name = name;
+            this.table = table;
+            this.columns = columns;
+            this.usedBy = usedBy;
+        }
+
+        public int getVersion() { return version; }
+        public String getName() { return name; }
+        public String getTable() { return table; }
+        public String getColumns() { return columns; }
+        public String getUsedBy() { return usedBy; }
+    }
+
+    /**
+     * Zarządzany zestaw indeksów pomocniczych. Kolumny są dobrane tak,
+     * żeby indeks pokrywał filtr i sortowanie obsługiwanego zapytania.
+     * Indeks usunięty późniejszą migracją znika też z zestawu - nowa baza go nie tworzy.
+     */
+    private static final List<IndexDefinition> INDEXES = List.of(
+            new IndexDefinition(3, "idx_rentals_status_expected", "rentals", "status, expected_return_date",
+                    "RentalService.getOverdueRentals"),
+            new IndexDefinition(3, "idx_rentals_status_rent_date", "rentals", "status, rent_date",
+                    "RentalService.getAllActiveRentals"),
+            new IndexDefinition(3, "idx_rentals_user_status", "rentals", "user_id, status, rent_date",
+                    "RentalService.getUserRentals"),
+            new IndexDefinition(3, "idx_books_title", "books", "title",
+                    "BookService.getAllBooks"),
+            new IndexDefinition(3, "idx_books_available_title", "books", "available, title",
+                    "BookService.getAvailableBooks"),
+            new IndexDefinition(3, "idx_ext_requests_status_date", "extension_requests", "status, request_date",
+                    "getPendingExtensionRequests, getPendingRequests, getPendingRequestsCount"),
+            new IndexDefinition(3, "idx_ext_requests_rental_status", "extension_requests", "rental_id, status",
+                    "ExtensionRequestService.hasPendingRequestForRental"),
+            new IndexDefinition(3, "idx_ext_requests_user_date", "extension_requests", "user_id, request_date",
+                    "ExtensionRequestService.getUserExtensionRequests"),
+            new IndexDefinition(4, "idx_books_title_author_key", "books", "title_key, author_key, available",
+                    "BookService.getBookCountByTitleAuthor, getAvailableBookCountByTitleAuthor"),
+            new IndexDefinition(9, "idx_books_isbn_key", "books", "isbn_key, available",
+                    "BookService.getBookCountByISBN, getAvailableBookCountByISBN, searchBooksRanked"),
+            new IndexDefinition(10, "idx_holds_title_status", "holds", "title_key, author_key, status, id",
+                    "HoldService.assignReturnedCopy, placeHold"),
+            new IndexDefinition(10, "idx_holds_user_status", "holds", "user_id, status",
+                    "HoldService.getUserHolds"),
+            new IndexDefinition(10, "idx_rentals_book_status", "rentals", "book_id, status",
+                    "HoldService.refreshDueDates")
+    );
+
+    public static List<IndexDefinition> getIndexes() {
+        return INDEXES;
+    }
+
+    /**
+     * Stosuje wszystkie migracje nowsze niż wersja zapisana w bazie
+     */
+    public static void migrate(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INTEGER PRIMARY KEY,
+                    description TEXT,
+                    applied_at DATE DEFAULT (DATE('now'))
+                )
+                """);
+        }
+
+        int currentVersion = getCurrentVersion(conn);
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version <= currentVersion) {
+                continue;
+            }
+            applyMigration(conn, migration);
+            currentVersion = migration.version;
+        }
+    }
+
+    public static int getCurrentVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(version), 0) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    public static int getLatestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version;
+    }
+
+    private static void applyMigration(Connection conn, Migration migration) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try {
+            migration.step.apply(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO schema_version (version, description, applied_at) VALUES (?, ?, DATE('now'))")) {
+                pstmt.setInt(1, migration.version);
+                pstmt.setString(2, migration.description);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+            System.out.println("Zastosowano migrację " + migration.version + ": " + migration.description);
+        } catch (SQLException e) {
+            conn.rollback();
+            throw new SQLException("Migracja " + migration.version + " (" + migration.description + ") nie powiodła się", e);
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+    }
+
+    // ===== Migracja 1 =====
+
+    private static void createBaseSchema(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS users (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    username VARCHAR(50) UNIQUE NOT NULL,
+                    password VARCHAR(255) NOT NULL,
+                    email VARCHAR(100),
+                    is_admin BOOLEAN DEFAULT FALSE,
+                    created_at DATE DEFAULT (DATE('now'))
+                )
+                """);
+
+            // Bez UNIQUE na ISBN - biblioteka może mieć wiele egzemplarzy!
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS books (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    isbn VARCHAR(13),
+                    title VARCHAR(255) NOT NULL,
+                    author VARCHAR(255) NOT NULL,
+                    publisher VARCHAR(255),
+                    year INTEGER,
+                    available BOOLEAN DEFAULT TRUE,
+                    created_at DATE DEFAULT (DATE('now'))
+                )
+                """);
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS rentals (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    user_id INTEGER NOT NULL,
+                    book_id INTEGER NOT NULL,
+                    rent_date DATE NOT NULL,
+                    return_date DATE,
+                    expected_return_date DATE,
+                    status VARCHAR(20) DEFAULT 'ACTIVE',
+                    extension_count INTEGER DEFAULT 0,
+                    FOREIGN KEY (user_id) REFERENCES users(id),
+                    FOREIGN KEY (book_id) REFERENCES books(id)
+                )
+                """);
+
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS extension_requests (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    rental_id INTEGER NOT NULL,
+                    user_id INTEGER NOT NULL,
+                    requested_days INTEGER NOT NULL,
+                    request_date DATE DEFAULT (DATE('now')),
+                    status VARCHAR(20) DEFAULT 'PENDING',
+                    admin_decision_date DATE,
+                    admin_id INTEGER,
+                    admin_comment TEXT,
+                    FOREIGN KEY (rental_id) REFERENCES rentals(id),
+                    FOREIGN KEY (user_id) REFERENCES users(id),
+                    FOREIGN KEY (admin_id) REFERENCES users(id)
+                )
+                """);
+
+            // Kolumny dodane w starszych wersjach aplikacji (bazy sprzed ich wprowadzenia)
+            if (!columnExists(conn, "rentals", "expected_return_date")) {
+                stmt.execute("ALTER TABLE rentals ADD COLUMN expected_return_date DATE");
+            }
+            if (!columnExists(conn, "rentals", "extension_count")) {
+                stmt.execute("ALTER TABLE rentals ADD COLUMN extension_count INTEGER DEFAULT 0");
+            }
+
+            // Konwersja starych wartości TIMESTAMP na DATE
+            for (String[] column : new String[][]{
+                    {"users", "created_at"},
+                    {"books", "created_at"},
+                    {"extension_requests", "request_date"},
+                    {"extension_requests", "admin_decision_date"}}) {
+                stmt.execute("UPDATE " + column[0] + " SET " + column[1] + " = DATE(" + column[1] + ") " +
+                        "WHERE " + column[1] + " IS NOT NULL AND " + column[1] + " NOT LIKE '____-__-__'");
+            }
+
+            // Wypożyczenia bez expected_return_date dostają domyślne 14 dni
+            int fixedRentals = stmt.executeUpdate("""
+                UPDATE rentals
+                SET expected_return_date = DATE(rent_date, '+14 days')
+                WHERE expected_return_date IS NULL AND status = 'ACTIVE'
+                """);
+            if (fixedRentals > 0) {
+                System.out.println("Naprawiono " + fixedRentals + " wypożyczeń bez daty zakończenia.");
+            }
+
+            int fixedCounts = stmt.executeUpdate("UPDATE rentals SET extension_count = 0 WHERE extension_count IS NULL");
+            if (fixedCounts > 0) {
+                System.out.println("Naprawiono " + fixedCounts + " wypożyczeń bez licznika przedłużeń.");
+            }
+        }
+    }
+
+    // ===== Migracja 2 =====
+
+    private static void addDefaultData(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM users WHERE username = 'admin'");
+             ResultSet rs = pstmt.executeQuery()) {
+            if (!rs.next() || rs.getInt(1) == 0) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("""
+                        INSERT INTO users (username, password, email, is_admin, created_at)
+                        VALUES ('admin', 'admin123', 'admin@library.com', TRUE, DATE('now'))
+                        """);
+                }
+                System.out.println("Dodano domyślnego administratora.");
+            }
+        }
+
+        String[][] sampleBooks = {
+                {"9788375748116", "Władca Pierścieni", "J.R.R. Tolkien", "Iskry", "2012"},
+                {"9788328020085", "Wiedźmin: Ostatnie życzenie", "Andrzej Sapkowski", "SuperNOWA", "2014"},
+                {"9788375780932", "Harry Potter i Kamień Filozoficzny", "J.K. Rowling", "Media Rodzina", "2016"}
+        };
+
+        List<String[]> missing = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT COUNT(*) FROM books WHERE LOWER(TRIM(title)) = LOWER(TRIM(?))")) {
+            for (String[] book : sampleBooks) {
+                pstmt.setString(1, book[1]);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) == 0) {
+                        missing.add(book);
+                    }
+                }
+            }
+        }
+
+        String insertSQL = "INSERT INTO books (isbn, title, author, publisher, year, created_at) VALUES (?, ?, ?, ?, ?, DATE('now'))";
+        try (PreparedStatement pstmt = conn.prepareStatement(insertSQL)) {
+            for (String[] book : missing) {
+                pstmt.setString(1, book[0]); // ISBN
+                pstmt.setString(2, book[1]); // Title
+                pstmt.setString(3, book[2]); // Author
+                pstmt.setString(4, book[3]); // Publisher
+                pstmt.setInt(5, Integer.parseInt(book[4])); // Year
+                pstmt.executeUpdate();
+                System.out.println("Dodano książkę: " + book[1]);
+            }
+        }
+    }
+
+    // ===== Migracja 3 =====
+
+    private static void createIndexes(Connection conn) throws SQLException {
+        ensureIndexes(conn, 3);
+    }
+
+    /**
+     * Tworzy brakujące indeksy z zarządzanego zestawu wprowadzone do podanej wersji schematu
+     */
+    public static void ensureIndexes(Connection conn, int upToVersion) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            for (IndexDefinition index : INDEXES) {
+                if (index.version <= upToVersion) {
+                    stmt.execute("CREATE INDEX IF NOT EXISTS " + index.name +
+                            " ON " + index.table + " (" + index.columns + ")");
+                }
+            }
+        }
+    }
+
+    // ===== Migracja 4 =====
+
+    private static void addNormalizedKeys(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (!columnExists(conn, "books", "title_key")) {
+                stmt.execute("ALTER TABLE books ADD COLUMN title_key VARCHAR(255)");
+            }
+            if (!columnExists(conn, "books", "author_key")) {
+                stmt.execute("ALTER TABLE books ADD COLUMN author_key VARCHAR(255)");
+            }
+        }
+
+        // Wypełnienie kluczy dla istniejących książek (normalizacja w Javie - patrz TextNormalizer)
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery("SELECT id, title, author FROM books");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE books SET title_key = ?, author_key = ? WHERE id = ?")) {
+            int pending = 0;
+            while (rs.next()) {
+                update.setString(1, TextNormalizer.fold(rs.getString("title")));
+                update.setString(2, TextNormalizer.fold(rs.getString("author")));
+                update.setInt(3, rs.getInt("id"));
+                update.addBatch();
+                if (++pending == 1000) {
+                    update.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                update.executeBatch();
+            }
+        }
+
+        ensureIndexes(conn, 4);
+    }
+
+    /**
+     * Indeks FTS5 nad znormalizowanymi kluczami (tytuł, autor, wydawnictwo) i ISBN bez myślników.
+     * Tabela jest bezzawartościowa (content='') - dane są tylko w books. Triggery utrzymują
+     * indeks przy DELETE i zmianie indeksowanych kolumn (zmiana samego available go nie dotyka).
+     * Nowe wiersze indeksuje BookService jednym INSERT ... SELECT na paczkę - trigger AFTER INSERT
+     * wewnątrz SAVEPOINT kolejki zapisów spowalniał import około dziesięciokrotnie.
+     */
+    private static void createFullTextIndex(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (!columnExists(conn, "books", "publisher_key")) {
+                stmt.execute("ALTER TABLE books ADD COLUMN publisher_key VARCHAR(255)");
+            }
+        }
+
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery("SELECT id, publisher FROM books");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE books SET publisher_key = ? WHERE id = ?")) {
+            int pending = 0;
+            while (rs.next()) {
+                update.setString(1, TextNormalizer.fold(rs.getString("publisher")));
+                update.setInt(2, rs.getInt("id"));
+                update.addBatch();
+                if (++pending == 1000) {
+                    update.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                update.executeBatch();
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            // Klucze są już złożone przez TextNormalizer; remove_diacritics zabezpiecza zapytania spoza BookService
+            stmt.execute("""
+                CREATE VIRTUAL TABLE IF NOT EXISTS books_fts USING fts5(
+                    title_key, author_key, publisher_key, isbn,
+                    content = '',
+                    tokenize = 'unicode61 remove_diacritics 2'
+                )
+                """);
+
+            stmt.execute("""
+                INSERT INTO books_fts (rowid, title_key, author_key, publisher_key, isbn)
+                SELECT id, title_key, author_key, publisher_key, REPLACE(REPLACE(isbn, '-', ''), ' ', '')
+                FROM books
+                """);
+
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS books_fts_delete AFTER DELETE ON books BEGIN
+                    INSERT INTO books_fts (books_fts, rowid, title_key, author_key, publisher_key, isbn)
+                    VALUES ('delete', old.id, old.title_key, old.author_key, old.publisher_key,
+                            REPLACE(REPLACE(old.isbn, '-', ''), ' ', ''));
+                END
+                """);
+
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS books_fts_update
+                AFTER UPDATE OF title_key, author_key, publisher_key, isbn ON books BEGIN
+                    INSERT INTO books_fts (books_fts, rowid, title_key, author_key, publisher_key, isbn)
+                    VALUES ('delete', old.id, old.title_key, old.author_key, old.publisher_key,
+                            REPLACE(REPLACE(old.isbn, '-', ''), ' ', ''));
+                    INSERT INTO books_fts (rowid, title_key, author_key, publisher_key, isbn)
+                    VALUES (new.id, new.title_key, new.author_key, new.publisher_key,
+                            REPLACE(REPLACE(new.isbn, '-', ''), ' ', ''));
+                END
+                """);
+        }
+    }
+
+    /**
+     * Osobna tabela trigramowa dla każdego klucza - detail=none przechowuje tylko listy
+     * rowid (bez pozycji i kolumn), więc indeks jest kilka razy mniejszy, a fragment
+     * i tak jest weryfikowany na właściwej kolumnie (patrz BookService.appendFilters).
+     * Nowe wiersze indeksuje BookService, tak jak books_fts. Tabele *_vocab (fts5vocab)
+     * podają liczności trigramów, z których korzysta services.TrigramStats.
+     */
+    private static void createTrigramIndexes(Connection conn) throws SQLException {
+        String[][] indexes = {
+                {"books_title_tri", "title_key"},
+                {"books_author_tri", "author_key"},
+                {"books_publisher_tri", "publisher_key"}};
+
+        try (Statement stmt = conn.createStatement()) {
+            for (String[] index : indexes) {
+                String table = index[0];
+                String column = index[1];
+
+                stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS " + table + " USING fts5(" + column +
+                        ", content = '', detail = none, tokenize = 'trigram')");
+                stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS " + table + "_vocab USING fts5vocab(" + table + ", 'row')");
+                stmt.execute("INSERT INTO " + table + " (rowid, " + column + ") SELECT id, " + column + " FROM books");
+
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_delete AFTER DELETE ON books BEGIN " +
+                        "INSERT INTO " + table + " (" + table + ", rowid, " + column + ") " +
+                        "VALUES ('delete', old.id, old." + column + "); END");
+                stmt.execute("CREATE TRIGGER IF NOT EXISTS " + table + "_update AFTER UPDATE OF " + column + " ON books BEGIN " +
+                        "INSERT INTO " + table + " (" + table + ", rowid, " + column + ") " +
+                        "VALUES ('delete', old.id, old." + column + "); " +
+                        "INSERT INTO " + table + " (rowid, " + column + ") VALUES (new.id, new." + column + "); END");
+            }
+        }
+    }
+
+    /**
+     * Widok słownika books_fts (słowo, kolumna, liczba książek) - z niego services.FuzzyIndex
+     * buduje słowniki do wyszukiwania z literówkami. fts5vocab nie zajmuje miejsca w bazie.
+     */
+    private static void createFullTextVocabulary(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE VIRTUAL TABLE IF NOT EXISTS books_fts_vocab USING fts5vocab(books_fts, 'col')");
+        }
+    }
+
+    /**
+     * Tabela works: jeden wiersz na tytuł (egzemplarze zgrupowane po title_key i author_key)
+     * z liczbą wszystkich i dostępnych egzemplarzy, żeby lista tytułów była jednym zapytaniem
+     * zamiast dwóch COUNT na wiersz. Tytuł, autor i ISBN pochodzą z pierwszego egzemplarza.
+     * Nowe egzemplarze dolicza BookService zbiorczo (jak books_fts); usunięcie, zmiana
+     * dostępności (wypożyczenie, zwrot) i zmiana tytułu lub autora są obsługiwane triggerami.
+     */
+    private static void createWorks(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS works (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    title_key TEXT NOT NULL,
+                    author_key TEXT NOT NULL,
+                    isbn VARCHAR(13),
+                    title VARCHAR(255) NOT NULL,
+                    author VARCHAR(255) NOT NULL,
+                    total_copies INTEGER NOT NULL DEFAULT 0,
+                    available_copies INTEGER NOT NULL DEFAULT 0,
+                    UNIQUE (title_key, author_key)
+                )
+                """);
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_works_title ON works(title)");
+
+            // Kolumny bez agregatu obok jedynego MIN(id) SQLite bierze z wiersza o najmniejszym id
+            stmt.execute("""
+                INSERT INTO works (title_key, author_key, isbn, title, author, total_copies, available_copies)
+                SELECT title_key, author_key, isbn, title, author, total_copies, available_copies
+                FROM (SELECT title_key, author_key, isbn, title, author, MIN(id),
+                             COUNT(*) AS total_copies, SUM(available = TRUE) AS available_copies
+                      FROM books GROUP BY title_key, author_key)
+                """);
+
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS works_books_delete AFTER DELETE ON books BEGIN
+                    UPDATE works SET total_copies = total_copies - 1,
+                                     available_copies = available_copies - (old.available = TRUE)
+                    WHERE title_key = old.title_key AND author_key = old.author_key;
+                    DELETE FROM works
+                    WHERE title_key = old.title_key AND author_key = old.author_key AND total_copies <= 0;
+                END
+                """);
+
+            // Wypożyczenie i zwrot - najczęstsza zmiana, jedno UPDATE
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS works_books_available AFTER UPDATE OF available ON books
+                WHEN old.title_key IS new.title_key AND old.author_key IS new.author_key
+                     AND (old.available = TRUE) IS NOT (new.available = TRUE)
+                BEGIN
+                    UPDATE works SET available_copies = available_copies + (new.available = TRUE) - (old.available = TRUE)
+                    WHERE title_key = new.title_key AND author_key = new.author_key;
+                END
+                """);
+
+            // Zmiana tytułu lub autora przenosi egzemplarz do innego tytułu
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS works_books_move AFTER UPDATE OF title_key, author_key ON books
+                WHEN old.title_key IS NOT new.title_key OR old.author_key IS NOT new.author_key
+                BEGIN
+                    UPDATE works SET total_copies = total_copies - 1,
+                                     available_copies = available_copies - (old.available = TRUE)
+                    WHERE title_key = old.title_key AND author_key = old.author_key;
+                    DELETE FROM works
+                    WHERE title_key = old.title_key AND author_key = old.author_key AND total_copies <= 0;
+                    INSERT INTO works (title_key, author_key, isbn, title, author, total_copies, available_copies)
+                    VALUES (new.title_key, new.author_key, new.isbn, new.title, new.author, 1, new.available = TRUE)
+                    ON CONFLICT (title_key, author_key) DO UPDATE SET
+                        total_copies = total_copies + 1,
+                        available_copies = available_copies + excluded.available_copies;
+                END
+                """);
+
+            // Poprawiona pisownia przy tym samym kluczu (np. wielkość liter) - ostatnia wygrywa
+            stmt.execute("""
+                CREATE TRIGGER IF NOT EXISTS works_books_rename AFTER UPDATE OF title, author ON books
+                WHEN old.title_key IS new.title_key AND old.author_key IS new.author_key
+                     AND (old.title IS NOT new.title OR old.author IS NOT new.author)
+                BEGIN
+                    UPDATE works SET title = new.title, author = new.author
+                    WHERE title_key = new.title_key AND author_key = new.author_key;
+                END
+                """);
+        }
+    }
+
+    /**
+     * Kolumna isbn_key: ISBN sprowadzony do ISBN-13 i zapisany jako liczba (util.Isbn), żeby
+     * wyszukiwanie po ISBN było porównaniem liczb w indeksie niezależnie od myślników
+     * i od tego, czy wpisano ISBN-10, czy ISBN-13. Kolumna isbn zostaje w postaci wpisanej
+     * przez użytkownika (do wyświetlania i books_fts); klucz ustawia BookService przy zapisie.
+     */
+    private static void addIsbnKey(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            if (!columnExists(conn, "books", "isbn_key")) {
+                stmt.execute("ALTER TABLE books ADD COLUMN isbn_key INTEGER");
+            }
+        }
+
+        try (Statement select = conn.createStatement();
+             ResultSet rs = select.executeQuery("SELECT id, isbn FROM books WHERE isbn IS NOT NULL");
+             PreparedStatement update = conn.prepareStatement(
+                     "UPDATE books SET isbn_key = ? WHERE id = ?")) {
+            int pending = 0;
+            while (rs.next()) {
+                Long key = Isbn.toKey(rs.getString("isbn"));
+                if (key == null) {
+                    continue;
+                }
+                update.setLong(1, key);
+                update.setInt(2, rs.getInt("id"));
+                update.addBatch();
+                if (++pending == 1000) {
+                    update.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                update.executeBatch();
+            }
+        }
+
+        ensureIndexes(conn, 9);
+    }
+
+    /**
+     * Rezerwacje tytułów (egzemplarze zgrupowane po title_key i author_key, jak w works):
+     * kolejka FIFO wg id w obrębie tytułu. WAITING - czeka w kolejce, READY - przy zwrocie
+     * przydzielono egzemplarz book_id (pozostaje niedostępny dla innych), FULFILLED - odebrana
+     * (wypożyczona), CANCELLED - anulowana. Tytuł i autor do wyświetlania są kopiowane przy
+     * rezerwacji, bo wiersz works znika, gdy tytuł traci ostatni egzemplarz.
+     */
+    private static void createHolds(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS holds (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    user_id INTEGER NOT NULL,
+                    title_key TEXT NOT NULL,
+                    author_key TEXT NOT NULL,
+                    title VARCHAR(255) NOT NULL,
+                    author VARCHAR(255) NOT NULL,
+                    book_id INTEGER,
+                    status VARCHAR(20) NOT NULL DEFAULT 'WAITING',
+                    created_at DATE DEFAULT (DATE('now')),
+                    ready_date DATE,
+                    FOREIGN KEY (user_id) REFERENCES users(id)
+                )
+                """);
+        }
+
+        ensureIndexes(conn, 10);
+    }
+
+    /**
+     * idx_books_isbn (isbn, available) z migracji 3: od migracji 9 ISBN-y liczy idx_books_isbn_key,
+     * a tekst spoza ISBN znajduje books_fts (kolumna isbn), więc indeks tylko spowalniał zapisy
+     */
+    private static void dropIsbnTextIndex(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP INDEX IF EXISTS idx_books_isbn");
+        }
+    }
+
+    // ===== Pomocnicze =====
+
+    static boolean columnExists(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
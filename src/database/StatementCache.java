@@ -0,0 +1,288 @@
+package database;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pamięć podręczna przygotowanych zapytań dla jednego fizycznego połączenia.
+ * Kluczem jest treść SQL. close() na zwróconym PreparedStatement nie zamyka go,
+ * tylko zamyka otwarty ResultSet, czyści parametry i niewykonany batch, przywraca
+ * ustawienia zapytania (fetch size, max rows, timeout) i oddaje zapytanie do cache.
+ * Najdawniej używane zapytania są usuwane po przekroczeniu pojemności (LRU).
+ */
+public class StatementCache {
+
+    // Liczniki globalne (sumowane ze wszystkich połączeń)
+    private static final AtomicLong totalHits = new AtomicLong();
+    private static final AtomicLong totalMisses = new AtomicLong();
+    private static final AtomicLong totalEvictions = new AtomicLong();
+
+    private final Connection physical;
+    private final int capacity;
+    private final LinkedHashMap<String, CachedStatement> statements;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public StatementCache(Connection physical, int capacity) {
+        this.physical = physical;
+        this.capacity = capacity;
+        // accessOrder = true - kolejność od najdawniej do najświeżej użytego
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Zwraca przygotowane zapytanie z cache lub przygotowuje nowe.
+     * Jeśli to samo zapytanie jest właśnie używane (zagnieżdżone wywołanie),
+     * zwracane jest osobne, niebuforowane zapytanie.
+     */
+    public synchronized PreparedStatement prepare(String sql) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+        if (cached != null && !cached.inUse && !cached.delegate.isClosed()) {
+            hits++;
+            totalHits.incrementAndGet();
+            cached.inUse = true;
+            return cached.proxy;
+        }
+
+        misses++;
+        totalMisses.incrementAndGet();
+
+        if (cached != null && cached.inUse) {
+            return physical.prepareStatement(sql);
+        }
+
+        cached = new CachedStatement(sql, physical.prepareStatement(sql));
+        cached.inUse = true;
+        statements.put(sql, cached);
+        evictIfNeeded();
+        return cached.proxy;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<CachedStatement> it = statements.values().iterator();
+        while (statements.size() > capacity && it.hasNext()) {
+            CachedStatement eldest = it.next();
+            if (eldest.inUse) {
+                continue; // Nie usuwamy zapytań, które są właśnie używane
+            }
+            it.remove();
+            evictions++;
+            totalEvictions.incrementAndGet();
+            closeQuietly(eldest.delegate);
+        }
+    }
+
+    private synchronized void release(CachedStatement cached) throws SQLException {
+        cached.closeResultSets();
+        try {
+            if (!cached.delegate.isClosed()) {
+                cached.reset();
+            }
+        } catch (SQLException e) {
+            // Zapytania, którego nie da się wyczyścić, nie oddajemy następnemu użytkownikowi
+            statements.remove(cached.sql, cached);
+            closeQuietly(cached.delegate);
+            throw e;
+        } finally {
+            cached.inUse = false;
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Oddaje do cache wszystkie zapytania, których użytkownik nie zamknął
+     * (wywoływane przy zwrocie połączenia do puli)
+     */
+    public synchronized void releaseAll() {
+        for (CachedStatement cached : statements.values()) {
+            if (cached.inUse) {
+                try {
+                    release(cached);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Zamyka wszystkie zapytania (wywoływane przy zamykaniu fizycznego połączenia)
+     */
+    public synchronized void closeAll() {
+        for (CachedStatement cached : statements.values()) {
+            closeQuietly(cached.delegate);
+        }
+        statements.clear();
+    }
+
+    public synchronized int size() {
+        return statements.size();
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+
+    public static CacheStats getGlobalStats() {
+        return new CacheStats(totalHits.get(), totalMisses.get(), totalEvictions.get());
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Buforowane zapytanie wraz z proxy przechwytującym close()
+     */
+    private class CachedStatement implements InvocationHandler {
+        private final String sql;
+        private final PreparedStatement delegate;
+        private final PreparedStatement proxy;
+        private final List<ResultSet> openResultSets = new ArrayList<>();
+        private final int defaultFetchSize;
+        private final int defaultMaxRows;
+        private final int defaultQueryTimeout;
+        private boolean inUse = false;
+        private boolean settingsChanged = false;
+
+        CachedStatement(String sql, PreparedStatement delegate) throws SQLException {
+            this.sql = sql;
+            this.delegate = delegate;
+            this.defaultFetchSize = delegate.getFetchSize();
+            this.defaultMaxRows = delegate.getMaxRows();
+            this.defaultQueryTimeout = delegate.getQueryTimeout();
+            this.proxy = (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    this);
+        }
+
+        /**
+         * Stan jak po przygotowaniu: bez parametrów, bez niewykonanego batcha
+         * (clearParameters go nie czyści) i z domyślnymi ustawieniami zapytania
+         */
+        void reset() throws SQLException {
+            delegate.clearParameters();
+            delegate.clearBatch();
+            if (settingsChanged) {
+                delegate.setFetchSize(defaultFetchSize);
+                delegate.setMaxRows(defaultMaxRows);
+                delegate.setQueryTimeout(defaultQueryTimeout);
+                settingsChanged = false;
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxyObj, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (inUse) {
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return !inUse || delegate.isClosed();
+                case "equals":
+                    return proxyObj == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxyObj);
+                case "toString":
+                    return "CachedStatement[" + delegate + "]";
+                default:
+                    break;
+            }
+
+            if (!inUse) {
+                throw new SQLException("Zapytanie zostało już zwrócone do cache");
+            }
+            switch (method.getName()) {
+                case "setFetchSize":
+                case "setMaxRows":
+                case "setLargeMaxRows":
+                case "setQueryTimeout":
+                    settingsChanged = true;
+                    break;
+                case "setFetchDirection":
+                case "setMaxFieldSize":
+                case "setEscapeProcessing":
+                case "setPoolable":
+                case "closeOnCompletion":
+                    // Tych ustawień reset() nie przywraca - zapytanie z cache ich nie przyjmuje
+                    throw new SQLException("Ustawienie " + method.getName() + " nie jest obsługiwane dla zapytań z cache");
+                default:
+                    break;
+            }
+
+            Object result;
+            try {
+                result = method.invoke(delegate, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            // Zapamiętaj ResultSet, aby zamknąć go (i zwolnić blokadę odczytu) przy close()
+            if (result instanceof ResultSet) {
+                openResultSets.add((ResultSet) result);
+            }
+            return result;
+        }
+
+        void closeResultSets() {
+            for (ResultSet rs : openResultSets) {
+                try {
+                    rs.close();
+                } catch (SQLException e) {
+                    // ResultSet mógł zostać już zamknięty przez sterownik
+                }
+            }
+            openResultSets.clear();
+        }
+    }
+
+    /**
+     * Migawka liczników trafień/chybień cache
+     */
+    public static class CacheStats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+
+        public CacheStats(long hits, long misses, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cache zapytań: trafienia: %d, chybienia: %d (%.1f%% trafień), usunięte: %d",
+                    hits, misses, getHitRate() * 100, evictions);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Jedyny wątek zapisujący do bazy. Operacje zapisu trafiają do kolejki,
+ * a wątek zapisujący wykonuje je grupami w jednej transakcji (group commit):
+ * grupa zamyka się po maxBatchSize operacjach albo po maxBatchDelayMillis.
+ * Każda operacja ma własny SAVEPOINT, więc błąd jednej nie wycofuje pozostałych.
+ * Operacja może zarejestrować akcje afterCommit (np. aktualizację struktur w pamięci),
+ * wykonywane dopiero po zatwierdzeniu jej grupy.
+ */
+public class WriteQueue {
+
+    /**
+     * Operacja zapisu wykonywana na połączeniu wątku zapisującego.
+     * Nie może sama zatwierdzać ani wycofywać transakcji.
+     */
+    public interface WriteCommand<T> {
+        T execute(Connection conn) throws SQLException;
+    }
+
+    private static class Task<T> {
+        private final WriteCommand<T> command;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final List<Runnable> afterCommit = new ArrayList<>();
+        private T result;
+
+        Task(WriteCommand<T> command) {
+            this.command = command;
+        }
+
+        void run(Connection conn) throws SQLException {
+            result = command.execute(conn);
+        }
+
+        void complete() {
+            future.complete(result);
+        }
+    }
+
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+    private final Connection conn;
+    private final int maxBatchSize;
+    private final long maxBatchDelayMillis;
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    private Task<?> currentTask;   // używane tylko przez wątek zapisujący
+
+    // Statystyki
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong failedCommands = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private volatile int largestBatch = 0;
+
+    public WriteQueue(Connection conn, int maxBatchSize, long maxBatchDelayMillis) throws SQLException {
+        this.conn = conn;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelayMillis = maxBatchDelayMillis;
+        conn.setAutoCommit(false);
+
+        this.writerThread = new Thread(this::runLoop, "db-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Dodaje operację do kolejki. Future kończy się po zatwierdzeniu grupy,
+     * w której operacja została wykonana.
+     */
+    public <T> CompletableFuture<T> submit(WriteCommand<T> command) {
+        // Zagnieżdżony zapis z wątku zapisującego - wykonaj od razu w bieżącej transakcji
+        if (Thread.currentThread() == writerThread) {
+            try {
+                return CompletableFuture.completedFuture(command.execute(conn));
+            } catch (SQLException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        Task<T> task = new Task<>(command);
+        if (!running) {
+            task.future.completeExceptionally(closedException());
+            return task.future;
+        }
+        queue.add(task);
+        // Wątek zapisujący mógł się zakończyć między sprawdzeniem a dodaniem - wtedy nikt nie wykona operacji
+        if (!running && queue.remove(task)) {
+            task.future.completeExceptionally(closedException());
+        }
+        return task.future;
+    }
+
+    private void runLoop() {
+        List<Task<?>> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Task<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Dobierz kolejne operacje, dopóki nie minie limit czasu lub liczby
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelayMillis);
+                while (batch.size() < maxBatchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Task<?> next;
+                    try {
+                        next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    } catch (InterruptedException e) {
+                        // Przerwanie przy dobieraniu - operacje już wyjęte z kolejki wykonują się
+                        // (inaczej ich future nigdy by się nie zakończyły), potem wątek kończy pracę
+                        running = false;
+                        break;
+                    }
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                executeBatch(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (Throwable e) {
+                // Błąd poza operacją (np. w akcji afterCommit) - wątek pracuje dalej, a future
+                // operacji z grupy, które jeszcze się nie zakończyły, dostają ten błąd
+                e.printStackTrace();
+                rollbackQuietly();
+                for (Task<?> task : batch) {
+                    task.future.completeExceptionally(e);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+
+        // Połączenie zamyka wątek zapisujący - shutdown() nie może go zamknąć w trakcie operacji
+        failPending();
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rejestruje akcję do wykonania po zatwierdzeniu bieżącej operacji zapisu.
+     * Jeśli operacja zostanie wycofana, akcja nie jest wykonywana. Wywołana poza
+     * operacją zapisu akcja wykonuje się od razu.
+     */
+    public void afterCommit(Runnable action) {
+        if (Thread.currentThread() == writerThread && currentTask != null) {
+            currentTask.afterCommit.add(action);
+        } else {
+            action.run();
+        }
+    }
+
+    private void executeBatch(List<Task<?>> batch) {
+        List<Task<?>> succeeded = new ArrayList<>(batch.size());
+
+        for (Task<?> task : batch) {
+            Savepoint savepoint = null;
+            currentTask = task;
+            try {
+                savepoint = conn.setSavepoint();
+                task.run(conn);
+                conn.releaseSavepoint(savepoint);
+                succeeded.add(task);
+            } catch (Throwable e) {
+                // Także Error z operacji - future musi się zakończyć, a wątek zapisujący pracować dalej
+                failedCommands.incrementAndGet();
+                task.afterCommit.clear();
+                if (savepoint != null) {
+                    try {
+                        conn.rollback(savepoint);
+                        conn.releaseSavepoint(savepoint);
+                    } catch (SQLException rollbackEx) {
+                        rollbackEx.printStackTrace();
+                    }
+                }
+                task.future.completeExceptionally(e);
+            } finally {
+                currentTask = null;
+            }
+        }
+
+        try {
+            conn.commit();
+            commits.incrementAndGet();
+            commands.addAndGet(batch.size());
+            largestBatch = Math.max(largestBatch, batch.size());
+            for (Task<?> task : succeeded) {
+                runAfterCommit(task);
+                task.complete();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            rollbackQuietly();
+            for (Task<?> task : succeeded) {
+                task.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void rollbackQuietly() {
+        try {
+            conn.rollback();
+        } catch (SQLException rollbackEx) {
+            rollbackEx.printStackTrace();
+        }
+    }
+
+    // Operacje, których nikt już nie wykona, kończą się błędem zamiast wisieć w await()
+    private void failPending() {
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            task.future.completeExceptionally(closedException());
+        }
+    }
+
+    private static SQLException closedException() {
+        return new SQLException("Kolejka zapisów została zamknięta");
+    }
+
+    private void runAfterCommit(Task<?> task) {
+        for (Runnable action : task.afterCommit) {
+            try {
+                action.run();
+            } catch (Throwable e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Kończy pracę wątku zapisującego po wykonaniu operacji już będących w kolejce.
+     * Połączenie zamyka sam wątek zapisujący po ostatniej operacji; jeśli nie skończy
+     * w ciągu 5 s, operacje czekające jeszcze w kolejce kończą się błędem.
+     */
+    public void shutdown() {
+        running = false;
+        try {
+            writerThread.join(5_000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            System.err.println("Wątek zapisujący nadal wykonuje operację - połączenie zostanie zamknięte po jej zakończeniu");
+        }
+        failPending();
+    }
+
+    public long getCommandCount() { return commands.get(); }
+    public long getFailedCommandCount() { return failedCommands.get(); }
+    public long getCommitCount() { return commits.get(); }
+    public int getLargestBatch() { return largestBatch; }
+    public int getQueueLength() { return queue.size(); }
+
+    /**
+     * Czeka na wynik operacji zapisu. W razie błędu wypisuje go i zwraca wartość domyślną.
+     */
+    public static <T> T await(CompletableFuture<T> future, T fallback) {
+        return await(future, fallback, null);
+    }
+
+    public static <T> T await(CompletableFuture<T> future, T fallback, String errorMessage) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (errorMessage != null) {
+                System.err.println(errorMessage + ": " + cause.getMessage());
+            }
+            cause.printStackTrace();
+            return fallback;
+        }
+    }
+}
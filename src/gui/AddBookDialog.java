@@ -2,6 +2,7 @@ package gui;
 
 import models.Book;
 import services.BookService;
+import util.Isbn;
 
 import javax.swing.*;
 import java.awt.*;
@@ -134,7 +135,7 @@ public class AddBookDialog extends JDialog {
         // Walidacja ISBN
         if (!isbn.isEmpty() && !isValidISBN(isbn)) {
             int choice = JOptionPane.showConfirmDialog(this,
-                    "Podany ISBN może być nieprawidłowy. Czy chcesz kontynuować?",
+                    "Podany ISBN może być nieprawidłowy (format lub cyfra kontrolna). Czy chcesz kontynuować?",
                     "Ostrzeżenie",
                     JOptionPane.YES_NO_OPTION,
                     JOptionPane.WARNING_MESSAGE);
@@ -174,8 +175,8 @@ public class AddBookDialog extends JDialog {
             return false;
         }
 
-        // Sprawdź czy składa się z cyfr (i opcjonalnie X na końcu dla ISBN-10)
-        return isbn.matches("\\d{9}[\\dX]") || isbn.matches("\\d{13}");
+        // Cyfry (i opcjonalnie X na końcu dla ISBN-10) z poprawną cyfrą kontrolną
+        return Isbn.hasValidCheckDigit(isbn);
     }
 
     public boolean wasBookAdded() {
@@ -4,12 +4,15 @@ import models.Book;
 import models.Rental;
 import models.User;
 import models.ExtensionRequest;
+import models.Work;
 import services.BookService;
 import services.RentalService;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class AdminDashboard extends JFrame {
     private User currentUser;
@@ -19,9 +22,12 @@ public class AdminDashboard extends JFrame {
     private DefaultListModel<Book> booksListModel;
     private DefaultListModel<Rental> rentalsListModel;
     private DefaultListModel<ExtensionRequest> extensionRequestsListModel;
+    private DefaultListModel<Work> worksListModel;
     private JList<Book> booksList;
     private JList<Rental> rentalsList;
     private JList<ExtensionRequest> extensionRequestsList;
+    private JList<Work> worksList;
+    private JCheckBox availableWorksOnlyCheckBox;
 
     // Pola filtrów
     private JTextField titleFilterField;
@@ -31,6 +37,13 @@ public class AdminDashboard extends JFrame {
     private JTextField yearToField;
     private JComboBox<String> availabilityFilterCombo;
 
+    // Wypożyczenia kończące się w tylu dniach są wyróżniane na liście
+    private static final int DUE_SOON_DAYS = 3;
+
+    // Lista książek jest wczytywana stronami - źródło kolejnych stron (wszystkie albo przefiltrowane)
+    private static final int BOOKS_PAGE_SIZE = 200;
+    private BooksPageSource booksPageSource;
+
     // Przyciski jako pola klasy
     private JButton logoutButton;
     private JButton addBookButton;
@@ -38,14 +51,18 @@ public class AdminDashboard extends JFrame {
     private JButton deleteBookButton;
     private JButton scanISBNButton;
     private JButton refreshBooksButton;
+    private JButton moreBooksButton;
     private JButton forceReturnButton;
     private JButton refreshRentalsButton;
     private JButton overdueButton;
     private JButton approveRequestButton;
     private JButton rejectRequestButton;
     private JButton refreshRequestsButton;
+    private JButton refreshWorksButton;
     private JButton applyFiltersButton;
     private JButton clearFiltersButton;
+    private JLabel facetsLabel;
+    private JLabel rentalsSummaryLabel;
 
     public AdminDashboard(User user) {
         this.currentUser = user;
@@ -53,6 +70,9 @@ public class AdminDashboard extends JFrame {
         setupLayout();
         setupEventHandlers();
         loadData();
+        bookService.prepareSuggestions();
+        bookService.prepareFacets();
+        rentalService.prepareOverdueTracker();
     }
 
     private void initializeComponents() {
@@ -67,9 +87,13 @@ public class AdminDashboard extends JFrame {
         booksList = new JList<>(booksListModel);
         rentalsList = new JList<>(rentalsListModel);
         extensionRequestsList = new JList<>(extensionRequestsListModel);
+        worksListModel = new DefaultListModel<>();
+        worksList = new JList<>(worksListModel);
+        availableWorksOnlyCheckBox = new JCheckBox("Tylko dostępne");
 
         booksList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        rentalsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Wielokrotny wybór - przyjęcie stosu zwrotów jedną transakcją
+        rentalsList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         extensionRequestsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
         // Inicjalizacja pól filtrów
@@ -87,14 +111,18 @@ public class AdminDashboard extends JFrame {
         deleteBookButton = new JButton("Usuń książkę");
         scanISBNButton = new JButton("Skanuj ISBN"); // Na później
         refreshBooksButton = new JButton("Odśwież");
+        moreBooksButton = new JButton("Wczytaj więcej");
         forceReturnButton = new JButton("Oznacz jako zwróconą");
         refreshRentalsButton = new JButton("Odśwież");
         overdueButton = new JButton("Pokaż przeterminowane");
         approveRequestButton = new JButton("Zatwierdź");
         rejectRequestButton = new JButton("Odrzuć");
         refreshRequestsButton = new JButton("Odśwież");
+        refreshWorksButton = new JButton("Odśwież");
         applyFiltersButton = new JButton("Zastosuj filtry");
         clearFiltersButton = new JButton("Wyczyść filtry");
+        facetsLabel = new JLabel(" ");
+        rentalsSummaryLabel = new JLabel("Aktywne wypożyczenia:");
 
         // Wyłącz przycisk skanowania na razie
 //        scanISBNButton.setEnabled(false);
@@ -131,13 +159,14 @@ public class AdminDashboard extends JFrame {
         booksButtonPanel.add(deleteBookButton);
         booksButtonPanel.add(scanISBNButton);
         booksButtonPanel.add(refreshBooksButton);
+        booksButtonPanel.add(moreBooksButton);
         booksPanel.add(booksButtonPanel, BorderLayout.SOUTH);
 
         tabbedPane.addTab("Książki", booksPanel);
 
         // Zakładka "Wypożyczenia"
         JPanel rentalsPanel = new JPanel(new BorderLayout());
-        rentalsPanel.add(new JLabel("Aktywne wypożyczenia:"), BorderLayout.NORTH);
+        rentalsPanel.add(rentalsSummaryLabel, BorderLayout.NORTH);
         rentalsPanel.add(new JScrollPane(rentalsList), BorderLayout.CENTER);
 
         JPanel rentalsButtonPanel = new JPanel(new FlowLayout());
@@ -148,6 +177,18 @@ public class AdminDashboard extends JFrame {
 
         tabbedPane.addTab("Wypożyczenia", rentalsPanel);
 
+        // Zakładka "Tytuły" - egzemplarze zgrupowane po tytule i autorze z liczbą dostępnych
+        JPanel worksPanel = new JPanel(new BorderLayout());
+        worksPanel.add(new JLabel("Tytuły i liczba egzemplarzy:"), BorderLayout.NORTH);
+        worksPanel.add(new JScrollPane(worksList), BorderLayout.CENTER);
+
+        JPanel worksButtonPanel = new JPanel(new FlowLayout());
+        worksButtonPanel.add(availableWorksOnlyCheckBox);
+        worksButtonPanel.add(refreshWorksButton);
+        worksPanel.add(worksButtonPanel, BorderLayout.SOUTH);
+
+        tabbedPane.addTab("Tytuły", worksPanel);
+
         // Zakładka "Prośby o przedłużenie"
         JPanel extensionRequestsPanel = new JPanel(new BorderLayout());
         extensionRequestsPanel.add(new JLabel("Prośby o przedłużenie wypożyczeń:"), BorderLayout.NORTH);
@@ -212,6 +253,7 @@ public class AdminDashboard extends JFrame {
         filterButtonsPanel.add(applyFiltersButton);
         filterButtonsPanel.add(clearFiltersButton);
         filtersPanel.add(filterButtonsPanel, BorderLayout.EAST);
+        filtersPanel.add(facetsLabel, BorderLayout.SOUTH);
 
         return filtersPanel;
     }
@@ -224,12 +266,15 @@ public class AdminDashboard extends JFrame {
         deleteBookButton.addActionListener(e -> deleteBook());
         scanISBNButton.addActionListener(e -> scanISBN()); // Na później
         refreshBooksButton.addActionListener(e -> loadBooks());
+        moreBooksButton.addActionListener(e -> loadMoreBooks());
         forceReturnButton.addActionListener(e -> forceReturn());
         refreshRentalsButton.addActionListener(e -> loadRentals());
         overdueButton.addActionListener(e -> showOverdueRentals());
         approveRequestButton.addActionListener(e -> approveExtensionRequest());
         rejectRequestButton.addActionListener(e -> rejectExtensionRequest());
         refreshRequestsButton.addActionListener(e -> loadExtensionRequests());
+        refreshWorksButton.addActionListener(e -> loadWorks());
+        availableWorksOnlyCheckBox.addActionListener(e -> loadWorks());
         applyFiltersButton.addActionListener(e -> applyFilters());
         clearFiltersButton.addActionListener(e -> clearFilters());
 
@@ -237,6 +282,11 @@ public class AdminDashboard extends JFrame {
         titleFilterField.addActionListener(e -> applyFilters());
         authorFilterField.addActionListener(e -> applyFilters());
         publisherFilterField.addActionListener(e -> applyFilters());
+
+        // Podpowiedzi w polach tekstowych filtrów
+        SuggestionPopup.attach(titleFilterField, bookService::suggestTitles);
+        SuggestionPopup.attach(authorFilterField, bookService::suggestAuthors);
+        SuggestionPopup.attach(publisherFilterField, bookService::suggestPublishers);
         yearFromField.addActionListener(e -> applyFilters());
         yearToField.addActionListener(e -> applyFilters());
 
@@ -336,19 +386,18 @@ public class AdminDashboard extends JFrame {
         // Dla "Wszystkie" pozostawiamy null
 
         // Zastosuj filtry
-        booksListModel.clear();
-        List<Book> filteredBooks = bookService.searchBooksWithFilters(
-                titleFilter.isEmpty() ? null : titleFilter,
-                authorFilter.isEmpty() ? null : authorFilter,
-                publisherFilter.isEmpty() ? null : publisherFilter,
-                yearFrom,
-                yearTo,
-                availableOnly
-        );
+        String title = titleFilter.isEmpty() ? null : titleFilter;
+        String author = authorFilter.isEmpty() ? null : authorFilter;
+        String publisher = publisherFilter.isEmpty() ? null : publisherFilter;
+        Integer from = yearFrom;
+        Integer to = yearTo;
+        Boolean available = availableOnly;
+        booksPageSource = (afterTitle, afterId) -> bookService.searchBooksWithFiltersPage(
+                title, author, publisher, from, to, available, afterTitle, afterId, BOOKS_PAGE_SIZE);
 
-        for (Book book : filteredBooks) {
-            booksListModel.addElement(book);
-        }
+        booksListModel.clear();
+        loadMoreBooks();
+        updateFacets(title, author, publisher, from, to, available);
     }
 
     private void clearFilters() {
@@ -365,28 +414,67 @@ public class AdminDashboard extends JFrame {
         loadBooks();
         loadRentals();
         loadExtensionRequests();
+        loadWorks();
+    }
+
+    // Jedno zapytanie niezależnie od liczby tytułów - liczniki są utrzymywane w tabeli works
+    private void loadWorks() {
+        worksListModel.clear();
+        for (Work work : bookService.getWorks(availableWorksOnlyCheckBox.isSelected())) {
+            worksListModel.addElement(work);
+        }
     }
 
     private void loadBooks() {
+        booksPageSource = (afterTitle, afterId) -> bookService.getBooksPage(afterTitle, afterId, BOOKS_PAGE_SIZE);
         booksListModel.clear();
-        List<Book> books = bookService.getAllBooks();
-        for (Book book : books) {
+        loadMoreBooks();
+        updateFacets(null, null, null, null, null, null);
+    }
+
+    // Liczby książek w grupach dla bieżących filtrów (pusto, dopóki mapy filtrów się wczytują)
+    private void updateFacets(String title, String author, String publisher,
+                              Integer from, Integer to, Boolean available) {
+        BookService.FacetResult facets = bookService.getFacets(title, author, publisher, from, to, available);
+        facetsLabel.setText(facets != null ? facets.toString() : " ");
+        facetsLabel.setToolTipText(facets != null ? facets.toString() : null);
+    }
+
+    // Dokłada do listy następną stronę - kursorem jest ostatnia wyświetlona książka
+    private void loadMoreBooks() {
+        String afterTitle = null;
+        int afterId = 0;
+        if (!booksListModel.isEmpty()) {
+            Book last = booksListModel.lastElement();
+            afterTitle = last.getTitle();
+            afterId = last.getId();
+        }
+
+        List<Book> page = booksPageSource.nextPage(afterTitle, afterId);
+        for (Book book : page) {
             booksListModel.addElement(book);
         }
+        // Niepełna strona oznacza koniec listy
+        moreBooksButton.setEnabled(page.size() == BOOKS_PAGE_SIZE);
     }
 
     private void loadRentals() {
         rentalsListModel.clear();
         List<Rental> rentals = rentalService.getAllActiveRentals();
-        List<Rental> overdueRentals = rentalService.getOverdueRentals();
+        // Liczby z OverdueTracker - bez osobnego zapytania o przeterminowane
+        int overdueCount = rentalService.getOverdueCount();
+        int dueSoonCount = rentalService.getDueWithinDaysCount(DUE_SOON_DAYS);
 
         for (Rental rental : rentals) {
             rentalsListModel.addElement(rental);
         }
+        rentalsSummaryLabel.setText(String.format(
+                "Aktywne wypożyczenia: %d (przeterminowane: %d, do zwrotu w ciągu %d dni: %d)",
+                rentals.size(), overdueCount, DUE_SOON_DAYS, dueSoonCount));
 
         // Pokaż powiadomienie o przeterminowanych książkach (tylko raz przy starcie)
-        if (!overdueRentals.isEmpty() && rentalsListModel.size() == rentals.size()) {
-            String message = "Uwaga! Znaleziono " + overdueRentals.size() + " przeterminowanych wypożyczeń.";
+        if (overdueCount > 0 && rentalsListModel.size() == rentals.size()) {
+            String message = "Uwaga! Znaleziono " + overdueCount + " przeterminowanych wypożyczeń.";
             SwingUtilities.invokeLater(() ->
                     JOptionPane.showMessageDialog(this, message, "Przeterminowane wypożyczenia", JOptionPane.WARNING_MESSAGE)
             );
@@ -611,26 +699,48 @@ public class AdminDashboard extends JFrame {
     }
 
     private void forceReturn() {
-        Rental selectedRental = rentalsList.getSelectedValue();
-        if (selectedRental == null) {
+        List<Rental> selectedRentals = rentalsList.getSelectedValuesList();
+        if (selectedRentals.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Proszę wybrać wypożyczenie!", "Informacja", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
 
         int confirm = JOptionPane.showConfirmDialog(
                 this,
-                "Czy oznaczyć to wypożyczenie jako zwrócone?",
+                selectedRentals.size() == 1
+                        ? "Czy oznaczyć to wypożyczenie jako zwrócone?"
+                        : "Czy oznaczyć " + selectedRentals.size() + " wypożyczeń jako zwrócone?",
                 "Potwierdzenie",
                 JOptionPane.YES_NO_OPTION
         );
 
         if (confirm == JOptionPane.YES_OPTION) {
-            if (rentalService.returnBook(selectedRental.getId())) {
-                JOptionPane.showMessageDialog(this, "Wypożyczenie zostało oznaczone jako zwrócone!", "Sukces", JOptionPane.INFORMATION_MESSAGE);
-                loadData();
+            List<Integer> rentalIds = new ArrayList<>();
+            for (Rental rental : selectedRentals) {
+                rentalIds.add(rental.getId());
+            }
+            // Cały stos zwrotów w jednej transakcji
+            Map<Integer, RentalService.RentalOutcome> results = rentalService.returnBooks(rentalIds);
+
+            StringBuilder failures = new StringBuilder();
+            for (Rental rental : selectedRentals) {
+                RentalService.RentalOutcome outcome = results.get(rental.getId());
+                if (outcome != RentalService.RentalOutcome.SUCCESS) {
+                    failures.append("\n• ").append(rental.getBookTitle()).append(": ").append(outcome.getMessage());
+                }
+            }
+
+            if (failures.length() == 0) {
+                JOptionPane.showMessageDialog(this,
+                        selectedRentals.size() == 1
+                                ? "Wypożyczenie zostało oznaczone jako zwrócone!"
+                                : "Oznaczono " + selectedRentals.size() + " wypożyczeń jako zwrócone!",
+                        "Sukces", JOptionPane.INFORMATION_MESSAGE);
             } else {
-                JOptionPane.showMessageDialog(this, "Błąd podczas aktualizacji wypożyczenia!", "Błąd", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(this, "Błąd podczas aktualizacji wypożyczeń:" + failures,
+                        "Błąd", JOptionPane.ERROR_MESSAGE);
             }
+            loadData();
         }
     }
 
@@ -715,7 +825,7 @@ public class AdminDashboard extends JFrame {
                         displayText += " ⚠️ PRZETERMINOWANA";
                         setBackground(new Color(255, 200, 200)); // Jasny czerwony
                         setForeground(Color.BLACK);
-                    } else if (rental.getExpectedReturnDate() != null && rental.getDaysUntilReturn() <= 3) {
+                    } else if (rental.getExpectedReturnDate() != null && rental.getDaysUntilReturn() <= DUE_SOON_DAYS) {
                         displayText += " ⏰ Kończy się wkrótce";
                         setBackground(new Color(255, 255, 200)); // Jasny żółty
                         setForeground(Color.BLACK);
@@ -735,4 +845,8 @@ public class AdminDashboard extends JFrame {
             return this;
         }
     }
-}
\ No newline at end of file
+
+    private interface BooksPageSource {
+        List<Book> nextPage(String afterTitle, int afterId);
+    }
+}
@@ -1,6 +1,7 @@
 package gui;
 
 import models.Book;
+import services.BookService;
 import util.GoogleBooksAPI;
 import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
@@ -40,6 +41,10 @@ public class ScanISBNDialog extends JDialog {
     private Book foundBook = null;
     private boolean bookAdded = false;
 
+    private BookService bookService = new BookService();
+    // Egzemplarze o zeskanowanym ISBN już obecne w bibliotece (ISBN-10 i ISBN-13 liczone razem)
+    private int copiesInLibrary = 0;
+
     public ScanISBNDialog(Frame parent) {
         super(parent, "Skanuj ISBN z obrazu", true);
         initializeComponents();
@@ -435,6 +440,7 @@ public class ScanISBNDialog extends JDialog {
         SwingWorker<Book, Void> worker = new SwingWorker<>() {
             @Override
             protected Book doInBackground() throws Exception {
+                copiesInLibrary = bookService.getBookCountByISBN(isbn);
                 return GoogleBooksAPI.searchBook(isbn, true);
             }
 
@@ -466,6 +472,9 @@ public class ScanISBNDialog extends JDialog {
                             statusLabel.setText(statusLabel.getText() + " - można dodać ręcznie");
                         }
                     }
+                    if (copiesInLibrary > 0) {
+                        statusLabel.setText(statusLabel.getText() + " (w bibliotece: " + copiesInLibrary + " egz.)");
+                    }
                 } catch (Exception e) {
                     statusLabel.setText("Błąd połączenia z API");
                     statusLabel.setForeground(Color.RED);
@@ -0,0 +1,149 @@
+package gui;
+
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import java.awt.*;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Lista podpowiedzi pod polem tekstowym filtra. Strzałki wybierają podpowiedź, Enter ją
+ * wstawia (i jak zwykle uruchamia filtrowanie), Escape zamyka listę; kliknięcie wstawia
+ * podpowiedź i od razu filtruje.
+ */
+class SuggestionPopup {
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private final JTextField field;
+    // (prefiks, limit) -> podpowiedzi, np. BookService::suggestTitles
+    private final BiFunction<String, Integer, List<String>> source;
+    private final JPopupMenu popup = new JPopupMenu();
+    private final DefaultListModel<String> listModel = new DefaultListModel<>();
+    private final JList<String> list = new JList<>(listModel);
+    // Wstawianie podpowiedzi zmienia tekst pola - wtedy nie szukamy nowych podpowiedzi
+    private boolean accepting = false;
+
+    private SuggestionPopup(JTextField field, BiFunction<String, Integer, List<String>> source) {
+        this.field = field;
+        this.source = source;
+
+        list.setFocusable(false);
+        list.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        popup.setFocusable(false);
+        popup.setBorder(BorderFactory.createLineBorder(Color.GRAY));
+        popup.add(new JScrollPane(list));
+    }
+
+    static void attach(JTextField field, BiFunction<String, Integer, List<String>> source) {
+        new SuggestionPopup(field, source).install();
+    }
+
+    private void install() {
+        field.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { textChanged(); }
+            public void removeUpdate(DocumentEvent e) { textChanged(); }
+            public void changedUpdate(DocumentEvent e) { textChanged(); }
+        });
+
+        field.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (!popup.isVisible()) {
+                    return;
+                }
+                switch (e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN -> {
+                        moveSelection(1);
+                        e.consume();
+                    }
+                    case KeyEvent.VK_UP -> {
+                        moveSelection(-1);
+                        e.consume();
+                    }
+                    case KeyEvent.VK_ESCAPE -> {
+                        popup.setVisible(false);
+                        e.consume();
+                    }
+                    // Bez consume() - po wstawieniu podpowiedzi pole uruchamia filtrowanie
+                    case KeyEvent.VK_ENTER -> {
+                        if (list.getSelectedValue() != null) {
+                            accept(list.getSelectedValue());
+                        }
+                        popup.setVisible(false);
+                    }
+                    default -> { }
+                }
+            }
+        });
+
+        field.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                popup.setVisible(false);
+            }
+        });
+
+        list.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = list.locationToIndex(e.getPoint());
+                if (index >= 0) {
+                    accept(listModel.get(index));
+                    popup.setVisible(false);
+                    field.postActionEvent();
+                }
+            }
+        });
+    }
+
+    private void textChanged() {
+        if (accepting) {
+            return;
+        }
+        // Dokument nie może być zmieniany ani czytany spójnie w trakcie powiadomienia
+        SwingUtilities.invokeLater(this::refresh);
+    }
+
+    private void refresh() {
+        String text = field.getText().trim();
+        List<String> suggestions = text.isEmpty() ? List.of() : source.apply(text, MAX_SUGGESTIONS);
+        // Jedyna podpowiedź równa wpisanemu tekstowi niczego nie wnosi
+        if (suggestions.isEmpty() || !field.isFocusOwner()
+                || suggestions.size() == 1 && suggestions.get(0).equalsIgnoreCase(text)) {
+            popup.setVisible(false);
+            return;
+        }
+
+        listModel.clear();
+        suggestions.forEach(listModel::addElement);
+        list.setVisibleRowCount(suggestions.size());
+        list.clearSelection();
+        popup.setPopupSize(Math.max(field.getWidth(), list.getPreferredScrollableViewportSize().width + 10),
+                list.getPreferredScrollableViewportSize().height + 6);
+        popup.show(field, 0, field.getHeight());
+    }
+
+    private void moveSelection(int step) {
+        int index = list.getSelectedIndex() + step;
+        if (index >= 0 && index < listModel.size()) {
+            list.setSelectedIndex(index);
+            list.ensureIndexIsVisible(index);
+        }
+    }
+
+    private void accept(String suggestion) {
+        accepting = true;
+        try {
+            field.setText(suggestion);
+        } finally {
+            accepting = false;
+        }
+    }
+}
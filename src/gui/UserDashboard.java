@@ -1,24 +1,32 @@
 package gui;
 
 import models.Book;
+import models.Hold;
 import models.Rental;
 import models.User;
+import models.Work;
 import services.BookService;
+import services.HoldService;
 import services.RentalService;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class UserDashboard extends JFrame {
     private User currentUser;
     private BookService bookService = new BookService();
     private RentalService rentalService = new RentalService();
+    private HoldService holdService = new HoldService();
 
     private DefaultListModel<Rental> rentalsListModel;
     private DefaultListModel<Book> availableBooksListModel;
+    private DefaultListModel<Hold> holdsListModel;
     private JList<Rental> rentalsList;
     private JList<Book> availableBooksList;
+    private JList<Hold> holdsList;
 
     // Pola filtrów
     private JTextField titleFilterField;
@@ -27,15 +35,27 @@ public class UserDashboard extends JFrame {
     private JTextField yearFromField;
     private JTextField yearToField;
 
+    // Lista dostępnych książek jest wczytywana stronami - źródło kolejnych stron
+    private static final int BOOKS_PAGE_SIZE = 200;
+    private BooksPageSource booksPageSource;
+
     // Przyciski jako pola klasy
     private JButton logoutButton;
     private JButton returnButton;
     private JButton refreshRentalsButton;
     private JButton rentButton;
     private JButton refreshBooksButton;
+    private JButton moreBooksButton;
     private JButton extendRentalButton;
     private JButton applyFiltersButton;
     private JButton clearFiltersButton;
+    private JButton placeHoldButton;
+    private JButton pickUpHoldButton;
+    private JButton cancelHoldButton;
+    private JButton refreshHoldsButton;
+    private JLabel holdsInfoLabel;
+    private JLabel fuzzyHintLabel;
+    private JLabel facetsLabel;
 
     public UserDashboard(User user) {
         this.currentUser = user;
@@ -43,6 +63,10 @@ public class UserDashboard extends JFrame {
         setupLayout();
         setupEventHandlers();
         loadData();
+        bookService.prepareFuzzySearch();
+        bookService.prepareSuggestions();
+        bookService.prepareFacets();
+        holdService.prepareHoldQueue();
     }
 
     private void initializeComponents() {
@@ -55,9 +79,13 @@ public class UserDashboard extends JFrame {
         availableBooksListModel = new DefaultListModel<>();
         rentalsList = new JList<>(rentalsListModel);
         availableBooksList = new JList<>(availableBooksListModel);
+        holdsListModel = new DefaultListModel<>();
+        holdsList = new JList<>(holdsListModel);
+        holdsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
 
-        rentalsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        availableBooksList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        // Wielokrotny wybór - stos książek wypożyczany/zwracany jedną transakcją
+        rentalsList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        availableBooksList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
 
         // Inicjalizacja pól filtrów
         titleFilterField = new JTextField(10);
@@ -72,9 +100,18 @@ public class UserDashboard extends JFrame {
         refreshRentalsButton = new JButton("Odśwież");
         rentButton = new JButton("Wypożycz książkę");
         refreshBooksButton = new JButton("Odśwież");
+        moreBooksButton = new JButton("Wczytaj więcej");
         extendRentalButton = new JButton("Przedłuż wypożyczenie");
         applyFiltersButton = new JButton("Zastosuj filtry");
         clearFiltersButton = new JButton("Wyczyść filtry");
+        placeHoldButton = new JButton("Zarezerwuj tytuł");
+        pickUpHoldButton = new JButton("Odbierz");
+        cancelHoldButton = new JButton("Anuluj rezerwację");
+        refreshHoldsButton = new JButton("Odśwież");
+        holdsInfoLabel = new JLabel("Moje rezerwacje:");
+        fuzzyHintLabel = new JLabel(" ");
+        fuzzyHintLabel.setForeground(new Color(150, 90, 0));
+        facetsLabel = new JLabel(" ");
 
         // Ustawienie kolorów dla przeterminowanych książek
         rentalsList.setCellRenderer(new RentalListCellRenderer());
@@ -123,10 +160,29 @@ public class UserDashboard extends JFrame {
         JPanel booksButtonPanel = new JPanel(new FlowLayout());
         booksButtonPanel.add(rentButton);
         booksButtonPanel.add(refreshBooksButton);
+        booksButtonPanel.add(moreBooksButton);
         booksPanel.add(booksButtonPanel, BorderLayout.SOUTH);
 
         tabbedPane.addTab("Dostępne książki", booksPanel);
 
+        // Zakładka "Moje rezerwacje" - kolejki na tytuły bez dostępnych egzemplarzy
+        JPanel holdsPanel = new JPanel(new BorderLayout());
+
+        JPanel holdsInfoPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        holdsInfoPanel.add(holdsInfoLabel);
+        holdsPanel.add(holdsInfoPanel, BorderLayout.NORTH);
+
+        holdsPanel.add(new JScrollPane(holdsList), BorderLayout.CENTER);
+
+        JPanel holdsButtonPanel = new JPanel(new FlowLayout());
+        holdsButtonPanel.add(placeHoldButton);
+        holdsButtonPanel.add(pickUpHoldButton);
+        holdsButtonPanel.add(cancelHoldButton);
+        holdsButtonPanel.add(refreshHoldsButton);
+        holdsPanel.add(holdsButtonPanel, BorderLayout.SOUTH);
+
+        tabbedPane.addTab("Moje rezerwacje", holdsPanel);
+
         add(tabbedPane, BorderLayout.CENTER);
     }
 
@@ -176,6 +232,10 @@ public class UserDashboard extends JFrame {
         filterButtonsPanel.add(applyFiltersButton);
         filterButtonsPanel.add(clearFiltersButton);
         filtersPanel.add(filterButtonsPanel, BorderLayout.EAST);
+        JPanel hintsPanel = new JPanel(new GridLayout(2, 1));
+        hintsPanel.add(facetsLabel);
+        hintsPanel.add(fuzzyHintLabel);
+        filtersPanel.add(hintsPanel, BorderLayout.SOUTH);
 
         return filtersPanel;
     }
@@ -187,14 +247,24 @@ public class UserDashboard extends JFrame {
         refreshRentalsButton.addActionListener(e -> loadUserRentals());
         rentButton.addActionListener(e -> rentBook());
         refreshBooksButton.addActionListener(e -> loadAvailableBooks());
+        moreBooksButton.addActionListener(e -> loadMoreBooks());
         extendRentalButton.addActionListener(e -> extendRental());
         applyFiltersButton.addActionListener(e -> applyFilters());
         clearFiltersButton.addActionListener(e -> clearFilters());
+        placeHoldButton.addActionListener(e -> placeHold());
+        pickUpHoldButton.addActionListener(e -> pickUpHold());
+        cancelHoldButton.addActionListener(e -> cancelHold());
+        refreshHoldsButton.addActionListener(e -> loadUserHolds());
 
         // Enter w polach filtrów
         titleFilterField.addActionListener(e -> applyFilters());
         authorFilterField.addActionListener(e -> applyFilters());
         publisherFilterField.addActionListener(e -> applyFilters());
+
+        // Podpowiedzi w polach tekstowych filtrów
+        SuggestionPopup.attach(titleFilterField, bookService::suggestTitles);
+        SuggestionPopup.attach(authorFilterField, bookService::suggestAuthors);
+        SuggestionPopup.attach(publisherFilterField, bookService::suggestPublishers);
         yearFromField.addActionListener(e -> applyFilters());
         yearToField.addActionListener(e -> applyFilters());
 
@@ -268,18 +338,29 @@ public class UserDashboard extends JFrame {
         }
 
         // Zastosuj filtry (tylko dostępne książki dla użytkownika)
-        availableBooksListModel.clear();
-        List<Book> filteredBooks = bookService.searchBooksWithFilters(
-                titleFilter.isEmpty() ? null : titleFilter,
-                authorFilter.isEmpty() ? null : authorFilter,
-                publisherFilter.isEmpty() ? null : publisherFilter,
-                yearFrom,
-                yearTo,
-                true // tylko dostępne książki
-        );
+        String title = titleFilter.isEmpty() ? null : titleFilter;
+        String author = authorFilter.isEmpty() ? null : authorFilter;
+        String publisher = publisherFilter.isEmpty() ? null : publisherFilter;
+        Integer from = yearFrom;
+        Integer to = yearTo;
+        booksPageSource = (afterTitle, afterId) -> bookService.searchBooksWithFiltersPage(
+                title, author, publisher, from, to, true, afterTitle, afterId, BOOKS_PAGE_SIZE);
 
-        for (Book book : filteredBooks) {
-            availableBooksListModel.addElement(book);
+        availableBooksListModel.clear();
+        loadMoreBooks();
+        updateFacets(title, author, publisher, from, to, true);
+
+        // Brak dokładnych wyników - pokaż książki o podobnym tytule lub autorze (literówki)
+        fuzzyHintLabel.setText(" ");
+        if (availableBooksListModel.isEmpty() && (title != null || author != null)) {
+            List<Book> similar = bookService.searchBooksFuzzy(title, author, publisher, from, to, true, BOOKS_PAGE_SIZE);
+            for (Book book : similar) {
+                availableBooksListModel.addElement(book);
+            }
+            moreBooksButton.setEnabled(false);
+            if (!similar.isEmpty()) {
+                fuzzyHintLabel.setText("Brak dokładnych wyników - pokazano książki o podobnym tytule lub autorze");
+            }
         }
     }
 
@@ -295,6 +376,7 @@ public class UserDashboard extends JFrame {
     private void loadData() {
         loadUserRentals();
         loadAvailableBooks();
+        loadUserHolds();
     }
 
     private void loadUserRentals() {
@@ -328,20 +410,153 @@ public class UserDashboard extends JFrame {
         }
     }
 
+    private void loadUserHolds() {
+        holdsListModel.clear();
+        List<Hold> holds = holdService.getUserHolds(currentUser.getId());
+
+        int readyCount = 0;
+        for (Hold hold : holds) {
+            if (hold.isReady()) {
+                readyCount++;
+            }
+            holdsListModel.addElement(hold);
+        }
+
+        String infoText = "Moje rezerwacje: " + holds.size();
+        if (readyCount > 0) {
+            infoText += " (Gotowe do odbioru: " + readyCount + ")";
+        }
+        holdsInfoLabel.setText(infoText);
+        holdsInfoLabel.setForeground(readyCount > 0 ? new Color(0, 128, 0) : Color.BLACK);
+    }
+
+    private void placeHold() {
+        List<Work> works = bookService.getUnavailableWorks();
+        if (works.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "Każdy tytuł ma dostępny egzemplarz - można go wypożyczyć od razu.",
+                    "Informacja", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        Work selectedWork = (Work) JOptionPane.showInputDialog(
+                this,
+                "Wybierz tytuł do rezerwacji:",
+                "Rezerwacja tytułu",
+                JOptionPane.QUESTION_MESSAGE,
+                null,
+                works.toArray(),
+                works.get(0)
+        );
+        if (selectedWork == null) {
+            return;
+        }
+
+        HoldService.HoldOutcome outcome = holdService.placeHold(
+                currentUser.getId(), selectedWork.getTitle(), selectedWork.getAuthor());
+        if (outcome == HoldService.HoldOutcome.SUCCESS) {
+            JOptionPane.showMessageDialog(this, outcome.getMessage(), "Sukces", JOptionPane.INFORMATION_MESSAGE);
+            loadUserHolds();
+        } else {
+            JOptionPane.showMessageDialog(this, outcome.getMessage(), "Rezerwacja", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
+    private void pickUpHold() {
+        Hold selectedHold = holdsList.getSelectedValue();
+        if (selectedHold == null) {
+            JOptionPane.showMessageDialog(this, "Proszę wybrać rezerwację do odbioru!", "Informacja", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        if (!selectedHold.isReady()) {
+            JOptionPane.showMessageDialog(this, "Ta rezerwacja czeka jeszcze w kolejce (pozycja "
+                    + selectedHold.getPosition() + ").", "Informacja", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        RentalService.RentalOutcome outcome = rentalService.pickUpHold(selectedHold.getId());
+        if (outcome == RentalService.RentalOutcome.SUCCESS) {
+            JOptionPane.showMessageDialog(this, "Książka \"" + selectedHold.getTitle() + "\" została wypożyczona!",
+                    "Sukces", JOptionPane.INFORMATION_MESSAGE);
+            loadUserRentals();
+            loadUserHolds();
+        } else {
+            JOptionPane.showMessageDialog(this, outcome.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
+            loadUserHolds();
+        }
+    }
+
+    private void cancelHold() {
+        Hold selectedHold = holdsList.getSelectedValue();
+        if (selectedHold == null) {
+            JOptionPane.showMessageDialog(this, "Proszę wybrać rezerwację do anulowania!", "Informacja", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+
+        int confirm = JOptionPane.showConfirmDialog(
+                this,
+                "Czy na pewno chcesz anulować rezerwację: " + selectedHold.getTitle() + "?",
+                "Potwierdzenie",
+                JOptionPane.YES_NO_OPTION
+        );
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        if (holdService.cancelHold(selectedHold.getId())) {
+            JOptionPane.showMessageDialog(this, "Rezerwacja została anulowana.", "Sukces", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(this, "Błąd podczas anulowania rezerwacji!", "Błąd", JOptionPane.ERROR_MESSAGE);
+        }
+        // Zwolniony egzemplarz mógł wrócić na listę dostępnych
+        loadData();
+    }
+
     private void loadAvailableBooks() {
+        booksPageSource = (afterTitle, afterId) -> bookService.searchBooksWithFiltersPage(
+                null, null, null, null, null, true, afterTitle, afterId, BOOKS_PAGE_SIZE);
+        fuzzyHintLabel.setText(" ");
         availableBooksListModel.clear();
-        List<Book> books = bookService.getAvailableBooks();
-        for (Book book : books) {
+        loadMoreBooks();
+        updateFacets(null, null, null, null, null, true);
+    }
+
+    // Liczby książek w grupach dla bieżących filtrów (pusto, dopóki mapy filtrów się wczytują)
+    private void updateFacets(String title, String author, String publisher,
+                              Integer from, Integer to, Boolean available) {
+        BookService.FacetResult facets = bookService.getFacets(title, author, publisher, from, to, available);
+        facetsLabel.setText(facets != null ? facets.toString() : " ");
+        facetsLabel.setToolTipText(facets != null ? facets.toString() : null);
+    }
+
+    // Dokłada do listy następną stronę - kursorem jest ostatnia wyświetlona książka
+    private void loadMoreBooks() {
+        String afterTitle = null;
+        int afterId = 0;
+        if (!availableBooksListModel.isEmpty()) {
+            Book last = availableBooksListModel.lastElement();
+            afterTitle = last.getTitle();
+            afterId = last.getId();
+        }
+
+        List<Book> page = booksPageSource.nextPage(afterTitle, afterId);
+        for (Book book : page) {
             availableBooksListModel.addElement(book);
         }
+        // Niepełna strona oznacza koniec listy
+        moreBooksButton.setEnabled(page.size() == BOOKS_PAGE_SIZE);
     }
 
     private void returnBook() {
-        Rental selectedRental = rentalsList.getSelectedValue();
-        if (selectedRental == null) {
+        List<Rental> selectedRentals = rentalsList.getSelectedValuesList();
+        if (selectedRentals.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Proszę wybrać książkę do zwrotu!", "Informacja", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
+        if (selectedRentals.size() > 1) {
+            returnBooks(selectedRentals);
+            return;
+        }
+        Rental selectedRental = selectedRentals.get(0);
 
         int confirm = JOptionPane.showConfirmDialog(
                 this,
@@ -360,12 +575,49 @@ public class UserDashboard extends JFrame {
         }
     }
 
+    private void returnBooks(List<Rental> selectedRentals) {
+        int confirm = JOptionPane.showConfirmDialog(
+                this,
+                "Czy na pewno chcesz zwrócić " + selectedRentals.size() + " książek?",
+                "Potwierdzenie",
+                JOptionPane.YES_NO_OPTION
+        );
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        List<Integer> rentalIds = new ArrayList<>();
+        for (Rental rental : selectedRentals) {
+            rentalIds.add(rental.getId());
+        }
+        Map<Integer, RentalService.RentalOutcome> results = rentalService.returnBooks(rentalIds);
+
+        StringBuilder failures = new StringBuilder();
+        int returned = 0;
+        for (Rental rental : selectedRentals) {
+            RentalService.RentalOutcome outcome = results.get(rental.getId());
+            if (outcome == RentalService.RentalOutcome.SUCCESS) {
+                returned++;
+            } else {
+                failures.append("\n• ").append(rental.getBookTitle()).append(": ").append(outcome.getMessage());
+            }
+        }
+
+        showBatchSummary("Zwrócono " + returned + " z " + selectedRentals.size() + " książek.", failures);
+        loadData();
+    }
+
     private void rentBook() {
-        Book selectedBook = availableBooksList.getSelectedValue();
-        if (selectedBook == null) {
+        List<Book> selectedBooks = availableBooksList.getSelectedValuesList();
+        if (selectedBooks.isEmpty()) {
             JOptionPane.showMessageDialog(this, "Proszę wybrać książkę do wypożyczenia!", "Informacja", JOptionPane.INFORMATION_MESSAGE);
             return;
         }
+        if (selectedBooks.size() > 1) {
+            rentBooks(selectedBooks);
+            return;
+        }
+        Book selectedBook = selectedBooks.get(0);
 
         int confirm = JOptionPane.showConfirmDialog(
                 this,
@@ -376,15 +628,62 @@ public class UserDashboard extends JFrame {
         );
 
         if (confirm == JOptionPane.YES_OPTION) {
-            if (rentalService.rentBook(currentUser.getId(), selectedBook.getId())) {
+            RentalService.RentalOutcome outcome = rentalService.checkoutBook(currentUser.getId(), selectedBook.getId());
+            if (outcome == RentalService.RentalOutcome.SUCCESS) {
                 JOptionPane.showMessageDialog(this, "Książka została wypożyczona na 14 dni!", "Sukces", JOptionPane.INFORMATION_MESSAGE);
                 loadData(); // Odśwież obie listy
+            } else if (outcome == RentalService.RentalOutcome.BOOK_NOT_AVAILABLE) {
+                // Ktoś inny wypożyczył egzemplarz po odświeżeniu listy
+                JOptionPane.showMessageDialog(this, outcome.getMessage() + "!", "Informacja", JOptionPane.INFORMATION_MESSAGE);
+                loadData();
             } else {
-                JOptionPane.showMessageDialog(this, "Błąd podczas wypożyczania książki!", "Błąd", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(this, "Błąd podczas wypożyczania książki: " + outcome.getMessage(), "Błąd", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
 
+    private void rentBooks(List<Book> selectedBooks) {
+        int confirm = JOptionPane.showConfirmDialog(
+                this,
+                "Czy chcesz wypożyczyć " + selectedBooks.size() + " książek?\n" +
+                        "Standardowy okres wypożyczenia: 14 dni",
+                "Potwierdzenie",
+                JOptionPane.YES_NO_OPTION
+        );
+        if (confirm != JOptionPane.YES_OPTION) {
+            return;
+        }
+
+        List<Integer> bookIds = new ArrayList<>();
+        for (Book book : selectedBooks) {
+            bookIds.add(book.getId());
+        }
+        Map<Integer, RentalService.RentalOutcome> results = rentalService.rentBooks(currentUser.getId(), bookIds);
+
+        StringBuilder failures = new StringBuilder();
+        int rented = 0;
+        for (Book book : selectedBooks) {
+            RentalService.RentalOutcome outcome = results.get(book.getId());
+            if (outcome == RentalService.RentalOutcome.SUCCESS) {
+                rented++;
+            } else {
+                failures.append("\n• ").append(book.getTitle()).append(": ").append(outcome.getMessage());
+            }
+        }
+
+        showBatchSummary("Wypożyczono " + rented + " z " + selectedBooks.size() + " książek na 14 dni.", failures);
+        loadData();
+    }
+
+    private void showBatchSummary(String summary, StringBuilder failures) {
+        if (failures.length() == 0) {
+            JOptionPane.showMessageDialog(this, summary, "Sukces", JOptionPane.INFORMATION_MESSAGE);
+        } else {
+            JOptionPane.showMessageDialog(this, summary + "\n\nNie udało się:" + failures,
+                    "Informacja", JOptionPane.WARNING_MESSAGE);
+        }
+    }
+
     private void extendRental() {
         Rental selectedRental = rentalsList.getSelectedValue();
         if (selectedRental == null) {
@@ -529,4 +828,8 @@ public class UserDashboard extends JFrame {
             return this;
         }
     }
-}
\ No newline at end of file
+
+    private interface BooksPageSource {
+        List<Book> nextPage(String afterTitle, int afterId);
+    }
+}
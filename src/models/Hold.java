@@ -0,0 +1,75 @@
+package models;
+
+import java.time.LocalDate;
+
+/**
+ * Rezerwacja tytułu (wszystkich egzemplarzy o tym samym tytule i autorze).
+ * Czytelnik czeka w kolejce, dopóki przy zwrocie nie zostanie mu przydzielony egzemplarz.
+ */
+public class Hold {
+    private int id;
+    private int userId;
+    private String title;
+    private String author;
+    private Integer bookId;
+    private String status; // WAITING, READY, FULFILLED, CANCELLED
+    private LocalDate createdAt;
+    private LocalDate readyDate;
+
+    // Pola pomocnicze (nie w tabeli holds)
+    private String username;
+    private int position;
+    private LocalDate estimatedDate;
+
+    // Konstruktor domyślny
+    public Hold() {}
+
+    // Gettery i settery
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public int getUserId() { return userId; }
+    public void setUserId(int userId) { this.userId = userId; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getAuthor() { return author; }
+    public void setAuthor(String author) { this.author = author; }
+
+    public Integer getBookId() { return bookId; }
+    public void setBookId(Integer bookId) { this.bookId = bookId; }
+
+    public String getStatus() { return status; }
+    public void setStatus(String status) { this.status = status; }
+
+    public LocalDate getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDate createdAt) { this.createdAt = createdAt; }
+
+    public LocalDate getReadyDate() { return readyDate; }
+    public void setReadyDate(LocalDate readyDate) { this.readyDate = readyDate; }
+
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+
+    // Miejsce w kolejce tytułu (1 = następny do przydziału), 0 gdy rezerwacja nie czeka
+    public int getPosition() { return position; }
+    public void setPosition(int position) { this.position = position; }
+
+    // Szacowana data przydziału egzemplarza (null, gdy nie da się jej oszacować)
+    public LocalDate getEstimatedDate() { return estimatedDate; }
+    public void setEstimatedDate(LocalDate estimatedDate) { this.estimatedDate = estimatedDate; }
+
+    public boolean isReady() {
+        return "READY".equals(status);
+    }
+
+    @Override
+    public String toString() {
+        if (isReady()) {
+            return title + " - " + author + " [gotowa do odbioru, egz. ID: " + bookId + "]";
+        }
+        String estimate = estimatedDate != null ? ", ok. " + estimatedDate : "";
+        return title + " - " + author + " [pozycja " + position + " w kolejce" + estimate + "]";
+    }
+}
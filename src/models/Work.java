@@ -0,0 +1,41 @@
+package models;
+
+/**
+ * Tytuł - wszystkie egzemplarze o tym samym (znormalizowanym) tytule i autorze,
+ * z liczbą egzemplarzy w bibliotece i dostępnych do wypożyczenia
+ */
+public class Work {
+    private int id;
+    private String isbn;
+    private String title;
+    private String author;
+    private int totalCopies;
+    private int availableCopies;
+
+    // Konstruktor domyślny
+    public Work() {}
+
+    // Gettery i settery
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public String getIsbn() { return isbn; }
+    public void setIsbn(String isbn) { this.isbn = isbn; }
+
+    public String getTitle() { return title; }
+    public void setTitle(String title) { this.title = title; }
+
+    public String getAuthor() { return author; }
+    public void setAuthor(String author) { this.author = author; }
+
+    public int getTotalCopies() { return totalCopies; }
+    public void setTotalCopies(int totalCopies) { this.totalCopies = totalCopies; }
+
+    public int getAvailableCopies() { return availableCopies; }
+    public void setAvailableCopies(int availableCopies) { this.availableCopies = availableCopies; }
+
+    @Override
+    public String toString() {
+        return title + " - " + author + " [dostępne " + availableCopies + " z " + totalCopies + "]";
+    }
+}
@@ -1,38 +1,106 @@
 package services;
 
 import database.DatabaseManager;
+import database.JdbcStreams;
+import database.WriteQueue;
 import models.Book;
+import models.Work;
+import util.CompressedBitSet;
+import util.Isbn;
+import util.TextNormalizer;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class BookService {
+    private static final String INSERT_BOOK_SQL = "INSERT INTO books (isbn, title, author, publisher, year, available, title_key, author_key, publisher_key, isbn_key, created_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, DATE('now'))";
+    // Nowe wiersze trafiają do books_fts, tabel trigramowych i liczników works zbiorczo
+    // (UPDATE/DELETE obsługują triggery - patrz SchemaMigrations)
+    private static final String[] INDEX_NEW_BOOKS_SQL = {
+            """
+            INSERT INTO books_fts (rowid, title_key, author_key, publisher_key, isbn)
+            SELECT id, title_key, author_key, publisher_key, REPLACE(REPLACE(isbn, '-', ''), ' ', '')
+            FROM books WHERE id > ?
+            """,
+            "INSERT INTO books_title_tri (rowid, title_key) SELECT id, title_key FROM books WHERE id > ?",
+            "INSERT INTO books_author_tri (rowid, author_key) SELECT id, author_key FROM books WHERE id > ?",
+            "INSERT INTO books_publisher_tri (rowid, publisher_key) SELECT id, publisher_key FROM books WHERE id > ?",
+            // WHERE true - bez niego SQLite brałby ON CONFLICT za warunek złączenia
+            """
+            INSERT INTO works (title_key, author_key, isbn, title, author, total_copies, available_copies)
+            SELECT title_key, author_key, isbn, title, author, total_copies, available_copies
+            FROM (SELECT title_key, author_key, isbn, title, author, MIN(id),
+                         COUNT(*) AS total_copies, SUM(available = TRUE) AS available_copies
+                  FROM books WHERE id > ? GROUP BY title_key, author_key)
+            WHERE true
+            ON CONFLICT (title_key, author_key) DO UPDATE SET
+                total_copies = total_copies + excluded.total_copies,
+                available_copies = available_copies + excluded.available_copies
+            """
+    };
+    // Domyślna liczba wierszy pobieranych naraz przy odczytach strumieniowych
+    public static final int DEFAULT_FETCH_SIZE = 500;
+    static final Pattern ISBN_LIKE = Pattern.compile("[0-9][0-9Xx\\-\\s]*");
+    // Liczba książek zapisywanych w jednej transakcji podczas importu
+    private static final int IMPORT_CHUNK_SIZE = 5_000;
+    // Premie wyszukiwania wg trafności - większe niż możliwe oceny BM25 (kilkanaście punktów),
+    // więc dokładny ISBN jest zawsze pierwszy, a dokładny tytuł przed pozostałymi
+    private static final double EXACT_ISBN_BOOST = 1_000.0;
+    private static final double EXACT_TITLE_BOOST = 100.0;
 
     public List<Book> getAllBooks() {
-        List<Book> books = new ArrayList<>();
-        String sql = "SELECT * FROM books ORDER BY title";
-
-        try (Connection conn = DatabaseManager.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                Book book = mapResultSetToBook(rs);
-                books.add(book);
-            }
-        } catch (SQLException e) {
+        try (Stream<Book> books = streamAllBooks(DEFAULT_FETCH_SIZE)) {
+            return books.collect(Collectors.toList());
+        } catch (SQLException | JdbcStreams.StreamReadException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        return books;
+    }
+
+    /**
+     * Strumień wszystkich książek posortowanych po tytule - wiersze są mapowane
+     * na bieżąco. Strumień trzeba zamknąć (try-with-resources).
+     */
+    public Stream<Book> streamAllBooks(int fetchSize) throws SQLException {
+        String sql = "SELECT * FROM books ORDER BY title";
+        return JdbcStreams.stream(sql, null, this::mapResultSetToBook, fetchSize);
+    }
+
+    /**
+     * Wszystkie książki w kolejności zapisu w tabeli (bez sortowania po indeksie tytułu) -
+     * do wczytania katalogu w pamięci, który sortuje je sam
+     */
+    Stream<Book> streamAllBooksUnordered(int fetchSize) throws SQLException {
+        return JdbcStreams.stream("SELECT * FROM books", null, this::mapResultSetToBook, fetchSize);
     }
 
     public List<Book> getAvailableBooks() {
+        CatalogueIndex catalogue = CatalogueIndex.getInstance();
+        if (catalogue != null) {
+            return catalogue.getAvailableBooks();
+        }
+
         List<Book> books = new ArrayList<>();
         String sql = "SELECT * FROM books WHERE available = TRUE ORDER BY title";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -52,27 +120,137 @@ public class BookService {
     public List<Book> searchBooksWithFilters(String titleFilter, String authorFilter,
                                              String publisherFilter, Integer yearFrom,
                                              Integer yearTo, Boolean availableOnly) {
-        List<Book> books = new ArrayList<>();
+        CatalogueIndex catalogue = CatalogueIndex.getInstance();
+        if (catalogue != null) {
+            return catalogue.searchWithFilters(titleFilter, authorFilter, publisherFilter, yearFrom, yearTo, availableOnly);
+        }
+
+        String key = filterKey("f", titleFilter, authorFilter, publisherFilter, yearFrom, yearTo, availableOnly)
+                .toString();
+        List<Book> cached = SearchResultCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long version = SearchResultCache.currentVersion();
+
+        try (Stream<Book> books = streamBooksWithFilters(titleFilter, authorFilter, publisherFilter,
+                yearFrom, yearTo, availableOnly, DEFAULT_FETCH_SIZE)) {
+            List<Book> result = books.collect(Collectors.toList());
+            SearchResultCache.put(key, version, result);
+            return result;
+        } catch (SQLException | JdbcStreams.StreamReadException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Strumieniowa wersja searchBooksWithFilters. Strumień trzeba zamknąć (try-with-resources).
+     */
+    public Stream<Book> streamBooksWithFilters(String titleFilter, String authorFilter,
+                                               String publisherFilter, Integer yearFrom,
+                                               Integer yearTo, Boolean availableOnly,
+                                               int fetchSize) throws SQLException {
         StringBuilder sql = new StringBuilder("SELECT * FROM books WHERE 1=1");
         List<Object> parameters = new ArrayList<>();
+        boolean textFiltered = appendFilters(sql, parameters, titleFilter, authorFilter, publisherFilter,
+                yearFrom, yearTo, availableOnly);
+        // Przy filtrze tekstowym cały wynik taniej posortować niż przejść indeks tytułu
+        // z odczytem każdego wiersza - "+title" wyłącza indeks dla ORDER BY.
+        // Strony (searchBooksWithFiltersPage) korzystają z indeksu, bo czytają tylko początek.
+        sql.append(textFiltered ? " ORDER BY +title" : " ORDER BY title");
+
+        return JdbcStreams.stream(sql.toString(), pstmt -> bindParameters(pstmt, parameters),
+                this::mapResultSetToBook, fetchSize);
+    }
 
-        // Filtr tytułu
-        if (titleFilter != null && !titleFilter.trim().isEmpty()) {
-            sql.append(" AND LOWER(title) LIKE LOWER(?)");
-            parameters.add("%" + titleFilter.trim() + "%");
+    /**
+     * Jedna strona listy książek posortowanej po (tytuł, id). Kursor to tytuł i id ostatniej
+     * książki z poprzedniej strony; afterTitle == null oznacza pierwszą stronę.
+     * Zapytanie czyta tylko limit wierszy z indeksu idx_books_title (tytuł + rowid),
+     * więc czas nie rośnie z rozmiarem katalogu.
+     */
+    public List<Book> getBooksPage(String afterTitle, int afterId, int limit) {
+        return searchBooksWithFiltersPage(null, null, null, null, null, null, afterTitle, afterId, limit);
+    }
+
+    /**
+     * Stronicowana wersja searchBooksWithFilters (kursor jak w getBooksPage)
+     */
+    public List<Book> searchBooksWithFiltersPage(String titleFilter, String authorFilter,
+                                                 String publisherFilter, Integer yearFrom,
+                                                 Integer yearTo, Boolean availableOnly,
+                                                 String afterTitle, int afterId, int limit) {
+        String key = filterKey("p", titleFilter, authorFilter, publisherFilter, yearFrom, yearTo, availableOnly)
+                .append('\u0000').append(afterTitle == null ? "-" : "+" + afterTitle)
+                .append('\u0000').append(afterId).append('\u0000').append(limit).toString();
+        List<Book> cached = SearchResultCache.get(key);
+        if (cached != null) {
+            return cached;
         }
+        long version = SearchResultCache.currentVersion();
 
-        // Filtr autora
-        if (authorFilter != null && !authorFilter.trim().isEmpty()) {
-            sql.append(" AND LOWER(author) LIKE LOWER(?)");
-            parameters.add("%" + authorFilter.trim() + "%");
+        StringBuilder sql = new StringBuilder("SELECT * FROM books WHERE 1=1");
+        List<Object> parameters = new ArrayList<>();
+        appendFilters(sql, parameters, titleFilter, authorFilter, publisherFilter, yearFrom, yearTo, availableOnly);
+
+        if (afterTitle != null) {
+            sql.append(" AND (title, id) > (?, ?)");
+            parameters.add(afterTitle);
+            parameters.add(afterId);
         }
+        sql.append(" ORDER BY title, id LIMIT ?");
+        parameters.add(limit);
 
-        // Filtr wydawnictwa
-        if (publisherFilter != null && !publisherFilter.trim().isEmpty()) {
-            sql.append(" AND LOWER(publisher) LIKE LOWER(?)");
-            parameters.add("%" + publisherFilter.trim() + "%");
+        List<Book> books = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+            bindParameters(pstmt, parameters);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(mapResultSetToBook(rs));
+                }
+            }
+            SearchResultCache.put(key, version, books);
+        } catch (SQLException e) {
+            e.printStackTrace();
         }
+        return books;
+    }
+
+    /**
+     * Klucz pamięci wyników (SearchResultCache): filtry w postaci, w jakiej trafiają do
+     * zapytania (złożony tekst, pomijane puste pola i lata <= 0), więc np. "Lem" i "lem"
+     * dzielą jeden wpis. availableOnly ma trzy stany - null oznacza wszystkie książki.
+     */
+    private static StringBuilder filterKey(String kind, String titleFilter, String authorFilter,
+                                           String publisherFilter, Integer yearFrom,
+                                           Integer yearTo, Boolean availableOnly) {
+        return new StringBuilder(kind)
+                .append('\u0000').append(filterKeyPart(titleFilter))
+                .append('\u0000').append(filterKeyPart(authorFilter))
+                .append('\u0000').append(filterKeyPart(publisherFilter))
+                .append('\u0000').append(yearFrom != null && yearFrom > 0 ? yearFrom : 0)
+                .append('\u0000').append(yearTo != null && yearTo > 0 ? yearTo : 0)
+                .append('\u0000').append(availableOnly == null ? "*" : availableOnly.toString());
+    }
+
+    private static String filterKeyPart(String filter) {
+        return filter == null || filter.trim().isEmpty() ? "" : TextNormalizer.fold(filter);
+    }
+
+    /**
+     * Dopisuje warunki filtrów do zapytania. Zwraca true, gdy był filtr tekstowy.
+     */
+    private static boolean appendFilters(StringBuilder sql, List<Object> parameters,
+                                         String titleFilter, String authorFilter,
+                                         String publisherFilter, Integer yearFrom,
+                                         Integer yearTo, Boolean availableOnly) {
+        // Filtry tekstowe - fragment w dowolnym miejscu pola (indeksy trigramowe)
+        boolean textFiltered = addContainsFilter(sql, parameters, "books_title_tri", "title_key", titleFilter);
+        textFiltered |= addContainsFilter(sql, parameters, "books_author_tri", "author_key", authorFilter);
+        textFiltered |= addContainsFilter(sql, parameters, "books_publisher_tri", "publisher_key", publisherFilter);
 
         // Filtr roku od
         if (yearFrom != null && yearFrom > 0) {
@@ -94,146 +272,432 @@ public class BookService {
                 sql.append(" AND available = FALSE");
             }
         }
+        return textFiltered;
+    }
 
-        sql.append(" ORDER BY title");
+    private static void bindParameters(PreparedStatement pstmt, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            pstmt.setObject(i + 1, parameters.get(i));
+        }
+    }
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+    public boolean addBook(Book book) {
+        boolean added = WriteQueue.await(addBookAsync(book), false, "❌ Błąd podczas dodawania książki");
+        if (added) {
+            System.out.println("✅ Dodano książkę: " + book.getTitle() + " (ISBN: " + book.getIsbn() + ")");
+        }
+        return added;
+    }
 
-            // Ustaw parametry
-            for (int i = 0; i < parameters.size(); i++) {
-                pstmt.setObject(i + 1, parameters.get(i));
+    /**
+     * Dodaje książkę przez kolejkę zapisów; future kończy się po zatwierdzeniu transakcji
+     */
+    public CompletableFuture<Boolean> addBookAsync(Book book) {
+        // BRAK sprawdzania duplikatów - biblioteka może mieć wiele egzemplarzy tej samej książki!
+        return DatabaseManager.submitWrite(conn -> {
+            long lastId = getMaxBookId(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_BOOK_SQL)) {
+                bindInsert(pstmt, book);
+                if (pstmt.executeUpdate() == 0) {
+                    return false;
+                }
             }
+            indexBooksAfter(conn, lastId);
+            return true;
+        });
+    }
 
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                Book book = mapResultSetToBook(rs);
-                books.add(book);
+    private static void bindInsert(PreparedStatement pstmt, Book book) throws SQLException {
+        pstmt.setString(1, book.getIsbn());
+        pstmt.setString(2, book.getTitle());
+        pstmt.setString(3, book.getAuthor());
+        pstmt.setString(4, book.getPublisher());
+        pstmt.setInt(5, book.getYear());
+        pstmt.setBoolean(6, book.isAvailable());
+        pstmt.setString(7, TextNormalizer.fold(book.getTitle()));
+        pstmt.setString(8, TextNormalizer.fold(book.getAuthor()));
+        pstmt.setString(9, TextNormalizer.fold(book.getPublisher()));
+        bindIsbnKey(pstmt, 10, book.getIsbn());
+    }
+
+    // Kanoniczny klucz ISBN-13 (util.Isbn) albo NULL dla numeru, który nie jest ISBN
+    private static void bindIsbnKey(PreparedStatement pstmt, int index, String isbn) throws SQLException {
+        Long key = Isbn.toKey(isbn);
+        if (key != null) {
+            pstmt.setLong(index, key);
+        } else {
+            pstmt.setNull(index, Types.INTEGER);
+        }
+    }
+
+    private static long getMaxBookId(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM books");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Dodaje do indeksu pełnotekstowego książki wstawione po lastId. Działa w transakcji
+     * kolejki zapisów, więc w międzyczasie nikt inny nie mógł dodać książek.
+     */
+    private void indexBooksAfter(Connection conn, long lastId) throws SQLException {
+        SearchResultCache.invalidateAfterCommit();
+        for (String sql : INDEX_NEW_BOOKS_SQL) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setLong(1, lastId);
+                pstmt.executeUpdate();
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return books;
+        // Przed odczytem wierszy - struktury w pamięci dostaną już available = FALSE
+        assignNewCopiesToHolds(conn, lastId);
+
+        // Struktury w pamięci (katalog, słowniki literówek, podpowiedzi, mapy filtrów) dostają wiersze
+        // w postaci zapisanej w bazie (z id i datą dodania). Wiersze czytamy zawsze: to, czy struktura
+        // jest wczytana, rozstrzyga się dopiero po zatwierdzeniu (może się właśnie wczytywać).
+        List<Book> added = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM books WHERE id > ? ORDER BY id")) {
+            pstmt.setLong(1, lastId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    added.add(mapResultSetToBook(rs));
+                }
+            }
+        }
+        CatalogueIndex.afterCommit(catalogue -> added.forEach(catalogue::put));
+        FacetIndex.afterCommit(facets -> added.forEach(facets::put));
+        FuzzyIndex.afterCommit(added);
+        SuggestionIndex.afterCommit(Collections.emptyList(), added);
     }
 
-    public boolean addBook(Book book) {
-        // BRAK sprawdzania duplikatów - biblioteka może mieć wiele egzemplarzy tej samej książki!
-        String sql = "INSERT INTO books (isbn, title, author, publisher, year, available, created_at) VALUES (?, ?, ?, ?, ?, ?, DATE('now'))";
+    /**
+     * Nowy egzemplarz tytułu, na który ktoś czeka, trafia do pierwszej rezerwacji w kolejce
+     * (jak zwrócony egzemplarz), a nie na półkę. Kandydaci są czytani przed zmianami, bo
+     * przydział zmienia wiersze books.
+     */
+    private static void assignNewCopiesToHolds(Connection conn, long lastId) throws SQLException {
+        String selectSql = """
+            SELECT b.id FROM books b
+            WHERE b.id > ? AND +b.available = TRUE
+              AND EXISTS (SELECT 1 FROM holds h WHERE h.title_key = b.title_key
+                          AND h.author_key = b.author_key AND h.status = 'WAITING')
+            ORDER BY b.id
+            """;
+        List<Integer> candidates = new ArrayList<>();
+        // "+" wyłącza idx_books_available_title: nowych wierszy jest kilka, dostępnych - cały katalog
+        try (PreparedStatement pstmt = conn.prepareStatement(selectSql)) {
+            pstmt.setLong(1, lastId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    candidates.add(rs.getInt(1));
+                }
+            }
+        }
+        for (int bookId : candidates) {
+            if (HoldService.assignReturnedCopy(conn, bookId)) {
+                setAvailable(conn, bookId, false);
+            }
+        }
+    }
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    /**
+     * Egzemplarz przeniesiony do innego tytułu lub autora: rezerwacja starego tytułu, której był
+     * przydzielony, wraca do kolejki, a wolny egzemplarz trafia do kolejki nowego tytułu (jak
+     * zwrócony). Zwraca nową dostępność albo null, gdy się nie zmienia (np. egzemplarz jest wypożyczony).
+     */
+    private static Boolean reassignMovedCopy(Connection conn, Book previous) throws SQLException {
+        int bookId = previous.getId();
+        if (!previous.isAvailable() && !HoldService.requeueDeletedCopy(conn, bookId)) {
+            return null;
+        }
+        boolean available = !HoldService.assignReturnedCopy(conn, bookId);
+        if (available == previous.isAvailable()) {
+            return null;
+        }
+        setAvailable(conn, bookId, available);
+        return available;
+    }
 
-            pstmt.setString(1, book.getIsbn());
-            pstmt.setString(2, book.getTitle());
-            pstmt.setString(3, book.getAuthor());
-            pstmt.setString(4, book.getPublisher());
-            pstmt.setInt(5, book.getYear());
-            pstmt.setBoolean(6, book.isAvailable());
+    private static void setAvailable(Connection conn, int bookId, boolean available) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("UPDATE books SET available = ? WHERE id = ?")) {
+            pstmt.setBoolean(1, available);
+            pstmt.setInt(2, bookId);
+            pstmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Masowy import katalogu. Książki są czytane strumieniowo i zapisywane paczkami
+     * (batch INSERT, jedna transakcja na paczkę). W pamięci jest najwyżej jedna paczka
+     * budowana i jedna zapisywana, więc zużycie pamięci nie zależy od wielkości importu.
+     */
+    public ImportReport importBooks(Iterator<Book> books, ImportListener listener) {
+        return importBooks(books, IMPORT_CHUNK_SIZE, listener);
+    }
+
+    public ImportReport importBooks(Stream<Book> books, ImportListener listener) {
+        try (books) {
+            return importBooks(books.iterator(), IMPORT_CHUNK_SIZE, listener);
+        }
+    }
 
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                System.out.println("✅ Dodano książkę: " + book.getTitle() + " (ISBN: " + book.getIsbn() + ")");
-                return true;
+    public ImportReport importBooks(Iterator<Book> books, int chunkSize, ImportListener listener) {
+        ImportReport report = new ImportReport();
+        long startTime = System.nanoTime();
+        List<Book> chunk = new ArrayList<>(chunkSize);
+        CompletableFuture<Integer> pending = null;
+        long row = 0;
+
+        while (books.hasNext()) {
+            Book book = books.next();
+            row++;
+
+            String rejection = validateForImport(book);
+            if (rejection != null) {
+                report.reject(row, rejection);
+                continue;
             }
-            return false;
-        } catch (SQLException e) {
-            System.err.println("❌ Błąd podczas dodawania książki: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+
+            chunk.add(book);
+            if (chunk.size() >= chunkSize) {
+                // Zanim wyślemy kolejną paczkę, czekamy na poprzednią (stała pamięć)
+                waitForChunk(pending, report, listener);
+                pending = submitImportChunk(chunk);
+                chunk = new ArrayList<>(chunkSize);
+            }
+        }
+
+        waitForChunk(pending, report, listener);
+        if (!chunk.isEmpty()) {
+            waitForChunk(submitImportChunk(chunk), report, listener);
         }
+
+        report.elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println("✅ Import zakończony: " + report);
+        return report;
+    }
+
+    private CompletableFuture<Integer> submitImportChunk(List<Book> chunk) {
+        return DatabaseManager.submitWrite(conn -> {
+            long lastId = getMaxBookId(conn);
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_BOOK_SQL)) {
+                for (Book book : chunk) {
+                    bindInsert(pstmt, book);
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            indexBooksAfter(conn, lastId);
+            return chunk.size();
+        });
+    }
+
+    private void waitForChunk(CompletableFuture<Integer> pending, ImportReport report, ImportListener listener) {
+        if (pending == null) {
+            return;
+        }
+        Integer imported = WriteQueue.await(pending, null, "❌ Błąd podczas importu paczki książek");
+        if (imported != null) {
+            report.imported += imported;
+        } else {
+            report.failedChunks++;
+        }
+        if (listener != null) {
+            listener.onProgress(report);
+        }
+    }
+
+    private String validateForImport(Book book) {
+        if (book == null) {
+            return "Pusty wiersz";
+        }
+        if (book.getTitle() == null || book.getTitle().trim().isEmpty()) {
+            return "Brak tytułu";
+        }
+        if (book.getAuthor() == null || book.getAuthor().trim().isEmpty()) {
+            return "Brak autora";
+        }
+        if (book.getIsbn() != null && book.getIsbn().length() > 17) {
+            return "Nieprawidłowy ISBN: " + book.getIsbn();
+        }
+        return null;
     }
 
     public boolean updateBookAvailability(int bookId, boolean available) {
-        String sql = "UPDATE books SET available = ? WHERE id = ?";
+        return WriteQueue.await(updateBookAvailabilityAsync(bookId, available), false);
+    }
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+    public CompletableFuture<Boolean> updateBookAvailabilityAsync(int bookId, boolean available) {
+        return DatabaseManager.submitWrite(conn -> updateBookAvailability(conn, bookId, available));
+    }
 
+    /**
+     * Zmienia dostępność egzemplarza na podanym połączeniu (w bieżącej transakcji)
+     */
+    boolean updateBookAvailability(Connection conn, int bookId, boolean available) throws SQLException {
+        String sql = "UPDATE books SET available = ? WHERE id = ?";
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setBoolean(1, available);
             pstmt.setInt(2, bookId);
 
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+            if (pstmt.executeUpdate() == 0) {
+                return false;
+            }
         }
+        CatalogueIndex.afterCommit(catalogue -> catalogue.setAvailable(bookId, available));
+        FacetIndex.afterCommit(facets -> facets.setAvailable(bookId, available));
+        SearchResultCache.invalidateAfterCommit();
+        return true;
     }
 
     public boolean updateBook(Book book) {
+        boolean updated = WriteQueue.await(updateBookAsync(book), false, "❌ Błąd podczas aktualizacji książki");
+        if (updated) {
+            System.out.println("✅ Zaktualizowano książkę: " + book.getTitle() + " (ID: " + book.getId() + ")");
+        }
+        return updated;
+    }
+
+    public CompletableFuture<Boolean> updateBookAsync(Book book) {
         // USUNIĘTO sprawdzanie duplikatów - biblioteka może mieć wiele egzemplarzy!
         // Każdy egzemplarz ma swoje unikalne ID, więc można edytować bez obaw
 
-        String sql = "UPDATE books SET isbn = ?, title = ?, author = ?, publisher = ?, year = ? WHERE id = ?";
+        String sql = "UPDATE books SET isbn = ?, title = ?, author = ?, publisher = ?, year = ?, title_key = ?, author_key = ?, publisher_key = ?, isbn_key = ? WHERE id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setString(1, book.getIsbn());
-            pstmt.setString(2, book.getTitle());
-            pstmt.setString(3, book.getAuthor());
-            pstmt.setString(4, book.getPublisher());
-            pstmt.setInt(5, book.getYear());
-            pstmt.setInt(6, book.getId());
+        return DatabaseManager.submitWrite(conn -> {
+            // Poprzednie wartości są potrzebne podpowiedziom (liczby egzemplarzy) - czytane zawsze,
+            // bo podpowiedzi mogą się właśnie wczytywać i zobaczą zmianę dopiero po zatwierdzeniu
+            Book previous = findBook(conn, book.getId());
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, book.getIsbn());
+                pstmt.setString(2, book.getTitle());
+                pstmt.setString(3, book.getAuthor());
+                pstmt.setString(4, book.getPublisher());
+                pstmt.setInt(5, book.getYear());
+                pstmt.setString(6, TextNormalizer.fold(book.getTitle()));
+                pstmt.setString(7, TextNormalizer.fold(book.getAuthor()));
+                pstmt.setString(8, TextNormalizer.fold(book.getPublisher()));
+                bindIsbnKey(pstmt, 9, book.getIsbn());
+                pstmt.setInt(10, book.getId());
 
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                System.out.println("✅ Zaktualizowano książkę: " + book.getTitle() + " (ID: " + book.getId() + ")");
-                return true;
+                if (pstmt.executeUpdate() == 0) {
+                    return false;
+                }
             }
-            return false;
-        } catch (SQLException e) {
-            System.err.println("❌ Błąd podczas aktualizacji książki: " + e.getMessage());
-            e.printStackTrace();
-            return false;
-        }
+            Boolean available = null;
+            if (previous != null && movesToAnotherTitle(previous, book)) {
+                available = reassignMovedCopy(conn, previous);
+            }
+            Book updated = CatalogueIndex.copy(book);
+            CatalogueIndex.afterCommit(catalogue -> catalogue.update(updated));
+            FacetIndex.afterCommit(facets -> facets.update(updated));
+            if (available != null) {
+                boolean isAvailable = available;
+                CatalogueIndex.afterCommit(catalogue -> catalogue.setAvailable(updated.getId(), isAvailable));
+                FacetIndex.afterCommit(facets -> facets.setAvailable(updated.getId(), isAvailable));
+            }
+            OverdueTracker.afterCommit(tracker -> tracker.updateBook(updated.getId(), updated.getTitle(), updated.getAuthor()));
+            SearchResultCache.invalidateAfterCommit();
+            FuzzyIndex.afterCommit(Collections.singletonList(updated));
+            if (previous != null) {
+                SuggestionIndex.afterCommit(Collections.singletonList(previous), Collections.singletonList(updated));
+            }
+            return true;
+        });
+    }
+
+    // Rezerwacje dotyczą tytułu z autorem (title_key, author_key)
+    private static boolean movesToAnotherTitle(Book previous, Book book) {
+        return !Objects.equals(TextNormalizer.fold(previous.getTitle()), TextNormalizer.fold(book.getTitle()))
+                || !Objects.equals(TextNormalizer.fold(previous.getAuthor()), TextNormalizer.fold(book.getAuthor()));
     }
 
     public boolean deleteBook(int bookId) {
+        boolean deleted = WriteQueue.await(deleteBookAsync(bookId), false, "❌ Błąd podczas usuwania książki");
+        if (deleted) {
+            System.out.println("✅ Usunięto książkę o ID: " + bookId);
+        }
+        return deleted;
+    }
+
+    public CompletableFuture<Boolean> deleteBookAsync(int bookId) {
         String sql = "DELETE FROM books WHERE id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return DatabaseManager.submitWrite(conn -> {
+            Book previous = findBook(conn, bookId);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, bookId);
+                if (pstmt.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            HoldService.requeueDeletedCopy(conn, bookId);
+            CatalogueIndex.afterCommit(catalogue -> catalogue.remove(bookId));
+            FacetIndex.afterCommit(facets -> facets.remove(bookId));
+            OverdueTracker.afterCommit(tracker -> tracker.removeBook(bookId));
+            SearchResultCache.invalidateAfterCommit();
+            if (previous != null) {
+                SuggestionIndex.afterCommit(Collections.singletonList(previous), Collections.emptyList());
+            }
+            return true;
+        });
+    }
 
+    private Book findBook(Connection conn, int bookId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT * FROM books WHERE id = ?")) {
             pstmt.setInt(1, bookId);
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                System.out.println("✅ Usunięto książkę o ID: " + bookId);
-                return true;
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapResultSetToBook(rs) : null;
             }
-            return false;
-        } catch (SQLException e) {
-            System.err.println("❌ Błąd podczas usuwania książki: " + e.getMessage());
-            e.printStackTrace();
-            return false;
         }
     }
 
+    /**
+     * Szuka słów zapytania (także początków słów, bez względu na polskie znaki)
+     * w tytule, autorze, wydawnictwie i ISBN przez indeks books_fts
+     */
     public List<Book> searchBooks(String query) {
+        if (query == null || query.trim().isEmpty()) {
+            return getAllBooks();
+        }
+
+        CatalogueIndex catalogue = CatalogueIndex.getInstance();
+        if (catalogue != null) {
+            return catalogue.search(query);
+        }
+
         List<Book> books = new ArrayList<>();
+        String match = toMatchExpression(query);
+        if (match == null) {
+            return books;
+        }
+        // Wynik zależy tylko od wyrażenia MATCH - zapytania różniące się wielkością liter
+        // czy polskimi znakami dzielą wpis
+        String key = "s\u0000" + match;
+        List<Book> cached = SearchResultCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        long version = SearchResultCache.currentVersion();
+
         String sql = """
-            SELECT * FROM books 
-            WHERE LOWER(title) LIKE LOWER(?) 
-               OR LOWER(author) LIKE LOWER(?) 
-               OR LOWER(publisher) LIKE LOWER(?)
-               OR isbn LIKE ?
-            ORDER BY title
+            SELECT b.* FROM books b
+            WHERE b.id IN (SELECT rowid FROM books_fts WHERE books_fts MATCH ?)
+            ORDER BY b.title
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            String searchPattern = "%" + query + "%";
-            pstmt.setString(1, searchPattern);
-            pstmt.setString(2, searchPattern);
-            pstmt.setString(3, searchPattern);
-            pstmt.setString(4, searchPattern);
+            pstmt.setString(1, match);
 
             ResultSet rs = pstmt.executeQuery();
             while (rs.next()) {
                 Book book = mapResultSetToBook(rs);
                 books.add(book);
             }
+            SearchResultCache.put(key, version, books);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -241,39 +705,547 @@ public class BookService {
     }
 
     /**
-     * Sprawdza ile egzemplarzy książki o danym ISBN jest w bibliotece
+     * Wyszukiwanie wg trafności: pasują te same książki co w searchBooks, ale są oceniane
+     * funkcją BM25 indeksu books_fts (tytuł waży więcej niż autor, autor więcej niż
+     * wydawnictwo i ISBN), z premią za dokładny ISBN i dokładny tytuł. Zamiast sortować
+     * wszystkie trafienia, zachowuje tylko limit najlepszych (kopiec o rozmiarze limit),
+     * a z tabeli books czyta tylko je. Zwraca książki od najlepiej ocenionych.
      */
-    public int getBookCountByISBN(String isbn) {
-        if (isbn == null || isbn.trim().isEmpty()) {
-            return 0;
+    public List<RankedBook> searchBooksRanked(String query, int limit) {
+        List<RankedBook> ranked = new ArrayList<>();
+        String match = query == null ? null : toMatchExpression(query);
+        if (match == null || limit <= 0) {
+            return ranked;
         }
 
-        String sql = "SELECT COUNT(*) FROM books WHERE isbn = ?";
-        try (Connection conn = DatabaseManager.getConnection();
+        // bm25() zwraca wartości ujemne (mniejsza = lepsza) - ocena to jej przeciwieństwo
+        String scoreSql = """
+            SELECT rowid, -bm25(books_fts, 4.0, 2.0, 1.0, 1.0) FROM books_fts
+            WHERE books_fts MATCH ?
+            """;
+
+        // Najgorszy z zachowanych kandydatów na szczycie kopca
+        PriorityQueue<RankedCandidate> best = new PriorityQueue<>(limit + 1, RankedCandidate.WORST_FIRST);
+        Map<Integer, Book> books = new HashMap<>();
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            Set<Integer> exactIsbn = findExactIsbnMatches(conn, query);
+            Set<Integer> exactTitle = findExactTitleMatches(conn, query);
+            // Dokładny ISBN zapisany w innej postaci (ISBN-10 zamiast ISBN-13) nie pasuje w books_fts
+            Set<Integer> unscoredIsbn = new HashSet<>(exactIsbn);
+
+            try (PreparedStatement pstmt = conn.prepareStatement(scoreSql)) {
+                pstmt.setString(1, match);
+                pstmt.setFetchSize(DEFAULT_FETCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt(1);
+                        double score = rs.getDouble(2);
+                        if (exactIsbn.contains(id)) {
+                            score += EXACT_ISBN_BOOST;
+                            unscoredIsbn.remove(id);
+                        }
+                        if (exactTitle.contains(id)) {
+                            score += EXACT_TITLE_BOOST;
+                        }
+                        offer(best, limit, id, score);
+                    }
+                }
+            }
+            for (int id : unscoredIsbn) {
+                offer(best, limit, id, EXACT_ISBN_BOOST);
+            }
+
+            if (!best.isEmpty()) {
+                StringJoiner placeholders = new StringJoiner(", ", "SELECT * FROM books WHERE id IN (", ")");
+                for (int i = 0; i < best.size(); i++) {
+                    placeholders.add("?");
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(placeholders.toString())) {
+                    int index = 1;
+                    for (RankedCandidate candidate : best) {
+                        pstmt.setInt(index++, candidate.id);
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Book book = mapResultSetToBook(rs);
+                            books.put(book.getId(), book);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return ranked;
+        }
+
+        // Kopiec oddaje kandydatów od najgorszego - wynik trzeba odwrócić
+        while (!best.isEmpty()) {
+            RankedCandidate candidate = best.poll();
+            Book book = books.get(candidate.id);
+            if (book != null) {
+                ranked.add(new RankedBook(book, candidate.score));
+            }
+        }
+        Collections.reverse(ranked);
+        return ranked;
+    }
+
+    // Obiekt powstaje tylko dla kandydata lepszego od najgorszego zachowanego
+    private static void offer(PriorityQueue<RankedCandidate> best, int limit, int id, double score) {
+        if (best.size() < limit || RankedCandidate.isBetter(score, id, best.peek())) {
+            best.add(new RankedCandidate(id, score));
+            if (best.size() > limit) {
+                best.poll();
+            }
+        }
+    }
+
+    // Książki o tym samym ISBN co zapytanie - wg klucza isbn_key (ISBN-10 znajduje też zapisany ISBN-13),
+    // a dla numeru spoza ISBN wg kolumny isbn (bez myślników i spacji) w books_fts
+    private static Set<Integer> findExactIsbnMatches(Connection conn, String query) throws SQLException {
+        Set<Integer> ids = new HashSet<>();
+        String trimmed = query.trim();
+        if (!ISBN_LIKE.matcher(trimmed).matches()) {
+            return ids;
+        }
+        Long key = Isbn.toKey(trimmed);
+        String isbn = trimmed.replaceAll("[-\\s]", "").toLowerCase(Locale.ROOT);
+        try (PreparedStatement pstmt = conn.prepareStatement(key != null
+                ? "SELECT id FROM books WHERE isbn_key = ?"
+                : "SELECT rowid FROM books_fts WHERE books_fts MATCH ?")) {
+            if (key != null) {
+                pstmt.setLong(1, key);
+            } else {
+                pstmt.setString(1, "isbn : \"" + isbn + "\"");
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    // Książki o tytule równym zapytaniu (po złożeniu) - indeks idx_books_title_author_key
+    private static Set<Integer> findExactTitleMatches(Connection conn, String query) throws SQLException {
+        Set<Integer> ids = new HashSet<>();
+        String titleKey = TextNormalizer.fold(query);
+        if (titleKey.isEmpty()) {
+            return ids;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM books WHERE title_key = ?")) {
+            pstmt.setString(1, titleKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    ids.add(rs.getInt(1));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Statystyki pamięci wyników wyszukiwania (trafienia, unieważnienia zapisami)
+     */
+    public SearchResultCache.CacheStats getSearchCacheStats() {
+        return SearchResultCache.getStats();
+    }
+
+    /**
+     * Wczytuje w tle mapy filtrów do liczenia książek w grupach (wywoływane przy otwarciu okna)
+     */
+    public void prepareFacets() {
+        FacetIndex.warmUp();
+    }
+
+    /**
+     * Dla filtrów jak w searchBooksWithFilters zwraca id pasujących książek i liczby książek
+     * w grupach: dekady, wydawnictwa, dostępne/wypożyczone (mapy bitowe FacetIndex - bez
+     * zapytań o każdą grupę). Tekst tytułu i autora jest wyszukiwany w bazie jak zwykle.
+     * Dopóki mapy się wczytują, zwraca null zamiast czekać.
+     */
+    public FacetResult getFacets(String titleFilter, String authorFilter, String publisherFilter,
+                                 Integer yearFrom, Integer yearTo, Boolean availableOnly) {
+        FacetIndex facets = FacetIndex.getIfReady();
+        if (facets == null) {
+            FacetIndex.warmUp();
+            return null;
+        }
+
+        CompressedBitSet textMatches = null;
+        StringBuilder sql = new StringBuilder("SELECT id FROM books WHERE 1=1");
+        List<Object> parameters = new ArrayList<>();
+        boolean textFiltered = addContainsFilter(sql, parameters, "books_title_tri", "title_key", titleFilter);
+        textFiltered |= addContainsFilter(sql, parameters, "books_author_tri", "author_key", authorFilter);
+        if (textFiltered) {
+            textMatches = new CompressedBitSet();
+            try (Connection conn = DatabaseManager.getReadConnection();
+                 PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+
+                bindParameters(pstmt, parameters);
+                pstmt.setFetchSize(DEFAULT_FETCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        textMatches.add(rs.getInt(1));
+                    }
+                }
+            } catch (SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+        return facets.query(textMatches, publisherFilter, yearFrom, yearTo, availableOnly);
+    }
+
+    /**
+     * Wczytuje w tle podpowiedzi dla pól filtrów (wywoływane przy otwarciu okna)
+     */
+    public void prepareSuggestions() {
+        SuggestionIndex.warmUp();
+    }
+
+    /**
+     * Najczęstsze tytuły (wg liczby egzemplarzy), których jakieś słowo zaczyna się od prefiksu.
+     * Dopóki podpowiedzi się wczytują, zwraca pustą listę zamiast czekać.
+     */
+    public List<String> suggestTitles(String prefix, int limit) {
+        return suggest(SuggestionIndex.Field.TITLE, prefix, limit);
+    }
+
+    public List<String> suggestAuthors(String prefix, int limit) {
+        return suggest(SuggestionIndex.Field.AUTHOR, prefix, limit);
+    }
+
+    public List<String> suggestPublishers(String prefix, int limit) {
+        return suggest(SuggestionIndex.Field.PUBLISHER, prefix, limit);
+    }
+
+    private static List<String> suggest(SuggestionIndex.Field field, String prefix, int limit) {
+        SuggestionIndex index = SuggestionIndex.getIfReady();
+        if (index == null) {
+            SuggestionIndex.warmUp();
+            return new ArrayList<>();
+        }
+        return index.suggest(field, prefix, limit);
+    }
+
+    /**
+     * Wczytuje w tle słowniki wyszukiwania z literówkami (wywoływane przy otwarciu okna,
+     * żeby pierwsze wyszukiwanie nie czekało na ich zbudowanie)
+     */
+    public void prepareFuzzySearch() {
+        FuzzyIndex.warmUp();
+    }
+
+    /**
+     * Wyszukiwanie odporne na literówki: każde słowo tytułu i autora jest zamieniane na
+     * bliskie słowa ze słownika indeksu (FuzzyIndex, drzewa BK), a książki są układane
+     * wg sumy odległości edycyjnych, potem wg tytułu i id. Pozostałe filtry działają
+     * jak w searchBooksWithFilters. Zwraca najwyżej limit książek.
+     * Liczba kandydatów nie jest ograniczona: przeglądane są wszystkie dopasowania
+     * (tylko id, tytuł i autor), a w pamięci zostaje limit najlepszych - wynik nie zależy
+     * od kolejności, w jakiej zwraca je FTS. Dopóki słowniki się wczytują, zwraca pustą
+     * listę zamiast czekać (wywoływane z wątku okna).
+     */
+    public List<Book> searchBooksFuzzy(String titleQuery, String authorQuery, String publisherFilter,
+                                       Integer yearFrom, Integer yearTo, Boolean availableOnly, int limit) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        FuzzyIndex index = FuzzyIndex.getIfReady();
+        if (index == null) {
+            FuzzyIndex.warmUp();
+            return new ArrayList<>();
+        }
+
+        long deadline = System.nanoTime() + FuzzyIndex.BUDGET_MILLIS * 1_000_000L;
+        List<Map<String, Integer>> titleWords = expandWords(index, FuzzyIndex.Field.TITLE, titleQuery, deadline);
+        List<Map<String, Integer>> authorWords = expandWords(index, FuzzyIndex.Field.AUTHOR, authorQuery, deadline);
+        if (titleWords == null || authorWords == null || titleWords.isEmpty() && authorWords.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // Najpierw książki z najbliższymi słowami - wszystkie mają najniższy możliwy wynik
+        List<Book> best = fetchFuzzyCandidates(toFuzzyMatch(titleWords, authorWords, true),
+                publisherFilter, yearFrom, yearTo, availableOnly, " ORDER BY title LIMIT " + limit);
+        if (best.size() >= limit) {
+            return best;
+        }
+
+        Set<Integer> bestIds = new HashSet<>();
+        best.forEach(book -> bestIds.add(book.getId()));
+        int remaining = limit - best.size();
+
+        // Najgorszy z zachowanych kandydatów na szczycie kopca
+        PriorityQueue<FuzzyCandidate> kept = new PriorityQueue<>(remaining + 1, FuzzyCandidate.BEST_FIRST.reversed());
+        List<Object> parameters = new ArrayList<>();
+        String sql = fuzzyCandidatesSql("id, title, author", toFuzzyMatch(titleWords, authorWords, false),
+                publisherFilter, yearFrom, yearTo, availableOnly, parameters);
+        Map<Integer, Book> books = new HashMap<>();
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                bindParameters(pstmt, parameters);
+                pstmt.setFetchSize(DEFAULT_FETCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        int id = rs.getInt("id");
+                        if (bestIds.contains(id)) {
+                            continue;
+                        }
+                        String title = rs.getString("title");
+                        int score = fuzzyScore(title, titleWords) + fuzzyScore(rs.getString("author"), authorWords);
+                        FuzzyCandidate candidate = new FuzzyCandidate(id, score, title);
+                        if (kept.size() < remaining || FuzzyCandidate.BEST_FIRST.compare(candidate, kept.peek()) < 0) {
+                            kept.add(candidate);
+                            if (kept.size() > remaining) {
+                                kept.poll();
+                            }
+                        }
+                    }
+                }
+            }
+
+            if (!kept.isEmpty()) {
+                StringJoiner placeholders = new StringJoiner(", ", "SELECT * FROM books WHERE id IN (", ")");
+                for (int i = 0; i < kept.size(); i++) {
+                    placeholders.add("?");
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(placeholders.toString())) {
+                    int parameter = 1;
+                    for (FuzzyCandidate candidate : kept) {
+                        pstmt.setInt(parameter++, candidate.id);
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Book book = mapResultSetToBook(rs);
+                            books.put(book.getId(), book);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return best;
+        }
+
+        List<FuzzyCandidate> order = new ArrayList<>(kept);
+        order.sort(FuzzyCandidate.BEST_FIRST);
+        List<Book> ranked = new ArrayList<>(best);
+        for (FuzzyCandidate candidate : order) {
+            Book book = books.get(candidate.id);
+            if (book != null) {
+                ranked.add(book);
+            }
+        }
+        return ranked;
+    }
+
+    /**
+     * Rozwinięcia kolejnych słów zapytania; null, gdy któreś słowo nie ma żadnego odpowiednika
+     */
+    private static List<Map<String, Integer>> expandWords(FuzzyIndex index, FuzzyIndex.Field field,
+                                                         String query, long deadline) {
+        List<Map<String, Integer>> expanded = new ArrayList<>();
+        if (query == null || query.trim().isEmpty()) {
+            return expanded;
+        }
+        for (String word : TextNormalizer.words(TextNormalizer.fold(query))) {
+            Map<String, Integer> expansions = index.expand(field, word, deadline);
+            if (expansions.isEmpty()) {
+                return null;
+            }
+            expanded.add(expansions);
+        }
+        return expanded;
+    }
+
+    /**
+     * Wyrażenie MATCH: dla każdego słowa zapytania alternatywa (OR) jego rozwinięć,
+     * słowa łączone AND. bestOnly - tylko rozwinięcia o najmniejszej odległości.
+     */
+    private static String toFuzzyMatch(List<Map<String, Integer>> titleWords,
+                                       List<Map<String, Integer>> authorWords, boolean bestOnly) {
+        List<String> parts = new ArrayList<>();
+        appendFuzzyMatch(parts, "title_key", titleWords, bestOnly);
+        appendFuzzyMatch(parts, "author_key", authorWords, bestOnly);
+        return String.join(" AND ", parts);
+    }
+
+    private static void appendFuzzyMatch(List<String> parts, String column,
+                                         List<Map<String, Integer>> words, boolean bestOnly) {
+        for (Map<String, Integer> expansions : words) {
+            int bestDistance = Collections.min(expansions.values());
+            StringJoiner alternatives = new StringJoiner(" OR ", column + " : (", ")");
+            expansions.forEach((term, distance) -> {
+                if (!bestOnly || distance == bestDistance) {
+                    alternatives.add('"' + term.replace("\"", "\"\"") + '"');
+                }
+            });
+            parts.add(alternatives.toString());
+        }
+    }
+
+    private static String fuzzyCandidatesSql(String columns, String match, String publisherFilter, Integer yearFrom,
+                                             Integer yearTo, Boolean availableOnly, List<Object> parameters) {
+        StringBuilder sql = new StringBuilder("SELECT " + columns
+                + " FROM books WHERE id IN (SELECT rowid FROM books_fts WHERE books_fts MATCH ?)");
+        parameters.add(match);
+        appendFilters(sql, parameters, null, null, publisherFilter, yearFrom, yearTo, availableOnly);
+        return sql.toString();
+    }
+
+    private List<Book> fetchFuzzyCandidates(String match, String publisherFilter, Integer yearFrom,
+                                            Integer yearTo, Boolean availableOnly, String tail) {
+        List<Object> parameters = new ArrayList<>();
+        String sql = fuzzyCandidatesSql("*", match, publisherFilter, yearFrom, yearTo, availableOnly, parameters) + tail;
+
+        List<Book> books = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, isbn);
-            ResultSet rs = pstmt.executeQuery();
-            return rs.next() ? rs.getInt(1) : 0;
+            bindParameters(pstmt, parameters);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    books.add(mapResultSetToBook(rs));
+                }
+            }
         } catch (SQLException e) {
             e.printStackTrace();
+        }
+        return books;
+    }
+
+    /**
+     * Suma odległości: dla każdego słowa zapytania najbliższe jego rozwinięcie obecne w polu
+     */
+    private static int fuzzyScore(String value, List<Map<String, Integer>> words) {
+        if (words.isEmpty()) {
             return 0;
         }
+        String[] valueWords = TextNormalizer.words(TextNormalizer.fold(value == null ? "" : value));
+        int score = 0;
+        for (Map<String, Integer> expansions : words) {
+            int best = Integer.MAX_VALUE;
+            for (String word : valueWords) {
+                Integer distance = expansions.get(word);
+                if (distance != null && distance < best) {
+                    best = distance;
+                }
+            }
+            // Słowo dopasowane przez tokenizer FTS inaczej niż TextNormalizer - najgorsza odległość
+            score += best == Integer.MAX_VALUE ? Collections.max(expansions.values()) : best;
+        }
+        return score;
+    }
+
+    /**
+     * Filtr "zawiera": tabela trigramowa zawęża kandydatów do wierszy mających najrzadsze
+     * trigramy fragmentu (przecięcie list rowid), a instr() sprawdza, czy fragment
+     * rzeczywiście występuje w kolumnie w całości. Fragment krótszy niż 3 znaki albo
+     * bardzo częsty jest sprawdzany samym instr() (patrz TrigramStats).
+     */
+    private static boolean addContainsFilter(StringBuilder sql, List<Object> parameters,
+                                             String trigramTable, String column, String filter) {
+        if (filter == null || filter.trim().isEmpty()) {
+            return false;
+        }
+        String fragment = TextNormalizer.fold(filter);
+        List<String> trigrams = TrigramStats.forTable(trigramTable).selectTrigrams(fragment);
+        if (!trigrams.isEmpty()) {
+            sql.append(" AND id IN (SELECT rowid FROM ").append(trigramTable)
+                    .append(" WHERE ").append(trigramTable).append(" MATCH ?)");
+            parameters.add(toTrigramExpression(trigrams));
+        }
+        sql.append(" AND instr(").append(column).append(", ?) > 0");
+        parameters.add(fragment);
+        return true;
+    }
+
+    /**
+     * Wyrażenie MATCH dla tabeli trigramowej: trigramy połączone AND
+     */
+    static String toTrigramExpression(List<String> trigrams) {
+        StringBuilder expression = new StringBuilder();
+        for (String trigram : trigrams) {
+            if (expression.length() > 0) {
+                expression.append(" AND ");
+            }
+            expression.append('"').append(trigram.replace("\"", "\"\"")).append('"');
+        }
+        return expression.toString();
+    }
+
+    /**
+     * Buduje wyrażenie MATCH dla FTS5: każde słowo jako prefiks ("wiedz"*), słowa łączone AND.
+     * Tekst jest składany tak samo jak kolumny *_key, a ciąg samych cyfr i myślników
+     * traktowany jako jeden numer ISBN. Zwraca null, gdy w tekście nie ma żadnego słowa.
+     */
+    static String toMatchExpression(String text) {
+        String trimmed = text.trim();
+        String[] tokens;
+        if (ISBN_LIKE.matcher(trimmed).matches()) {
+            tokens = new String[] { trimmed.replaceAll("[-\\s]", "").toLowerCase(Locale.ROOT) };
+        } else {
+            tokens = TextNormalizer.words(TextNormalizer.fold(trimmed));
+        }
+
+        StringBuilder expression = new StringBuilder();
+        for (String token : tokens) {
+            if (expression.length() > 0) {
+                expression.append(" AND ");
+            }
+            expression.append('"').append(token).append("\"*");
+        }
+        return expression.length() > 0 ? expression.toString() : null;
+    }
+
+    /**
+     * Sprawdza ile egzemplarzy książki o danym ISBN jest w bibliotece
+     */
+    public int getBookCountByISBN(String isbn) {
+        return countByIsbn(isbn, false);
     }
 
     /**
      * Sprawdza ile egzemplarzy książki o danym ISBN jest dostępnych
      */
     public int getAvailableBookCountByISBN(String isbn) {
+        return countByIsbn(isbn, true);
+    }
+
+    /**
+     * ISBN-10 i ISBN-13 (z myślnikami lub bez) tej samej książki są liczone razem - porównanie
+     * liczbowego klucza isbn_key w indeksie idx_books_isbn_key. Tekst, który nie jest numerem
+     * ISBN, porównujemy dokładnie tak, jak został zapisany - kandydatów zawęża kolumna isbn
+     * w books_fts (bez myślników i spacji), jak w findExactIsbnMatches.
+     */
+    private int countByIsbn(String isbn, boolean availableOnly) {
         if (isbn == null || isbn.trim().isEmpty()) {
             return 0;
         }
 
-        String sql = "SELECT COUNT(*) FROM books WHERE isbn = ? AND available = TRUE";
-        try (Connection conn = DatabaseManager.getConnection();
+        CatalogueIndex catalogue = CatalogueIndex.getInstance();
+        if (catalogue != null) {
+            return catalogue.countByIsbn(isbn, availableOnly);
+        }
+
+        Long key = Isbn.toKey(isbn);
+        // CROSS JOIN: bez niego planer woli przejść wszystkie dostępne książki (idx_books_available_title)
+        String sql = (key != null ? "SELECT COUNT(*) FROM books b WHERE b.isbn_key = ?"
+                : "SELECT COUNT(*) FROM books_fts CROSS JOIN books b ON b.id = books_fts.rowid"
+                        + " WHERE books_fts MATCH ? AND b.isbn = ?")
+                + (availableOnly ? " AND b.available = TRUE" : "");
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, isbn);
+            if (key != null) {
+                pstmt.setLong(1, key);
+            } else {
+                String phrase = isbn.replaceAll("[-\\s]", "").toLowerCase(Locale.ROOT).replace("\"", "\"\"");
+                pstmt.setString(1, "isbn : \"" + phrase + "\"");
+                pstmt.setString(2, isbn);
+            }
             ResultSet rs = pstmt.executeQuery();
             return rs.next() ? rs.getInt(1) : 0;
         } catch (SQLException e) {
@@ -290,12 +1262,18 @@ public class BookService {
             return 0;
         }
 
-        String sql = "SELECT COUNT(*) FROM books WHERE LOWER(TRIM(title)) = LOWER(TRIM(?)) AND LOWER(TRIM(author)) = LOWER(TRIM(?))";
-        try (Connection conn = DatabaseManager.getConnection();
+        CatalogueIndex catalogue = CatalogueIndex.getInstance();
+        if (catalogue != null) {
+            return catalogue.countByTitleAuthor(TextNormalizer.fold(title), TextNormalizer.fold(author), false);
+        }
+
+        // Licznik utrzymywany w works - jeden odczyt zamiast liczenia egzemplarzy
+        String sql = "SELECT total_copies FROM works WHERE title_key = ? AND author_key = ?";
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, title);
-            pstmt.setString(2, author);
+            pstmt.setString(1, TextNormalizer.fold(title));
+            pstmt.setString(2, TextNormalizer.fold(author));
             ResultSet rs = pstmt.executeQuery();
             return rs.next() ? rs.getInt(1) : 0;
         } catch (SQLException e) {
@@ -312,12 +1290,17 @@ public class BookService {
             return 0;
         }
 
-        String sql = "SELECT COUNT(*) FROM books WHERE LOWER(TRIM(title)) = LOWER(TRIM(?)) AND LOWER(TRIM(author)) = LOWER(TRIM(?)) AND available = TRUE";
-        try (Connection conn = DatabaseManager.getConnection();
+        CatalogueIndex catalogue = CatalogueIndex.getInstance();
+        if (catalogue != null) {
+            return catalogue.countByTitleAuthor(TextNormalizer.fold(title), TextNormalizer.fold(author), true);
+        }
+
+        String sql = "SELECT available_copies FROM works WHERE title_key = ? AND author_key = ?";
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
-            pstmt.setString(1, title);
-            pstmt.setString(2, author);
+            pstmt.setString(1, TextNormalizer.fold(title));
+            pstmt.setString(2, TextNormalizer.fold(author));
             ResultSet rs = pstmt.executeQuery();
             return rs.next() ? rs.getInt(1) : 0;
         } catch (SQLException e) {
@@ -326,6 +1309,226 @@ public class BookService {
         }
     }
 
+    /**
+     * Lista tytułów (egzemplarze zgrupowane po tytule i autorze) z liczbą wszystkich
+     * i dostępnych egzemplarzy - jedno zapytanie do tabeli works utrzymywanej przy zapisach,
+     * zamiast getBookCountBy... i getAvailableBookCountBy... dla każdego wiersza
+     */
+    public List<Work> getWorks(boolean availableOnly) {
+        String sql = "SELECT * FROM works" + (availableOnly ? " WHERE available_copies > 0" : "") + " ORDER BY title, id";
+        List<Work> works = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getReadConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    works.add(mapResultSetToWork(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return works;
+    }
+
+    /**
+     * Tytuły, których wszystkie egzemplarze są wypożyczone lub zarezerwowane (do rezerwacji)
+     */
+    public List<Work> getUnavailableWorks() {
+        String sql = "SELECT * FROM works WHERE available_copies = 0 ORDER BY title, id";
+        List<Work> works = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getReadConnection();
+             Statement stmt = conn.createStatement()) {
+
+            stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    works.add(mapResultSetToWork(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return works;
+    }
+
+    /**
+     * Tytuł, do którego należy egzemplarz o danym tytule i autorze (null, jeśli nie ma takiego)
+     */
+    public Work getWork(String title, String author) {
+        String sql = "SELECT * FROM works WHERE title_key = ? AND author_key = ?";
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setString(1, TextNormalizer.fold(title));
+            pstmt.setString(2, TextNormalizer.fold(author));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? mapResultSetToWork(rs) : null;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static Work mapResultSetToWork(ResultSet rs) throws SQLException {
+        Work work = new Work();
+        work.setId(rs.getInt("id"));
+        work.setIsbn(rs.getString("isbn"));
+        work.setTitle(rs.getString("title"));
+        work.setAuthor(rs.getString("author"));
+        work.setTotalCopies(rs.getInt("total_copies"));
+        work.setAvailableCopies(rs.getInt("available_copies"));
+        return work;
+    }
+
+    /**
+     * Książka z wyniku searchBooksRanked z oceną trafności (większa = lepsza)
+     */
+    public static class RankedBook {
+        private final Book book;
+        private final double score;
+
+        public RankedBook(Book book, double score) {
+            this.book = book;
+            this.score = score;
+        }
+
+        public Book getBook() { return book; }
+        public double getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s [%.2f]", book, score);
+        }
+    }
+
+    // Kandydat wyszukiwania z literówkami: mniejsza suma odległości, potem tytuł i id
+    private static class FuzzyCandidate {
+        static final Comparator<FuzzyCandidate> BEST_FIRST = Comparator.comparingInt((FuzzyCandidate c) -> c.score)
+                .thenComparing(c -> c.title, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparingInt(c -> c.id);
+
+        private final int id;
+        private final int score;
+        private final String title;
+
+        FuzzyCandidate(int id, int score, String title) {
+            this.id = id;
+            this.score = score;
+            this.title = title;
+        }
+    }
+
+    // Kandydat kopca w searchBooksRanked; przy równej ocenie wygrywa mniejsze id
+    private static class RankedCandidate {
+        static final Comparator<RankedCandidate> WORST_FIRST = (a, b) -> a.score != b.score
+                ? Double.compare(a.score, b.score) : Integer.compare(b.id, a.id);
+
+        private final int id;
+        private final double score;
+
+        RankedCandidate(int id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        static boolean isBetter(double score, int id, RankedCandidate other) {
+            return score != other.score ? score > other.score : id < other.id;
+        }
+    }
+
+    /**
+     * Wynik getFacets: id pasujących książek (rosnąco) i liczby książek w grupach. Każda grupa
+     * jest liczona bez własnego filtra (np. liczby dekad nie uwzględniają filtra lat).
+     */
+    public static class FacetResult {
+        private static final int SUMMARY_PUBLISHERS = 5;
+
+        private final int[] bookIds;
+        private final Map<Integer, Integer> decadeCounts;
+        private final Map<String, Integer> publisherCounts;
+        private final int availableCount;
+        private final int rentedCount;
+
+        public FacetResult(int[] bookIds, Map<Integer, Integer> decadeCounts, Map<String, Integer> publisherCounts,
+                           int availableCount, int rentedCount) {
+            this.bookIds = bookIds;
+            this.decadeCounts = decadeCounts;
+            this.publisherCounts = publisherCounts;
+            this.availableCount = availableCount;
+            this.rentedCount = rentedCount;
+        }
+
+        public int[] getBookIds() { return bookIds; }
+        public int getMatchCount() { return bookIds.length; }
+        // Pierwszy rok dekady -> liczba książek, rosnąco
+        public Map<Integer, Integer> getDecadeCounts() { return decadeCounts; }
+        // Wydawnictwo -> liczba książek, od najliczniejszych
+        public Map<String, Integer> getPublisherCounts() { return publisherCounts; }
+        public int getAvailableCount() { return availableCount; }
+        public int getRentedCount() { return rentedCount; }
+
+        @Override
+        public String toString() {
+            StringJoiner decades = new StringJoiner(", ");
+            decadeCounts.forEach((decade, count) -> decades.add(decade + "-" + (decade + 9) + ": " + count));
+            StringJoiner publishers = new StringJoiner(", ");
+            publisherCounts.entrySet().stream().limit(SUMMARY_PUBLISHERS)
+                    .forEach(entry -> publishers.add(entry.getKey() + ": " + entry.getValue()));
+            if (publisherCounts.size() > SUMMARY_PUBLISHERS) {
+                publishers.add("...");
+            }
+            return String.format("Znaleziono: %d | dostępne: %d, wypożyczone: %d | lata: %s | wydawnictwa: %s",
+                    bookIds.length, availableCount, rentedCount, decades, publishers);
+        }
+    }
+
+    /**
+     * Odbiorca postępu importu (wywoływany po zapisaniu każdej paczki)
+     */
+    public interface ImportListener {
+        void onProgress(ImportReport report);
+    }
+
+    /**
+     * Podsumowanie importu. Przechowuje tylko pierwsze MAX_REJECTION_SAMPLES
+     * odrzuconych wierszy, żeby raport nie rósł razem z importem.
+     */
+    public static class ImportReport {
+        public static final int MAX_REJECTION_SAMPLES = 1_000;
+
+        private long imported = 0;
+        private long rejected = 0;
+        private int failedChunks = 0;
+        private long elapsedMillis = 0;
+        private final List<String> rejectionSamples = new ArrayList<>();
+
+        private void reject(long row, String reason) {
+            rejected++;
+            if (rejectionSamples.size() < MAX_REJECTION_SAMPLES) {
+                rejectionSamples.add("Wiersz " + row + ": " + reason);
+            }
+        }
+
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        public int getFailedChunks() { return failedChunks; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public List<String> getRejectionSamples() { return rejectionSamples; }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis == 0 ? 0.0 : imported * 1000.0 / elapsedMillis;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("zaimportowano %d, odrzucono %d, nieudane paczki: %d (%.0f wierszy/s)",
+                    imported, rejected, failedChunks, getRowsPerSecond());
+        }
+    }
+
     private Book mapResultSetToBook(ResultSet rs) throws SQLException {
         Book book = new Book();
         book.setId(rs.getInt("id"));
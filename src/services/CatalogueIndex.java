@@ -0,0 +1,770 @@
+package services;
+
+import database.DatabaseManager;
+import models.Book;
+import util.Isbn;
+import util.TextNormalizer;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntBinaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Katalog książek w pamięci dla stanowisk, które głównie wyszukują. Włączany przez
+ * -Dbiblioteka.catalogue.memory=true; przy pierwszym użyciu wczytuje wszystkie książki,
+ * potem jest aktualizowany przyrostowo po zatwierdzeniu zapisów (BookService, RentalService).
+ *
+ * Egzemplarze zajmują kolejne sloty. Dla slotów utrzymywane są: kolejność po tytule,
+ * mapy słowo -> sloty dla tytułu, autora i wydawnictwa, kolejności po ISBN i po tytule
+ * z autorem (liczenie egzemplarzy), tablica lat oraz bitmapy istniejących i dostępnych
+ * egzemplarzy. Wyniki są kopiami - zmiana zwróconego obiektu Book nie zmienia katalogu.
+ */
+public class CatalogueIndex {
+    private static final boolean ENABLED = Boolean.getBoolean("biblioteka.catalogue.memory");
+    private static final int INITIAL_CAPACITY = 1_024;
+
+    private static volatile CatalogueIndex instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Dane egzemplarzy według slotu
+    private Book[] books = new Book[INITIAL_CAPACITY];
+    private String[] isbnKeys = new String[INITIAL_CAPACITY];
+    private int[] years = new int[INITIAL_CAPACITY];
+    private int slotCount = 0;
+    private final BitSet live = new BitSet();
+    private final BitSet available = new BitSet();
+
+    // id książki -> slot + 1 (0 = brak)
+    private int[] slotById = new int[INITIAL_CAPACITY];
+
+    // Skrót (title_key, author_key) według slotu - liczenie egzemplarzy tytułu
+    private int[] copyHashes = new int[INITIAL_CAPACITY];
+
+    // Posortowane sloty: po (tytuł, id), po (ISBN bez myślników, id) i po (skrót tytułu i autora, id)
+    private int[] titleOrder = new int[INITIAL_CAPACITY];
+    private int[] isbnOrder = new int[INITIAL_CAPACITY];
+    private int[] copyOrder = new int[INITIAL_CAPACITY];
+    private int liveCount = 0;
+    private boolean bulkLoading = false;
+
+    // Słowo (prefiks dla wyszukiwania) -> sloty
+    private final TreeMap<String, IntList> titleWords = new TreeMap<>();
+    private final TreeMap<String, IntList> authorWords = new TreeMap<>();
+    private final TreeMap<String, IntList> publisherWords = new TreeMap<>();
+    // Wspólne instancje powtarzających się wartości (autorzy, wydawnictwa, daty dodania)
+    private final Map<String, String> sharedStrings = new HashMap<>();
+    private final Map<LocalDate, LocalDate> sharedDates = new HashMap<>();
+
+    private long loadMillis = 0;
+
+    private CatalogueIndex() {}
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Zwraca katalog (wczytując go przy pierwszym wywołaniu) albo null,
+     * jeśli katalog w pamięci jest wyłączony lub nie udało się go wczytać.
+     */
+    public static CatalogueIndex getInstance() {
+        if (!ENABLED) {
+            return null;
+        }
+        CatalogueIndex index = instance;
+        if (index != null) {
+            return index;
+        }
+        synchronized (CatalogueIndex.class) {
+            if (instance == null) {
+                index = new CatalogueIndex();
+                // Blokada zapisu przed publikacją: zmiany zatwierdzone w trakcie wczytywania
+                // czekają na koniec wczytywania i są nakładane po nim, w kolejności zatwierdzeń
+                index.lock.writeLock().lock();
+                try {
+                    instance = index;
+                    index.load();
+                } catch (SQLException | RuntimeException e) {
+                    instance = null;
+                    e.printStackTrace();
+                    System.err.println("Nie udało się wczytać katalogu do pamięci: " + e.getMessage());
+                    return null;
+                } finally {
+                    index.lock.writeLock().unlock();
+                }
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Rejestruje zmianę katalogu do wykonania po zatwierdzeniu bieżącej operacji zapisu.
+     * Jeśli katalog nie jest jeszcze wczytany, zmiana jest pomijana - wczytanie i tak ją zobaczy.
+     */
+    static void afterCommit(Consumer<CatalogueIndex> change) {
+        if (!ENABLED) {
+            return;
+        }
+        DatabaseManager.afterCommit(() -> {
+            CatalogueIndex index = instance;
+            if (index != null) {
+                change.accept(index);
+            }
+        });
+    }
+
+    private void load() throws SQLException {
+        long start = System.currentTimeMillis();
+        // Przy wczytywaniu sloty są tylko dopisywane, a kolejności sortowane raz na końcu
+        bulkLoading = true;
+        try (Stream<Book> all = new BookService().streamAllBooksUnordered(BookService.DEFAULT_FETCH_SIZE)) {
+            all.forEach(this::insert);
+        } finally {
+            bulkLoading = false;
+        }
+        sortOrder(titleOrder, this::compareTitles);
+        sortOrder(isbnOrder, this::compareIsbns);
+        sortOrder(copyOrder, this::compareCopyHashes);
+        loadMillis = System.currentTimeMillis() - start;
+        System.out.println("✅ Wczytano katalog do pamięci: " + getStats());
+    }
+
+    // ===== Zmiany (wywoływane po zatwierdzeniu zapisu) =====
+
+    /**
+     * Dodaje egzemplarz albo zastępuje go pełnym stanem z bazy
+     */
+    void put(Book book) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(book.getId());
+            if (slot >= 0) {
+                unindex(slot);
+                store(slot, copy(book));
+            } else {
+                insert(book);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Zmiana danych opisowych - dostępność i data dodania pozostają z katalogu
+     */
+    void update(Book book) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(book.getId());
+            if (slot < 0) {
+                return;
+            }
+            Book updated = copy(book);
+            updated.setAvailable(available.get(slot));
+            updated.setCreatedAt(books[slot].getCreatedAt());
+            unindex(slot);
+            store(slot, updated);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(int bookId) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(bookId);
+            if (slot < 0) {
+                return;
+            }
+            unindex(slot);
+            books[slot] = null;
+            isbnKeys[slot] = null;
+            slotById[bookId] = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void setAvailable(int bookId, boolean isAvailable) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(bookId);
+            if (slot >= 0) {
+                available.set(slot, isAvailable);
+                books[slot].setAvailable(isAvailable);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ===== Zapytania =====
+
+    public List<Book> getAvailableBooks() {
+        lock.readLock().lock();
+        try {
+            BitSet matches = (BitSet) available.clone();
+            return collect(matches, null, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Odpowiednik BookService.searchBooksWithFilters: pole musi zawierać cały filtr
+     * w dowolnym miejscu, bez względu na wielkość liter i znaki diakrytyczne (jak instr
+     * na kolumnach *_key w zapytaniu), wyniki posortowane po tytule
+     */
+    public List<Book> searchWithFilters(String titleFilter, String authorFilter, String publisherFilter,
+                                        Integer yearFrom, Integer yearTo, Boolean availableOnly) {
+        lock.readLock().lock();
+        try {
+            BitSet matches = (BitSet) live.clone();
+            matchFragment(matches, titleWords, titleFilter, Book::getTitle);
+            matchFragment(matches, authorWords, authorFilter, Book::getAuthor);
+            matchFragment(matches, publisherWords, publisherFilter, Book::getPublisher);
+
+            if (availableOnly != null) {
+                if (availableOnly) {
+                    matches.and(available);
+                } else {
+                    matches.andNot(available);
+                }
+            }
+
+            Integer from = yearFrom != null && yearFrom > 0 ? yearFrom : null;
+            Integer to = yearTo != null && yearTo > 0 ? yearTo : null;
+            return collect(matches, from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Odpowiednik BookService.searchBooks: każde słowo zapytania musi pasować
+     * do dowolnego pola (tytuł, autor, wydawnictwo, ISBN)
+     */
+    public List<Book> search(String query) {
+        lock.readLock().lock();
+        try {
+            String trimmed = query.trim();
+            String[] words = BookService.ISBN_LIKE.matcher(trimmed).matches()
+                    ? new String[] { isbnKey(trimmed) }
+                    : TextNormalizer.words(TextNormalizer.fold(trimmed));
+            if (words.length == 0) {
+                return new ArrayList<>();
+            }
+
+            BitSet matches = (BitSet) live.clone();
+            for (String word : words) {
+                BitSet anyField = prefixMatch(titleWords, word);
+                anyField.or(prefixMatch(authorWords, word));
+                anyField.or(prefixMatch(publisherWords, word));
+                anyField.or(isbnPrefixMatch(word));
+                matches.and(anyField);
+            }
+            return collect(matches, null, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Odpowiednik BookService.getBookCountByISBN: numer ISBN porównywany kluczem ISBN-13
+     * (util.Isbn), inny tekst - dokładnie tak, jak został zapisany
+     */
+    public int countByIsbn(String isbn, boolean availableOnly) {
+        lock.readLock().lock();
+        try {
+            Long key = Isbn.toKey(isbn);
+            if (key == null) {
+                String isbnKey = isbnKey(isbn);
+                int count = 0;
+                for (int i = lowerBound(isbnOrder, isbnKey); i < liveCount && isbnKeys[isbnOrder[i]].equals(isbnKey); i++) {
+                    int slot = isbnOrder[i];
+                    if (isbn.equals(books[slot].getIsbn()) && (!availableOnly || available.get(slot))) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+
+            // Ten sam klucz mają zapis ISBN-13 i ISBN-10 (z dowolną cyfrą kontrolną) - dwa zakresy isbnOrder
+            int count = countIsbnRange(Isbn.format(key), 13, key, availableOnly);
+            String core = Isbn.isbn10Core(key);
+            if (core != null) {
+                count += countIsbnRange(core, 10, key, availableOnly);
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int countIsbnRange(String prefix, int length, long key, boolean availableOnly) {
+        int count = 0;
+        for (int i = lowerBound(isbnOrder, prefix); i < liveCount && isbnKeys[isbnOrder[i]].startsWith(prefix); i++) {
+            int slot = isbnOrder[i];
+            if (isbnKeys[slot].length() == length && Long.valueOf(key).equals(Isbn.toKey(books[slot].getIsbn()))
+                    && (!availableOnly || available.get(slot))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int countByTitleAuthor(String titleKey, String authorKey, boolean availableOnly) {
+        lock.readLock().lock();
+        try {
+            int hash = copyHash(titleKey, authorKey);
+            int count = 0;
+            for (int i = lowerBound(copyOrder, hash); i < liveCount && copyHashes[copyOrder[i]] == hash; i++) {
+                int slot = copyOrder[i];
+                // Ten sam skrót może mieć inny tytuł - porównanie kluczy rozstrzyga
+                if (titleKey.equals(TextNormalizer.fold(books[slot].getTitle()))
+                        && authorKey.equals(TextNormalizer.fold(books[slot].getAuthor()))
+                        && (!availableOnly || available.get(slot))) {
+                    count++;
+                }
+            }
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ===== Indeksowanie =====
+
+    private void insert(Book book) {
+        ensureCapacity(slotCount + 1);
+        int slot = slotCount++;
+        store(slot, copy(book));
+    }
+
+    private void store(int slot, Book book) {
+        book.setAuthor(share(book.getAuthor()));
+        book.setPublisher(share(book.getPublisher()));
+        if (book.getCreatedAt() != null) {
+            book.setCreatedAt(sharedDates.computeIfAbsent(book.getCreatedAt(), date -> date));
+        }
+        books[slot] = book;
+        String isbnKey = isbnKey(book.getIsbn());
+        isbnKeys[slot] = isbnKey.equals(book.getIsbn()) ? book.getIsbn() : isbnKey;
+        years[slot] = book.getYear();
+        live.set(slot);
+        available.set(slot, book.isAvailable());
+
+        int id = book.getId();
+        if (id >= slotById.length) {
+            slotById = Arrays.copyOf(slotById, Math.max(id + 1, slotById.length * 2));
+        }
+        slotById[id] = slot + 1;
+
+        String titleKey = TextNormalizer.fold(book.getTitle());
+        String authorKey = TextNormalizer.fold(book.getAuthor());
+        addWords(titleWords, titleKey, slot);
+        addWords(authorWords, authorKey, slot);
+        addWords(publisherWords, TextNormalizer.fold(book.getPublisher()), slot);
+        copyHashes[slot] = copyHash(titleKey, authorKey);
+
+        insertOrdered(titleOrder, slot, this::compareTitles);
+        insertOrdered(isbnOrder, slot, this::compareIsbns);
+        insertOrdered(copyOrder, slot, this::compareCopyHashes);
+        liveCount++;
+    }
+
+    private void unindex(int slot) {
+        Book book = books[slot];
+        String titleKey = TextNormalizer.fold(book.getTitle());
+        String authorKey = TextNormalizer.fold(book.getAuthor());
+        removeWords(titleWords, titleKey, slot);
+        removeWords(authorWords, authorKey, slot);
+        removeWords(publisherWords, TextNormalizer.fold(book.getPublisher()), slot);
+
+        removeOrdered(titleOrder, slot, this::compareTitles);
+        removeOrdered(isbnOrder, slot, this::compareIsbns);
+        removeOrdered(copyOrder, slot, this::compareCopyHashes);
+        liveCount--;
+        live.clear(slot);
+        available.clear(slot);
+    }
+
+    private static void addWords(TreeMap<String, IntList> index, String folded, int slot) {
+        for (String word : uniqueWords(folded)) {
+            index.computeIfAbsent(word, k -> new IntList()).add(slot);
+        }
+    }
+
+    private static void removeWords(TreeMap<String, IntList> index, String folded, int slot) {
+        for (String word : uniqueWords(folded)) {
+            IntList slots = index.get(word);
+            if (slots != null && slots.remove(slot) && slots.size == 0) {
+                index.remove(word);
+            }
+        }
+    }
+
+    private static String[] uniqueWords(String folded) {
+        return Arrays.stream(TextNormalizer.words(folded)).distinct().toArray(String[]::new);
+    }
+
+    /**
+     * Zawęża zbiór do slotów, w których pole zawiera fragment filtra (jak instr() w BookService).
+     * Kandydaci to sloty mające słowa zawierające kolejne części fragmentu; gdy fragment
+     * nie jest pojedynczym słowem, sprawdzany jest jeszcze cały złożony tekst pola.
+     */
+    private void matchFragment(BitSet matches, TreeMap<String, IntList> index, String filter,
+                               Function<Book, String> field) {
+        if (filter == null || filter.trim().isEmpty()) {
+            return;
+        }
+        String fragment = TextNormalizer.fold(filter);
+        String[] pieces = TextNormalizer.words(fragment);
+        for (String piece : pieces) {
+            matches.and(containsMatch(index, piece));
+        }
+        if (pieces.length == 1 && pieces[0].equals(fragment)) {
+            return;
+        }
+
+        for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+            String value = TextNormalizer.fold(field.apply(books[slot]));
+            if (value == null || !value.contains(fragment)) {
+                matches.clear(slot);
+            }
+        }
+    }
+
+    private static BitSet containsMatch(TreeMap<String, IntList> index, String piece) {
+        BitSet result = new BitSet();
+        for (Map.Entry<String, IntList> entry : index.entrySet()) {
+            if (entry.getKey().contains(piece)) {
+                IntList slots = entry.getValue();
+                for (int i = 0; i < slots.size; i++) {
+                    result.set(slots.values[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static BitSet prefixMatch(TreeMap<String, IntList> index, String prefix) {
+        BitSet result = new BitSet();
+        NavigableMap<String, IntList> range = index.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+        for (IntList slots : range.values()) {
+            for (int i = 0; i < slots.size; i++) {
+                result.set(slots.values[i]);
+            }
+        }
+        return result;
+    }
+
+    private BitSet isbnPrefixMatch(String prefix) {
+        BitSet result = new BitSet();
+        for (int i = lowerBound(isbnOrder, prefix); i < liveCount && isbnKeys[isbnOrder[i]].startsWith(prefix); i++) {
+            result.set(isbnOrder[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Zwraca kopie pasujących egzemplarzy w kolejności tytułów. Mały wynik jest sortowany
+     * bezpośrednio, duży - zbierany przejściem po gotowej kolejności tytułów.
+     */
+    private List<Book> collect(BitSet matches, Integer yearFrom, Integer yearTo) {
+        if (yearFrom != null || yearTo != null) {
+            for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+                if (!yearMatches(slot, yearFrom, yearTo)) {
+                    matches.clear(slot);
+                }
+            }
+        }
+
+        int count = matches.cardinality();
+        List<Book> result = new ArrayList<>(count);
+        if (count == 0) {
+            return result;
+        }
+
+        if (count < liveCount / 16) {
+            Integer[] slots = new Integer[count];
+            int n = 0;
+            for (int slot = matches.nextSetBit(0); slot >= 0; slot = matches.nextSetBit(slot + 1)) {
+                slots[n++] = slot;
+            }
+            Arrays.sort(slots, this::compareTitles);
+            for (int slot : slots) {
+                result.add(copy(books[slot]));
+            }
+        } else {
+            for (int i = 0; i < liveCount; i++) {
+                int slot = titleOrder[i];
+                if (matches.get(slot)) {
+                    result.add(copy(books[slot]));
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean yearMatches(int slot, Integer yearFrom, Integer yearTo) {
+        return (yearFrom == null || years[slot] >= yearFrom) && (yearTo == null || years[slot] <= yearTo);
+    }
+
+    // ===== Posortowane tablice slotów =====
+
+    private int compareTitles(int a, int b) {
+        int byTitle = compareNullable(books[a].getTitle(), books[b].getTitle());
+        return byTitle != 0 ? byTitle : Integer.compare(books[a].getId(), books[b].getId());
+    }
+
+    private int compareIsbns(int a, int b) {
+        int byIsbn = compareNullable(isbnKeys[a], isbnKeys[b]);
+        return byIsbn != 0 ? byIsbn : Integer.compare(books[a].getId(), books[b].getId());
+    }
+
+    private static int compareNullable(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : -1) : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private int compareCopyHashes(int a, int b) {
+        int byHash = Integer.compare(copyHashes[a], copyHashes[b]);
+        return byHash != 0 ? byHash : Integer.compare(books[a].getId(), books[b].getId());
+    }
+
+    private void insertOrdered(int[] order, int slot, IntBinaryOperator comparator) {
+        if (bulkLoading) {
+            order[liveCount] = slot;
+            return;
+        }
+        int low = 0;
+        int high = liveCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparator.applyAsInt(order[mid], slot) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        System.arraycopy(order, low, order, low + 1, liveCount - low);
+        order[low] = slot;
+    }
+
+    private void removeOrdered(int[] order, int slot, IntBinaryOperator comparator) {
+        int low = 0;
+        int high = liveCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparator.applyAsInt(order[mid], slot);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                System.arraycopy(order, mid + 1, order, mid, liveCount - mid - 1);
+                return;
+            }
+        }
+    }
+
+    private void sortOrder(int[] order, IntBinaryOperator comparator) {
+        Integer[] sorted = new Integer[liveCount];
+        for (int i = 0; i < liveCount; i++) {
+            sorted[i] = order[i];
+        }
+        Arrays.sort(sorted, comparator::applyAsInt);
+        for (int i = 0; i < liveCount; i++) {
+            order[i] = sorted[i];
+        }
+    }
+
+    private int lowerBound(int[] order, String isbnKey) {
+        int low = 0;
+        int high = liveCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareNullable(isbnKeys[order[mid]], isbnKey) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int lowerBound(int[] order, int copyHash) {
+        int low = 0;
+        int high = liveCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (copyHashes[order[mid]] < copyHash) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= books.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, books.length * 2);
+        books = Arrays.copyOf(books, newCapacity);
+        isbnKeys = Arrays.copyOf(isbnKeys, newCapacity);
+        years = Arrays.copyOf(years, newCapacity);
+        copyHashes = Arrays.copyOf(copyHashes, newCapacity);
+        titleOrder = Arrays.copyOf(titleOrder, newCapacity);
+        isbnOrder = Arrays.copyOf(isbnOrder, newCapacity);
+        copyOrder = Arrays.copyOf(copyOrder, newCapacity);
+    }
+
+    private int slotOf(int bookId) {
+        return bookId >= 0 && bookId < slotById.length ? slotById[bookId] - 1 : -1;
+    }
+
+    private static String isbnKey(String isbn) {
+        return isbn == null ? "" : isbn.replaceAll("[-\\s]", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static int copyHash(String titleKey, String authorKey) {
+        return 31 * String.valueOf(titleKey).hashCode() + String.valueOf(authorKey).hashCode();
+    }
+
+    private String share(String value) {
+        return value == null ? null : sharedStrings.computeIfAbsent(value, v -> v);
+    }
+
+    static Book copy(Book book) {
+        Book copy = new Book();
+        copy.setId(book.getId());
+        copy.setIsbn(book.getIsbn());
+        copy.setTitle(book.getTitle());
+        copy.setAuthor(book.getAuthor());
+        copy.setPublisher(book.getPublisher());
+        copy.setYear(book.getYear());
+        copy.setAvailable(book.isAvailable());
+        copy.setCreatedAt(book.getCreatedAt());
+        return copy;
+    }
+
+    // ===== Statystyki =====
+
+    public CatalogueStats getStats() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            // Tablice według slotu i posortowane kolejności
+            bytes += (long) books.length * (4 + 4 + 4 + 4 + 4 + 4 + 4) + slotById.length * 4L;
+            bytes += live.size() / 8 + available.size() / 8;
+            // Obiekty Book z tytułem i ISBN (autorzy, wydawnictwa i daty są współdzielone)
+            for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+                Book book = books[slot];
+                bytes += 40 + stringBytes(book.getTitle()) + stringBytes(book.getIsbn());
+                if (isbnKeys[slot] != book.getIsbn()) {
+                    bytes += stringBytes(isbnKeys[slot]);
+                }
+            }
+            for (String shared : sharedStrings.keySet()) {
+                bytes += 48 + stringBytes(shared);
+            }
+            bytes += sharedDates.size() * (48L + 24);
+            int words = 0;
+            for (TreeMap<String, IntList> index : List.of(titleWords, authorWords, publisherWords)) {
+                words += index.size();
+                for (Map.Entry<String, IntList> entry : index.entrySet()) {
+                    bytes += 40 + stringBytes(entry.getKey()) + entry.getValue().bytes();
+                }
+            }
+            return new CatalogueStats(liveCount, words, bytes, loadMillis);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long stringBytes(String s) {
+        // nagłówek String + nagłówek tablicy + znaki (Latin-1 po 1 bajcie, pozostałe po 2)
+        if (s == null) {
+            return 0;
+        }
+        boolean latin1 = s.chars().allMatch(c -> c < 256);
+        return 24 + 16 + (long) s.length() * (latin1 ? 1 : 2);
+    }
+
+    public static class CatalogueStats {
+        private final int books;
+        private final int words;
+        private final long estimatedBytes;
+        private final long loadMillis;
+
+        CatalogueStats(int books, int words, long estimatedBytes, long loadMillis) {
+            this.books = books;
+            this.words = words;
+            this.estimatedBytes = estimatedBytes;
+            this.loadMillis = loadMillis;
+        }
+
+        public int getBooks() { return books; }
+        public int getWords() { return words; }
+        public long getEstimatedBytes() { return estimatedBytes; }
+        public long getLoadMillis() { return loadMillis; }
+
+        public long getBytesPer100kBooks() {
+            return books > 0 ? estimatedBytes * 100_000L / books : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d książek, %d słów, ~%.1f MB (~%.1f MB na 100 tys. książek), wczytanie %d ms",
+                    books, words, estimatedBytes / 1048576.0, getBytesPer100kBooks() / 1048576.0, loadMillis);
+        }
+    }
+
+    /**
+     * Rosnąca lista int bez opakowywania w Integer
+     */
+    private static class IntList {
+        private int[] values = new int[2];
+        private int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        boolean remove(int value) {
+            for (int i = 0; i < size; i++) {
+                if (values[i] == value) {
+                    values[i] = values[--size];
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        long bytes() {
+            return 16 + 16 + values.length * 4L;
+        }
+    }
+}
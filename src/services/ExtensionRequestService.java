@@ -1,6 +1,7 @@
 package services;
 
 import database.DatabaseManager;
+import database.WriteQueue;
 import models.ExtensionRequest;
 
 import java.sql.*;
@@ -22,7 +23,7 @@ public class ExtensionRequestService {
             ORDER BY er.request_date DESC
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
@@ -51,7 +52,7 @@ public class ExtensionRequestService {
             ORDER BY er.request_date ASC
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -65,6 +66,42 @@ public class ExtensionRequestService {
         return requests;
     }
 
+    // Pobiera jedną stronę oczekujących próśb (najstarsze pierwsze). Kursor to data i id
+    // ostatniej prośby z poprzedniej strony; afterRequestDate == null oznacza pierwszą stronę.
+    public List<ExtensionRequest> getPendingRequestsPage(LocalDate afterRequestDate, int afterId, int limit) {
+        List<ExtensionRequest> requests = new ArrayList<>();
+        String sql = """
+            SELECT er.*, u.username, b.title as book_title, b.author as book_author
+            FROM extension_requests er
+            JOIN rentals r ON er.rental_id = r.id
+            JOIN users u ON er.user_id = u.id
+            JOIN books b ON r.book_id = b.id
+            WHERE er.status = 'PENDING'
+            """ + (afterRequestDate != null ? " AND (er.request_date, er.id) > (?, ?)" : "") + """
+             ORDER BY er.request_date ASC, er.id ASC LIMIT ?
+            """;
+
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            if (afterRequestDate != null) {
+                pstmt.setString(index++, afterRequestDate.toString());
+                pstmt.setInt(index++, afterId);
+            }
+            pstmt.setInt(index, limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    requests.add(mapResultSetToExtensionRequest(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return requests;
+    }
+
     // Tworzy nową prośbę o przedłużenie
     public boolean createExtensionRequest(int rentalId, int userId, int requestedDays) {
         // Sprawdza czy nie ma już oczekującej prośby dla tego wypożyczenia
@@ -78,26 +115,22 @@ public class ExtensionRequestService {
             VALUES (?, ?, ?, DATE('now'), 'PENDING')
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, rentalId);
-            pstmt.setInt(2, userId);
-            pstmt.setInt(3, requestedDays);
+        return WriteQueue.await(DatabaseManager.submitWrite(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, rentalId);
+                pstmt.setInt(2, userId);
+                pstmt.setInt(3, requestedDays);
 
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+                return pstmt.executeUpdate() > 0;
+            }
+        }), false);
     }
 
     // Sprawdza czy istnieje już oczekująca prośba dla danego wypożyczenia
     private boolean hasPendingRequestForRental(int rentalId) {
         String sql = "SELECT COUNT(*) FROM extension_requests WHERE rental_id = ? AND status = 'PENDING'";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, rentalId);
@@ -118,20 +151,16 @@ public class ExtensionRequestService {
             WHERE id = ? AND status = 'PENDING'
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return WriteQueue.await(DatabaseManager.submitWrite(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, status);
+                pstmt.setInt(2, adminId);
+                pstmt.setString(3, comment);
+                pstmt.setInt(4, requestId);
 
-            pstmt.setString(1, status);
-            pstmt.setInt(2, adminId);
-            pstmt.setString(3, comment);
-            pstmt.setInt(4, requestId);
-
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+                return pstmt.executeUpdate() > 0;
+            }
+        }), false);
     }
 
     // Pobiera szczegóły prośby o przedłużenie
@@ -145,7 +174,7 @@ public class ExtensionRequestService {
             WHERE er.id = ?
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, requestId);
@@ -164,7 +193,7 @@ public class ExtensionRequestService {
     public int getPendingRequestsCount() {
         String sql = "SELECT COUNT(*) FROM extension_requests WHERE status = 'PENDING'";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -185,15 +214,12 @@ public class ExtensionRequestService {
             AND admin_decision_date < DATE('now', '-' || ? || ' days')
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, daysOld);
-            return pstmt.executeUpdate();
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return 0;
-        }
+        return WriteQueue.await(DatabaseManager.submitWrite(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, daysOld);
+                return pstmt.executeUpdate();
+            }
+        }), 0);
     }
 
     private ExtensionRequest mapResultSetToExtensionRequest(ResultSet rs) throws SQLException {
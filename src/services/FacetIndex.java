@@ -0,0 +1,331 @@
+package services;
+
+import database.DatabaseManager;
+import models.Book;
+import util.CompressedBitSet;
+import util.TextNormalizer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Mapy bitowe id książek (CompressedBitSet) dla filtrów roku, wydawnictwa i dostępności:
+ * jedna na każdy rok wydania, jedna na każde wydawnictwo (wg publisher_key) oraz zbiory
+ * wszystkich i dostępnych egzemplarzy. Kombinacja filtrów to iloczyn (AND) map, zakres lat
+ * i fragment nazwy wydawnictwa - suma (OR) map pasujących lat i wydawnictw. Wczytywane raz
+ * z tabeli books, potem aktualizowane po zatwierdzeniu zapisów (BookService, RentalService).
+ */
+class FacetIndex {
+    private static volatile FacetIndex instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final CompressedBitSet all = new CompressedBitSet();
+    private final CompressedBitSet available = new CompressedBitSet();
+    private final TreeMap<Integer, CompressedBitSet> byYear = new TreeMap<>();
+
+    // Wydawnictwa numerowane kolejno: klucz, nazwa do wyświetlenia i mapa bitowa wg numeru
+    private final Map<String, Integer> publisherNumbers = new HashMap<>();
+    private final List<String> publisherKeys = new ArrayList<>();
+    private final List<String> publisherNames = new ArrayList<>();
+    private final List<CompressedBitSet> publisherSets = new ArrayList<>();
+
+    // Rok i numer wydawnictwa według id książki - do usuwania z właściwych map
+    private int[] yearById = new int[1_024];
+    private int[] publisherById = new int[1_024];
+
+    // Ustawiane po wczytaniu - do tego czasu zapytania czekałyby na blokadzie
+    private volatile boolean ready = false;
+
+    private FacetIndex() {}
+
+    /**
+     * Zwraca mapy (wczytując je przy pierwszym wywołaniu) albo null, jeśli nie udało się ich wczytać
+     */
+    static FacetIndex getInstance() {
+        FacetIndex index = instance;
+        if (index != null) {
+            return index;
+        }
+        synchronized (FacetIndex.class) {
+            if (instance == null) {
+                index = new FacetIndex();
+                // Jak w CatalogueIndex: zmiany zatwierdzone w trakcie wczytywania czekają na blokadzie
+                index.lock.writeLock().lock();
+                try {
+                    instance = index;
+                    index.load();
+                } catch (SQLException | RuntimeException e) {
+                    instance = null;
+                    e.printStackTrace();
+                    System.err.println("Nie udało się wczytać map filtrów: " + e.getMessage());
+                    return null;
+                } finally {
+                    index.lock.writeLock().unlock();
+                }
+            }
+            return instance;
+        }
+    }
+
+    static boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Mapy, jeśli są już wczytane; null, gdy wczytywanie trwa lub się nie udało
+     */
+    static FacetIndex getIfReady() {
+        FacetIndex index = instance;
+        return index != null && index.ready ? index : null;
+    }
+
+    /**
+     * Wczytuje mapy w tle, żeby pierwsze filtrowanie nie czekało na nie
+     */
+    static void warmUp() {
+        if (isLoaded()) {
+            return;
+        }
+        Thread loader = new Thread(FacetIndex::getInstance, "facet-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Rejestruje zmianę map do wykonania po zatwierdzeniu bieżącej operacji zapisu.
+     * O pominięciu decyduje stan po zatwierdzeniu, jak w CatalogueIndex: zmiana zatwierdzona
+     * w trakcie wczytywania czeka na blokadzie (put, remove i setAvailable są idempotentne).
+     */
+    static void afterCommit(Consumer<FacetIndex> change) {
+        DatabaseManager.afterCommit(() -> {
+            FacetIndex index = instance;
+            if (index != null) {
+                index.lock.writeLock().lock();
+                try {
+                    change.accept(index);
+                } finally {
+                    index.lock.writeLock().unlock();
+                }
+            }
+        });
+    }
+
+    private void load() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Connection conn = DatabaseManager.getReadConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(BookService.DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT id, year, publisher, publisher_key, available FROM books")) {
+                while (rs.next()) {
+                    add(rs.getInt("id"), rs.getInt("year"), rs.getString("publisher"),
+                            rs.getString("publisher_key"), rs.getBoolean("available"));
+                }
+            }
+        }
+        ready = true;
+
+        long loadMillis = System.currentTimeMillis() - start;
+        System.out.println("✅ Mapy filtrów: " + all.cardinality() + " książek, " + byYear.size() + " lat, "
+                + publisherKeys.size() + " wydawnictw (" + loadMillis + " ms)");
+    }
+
+    /**
+     * Dodaje nową książkę (albo zastępuje zapisaną pod tym samym id)
+     */
+    void put(Book book) {
+        remove(book.getId());
+        add(book.getId(), book.getYear(), book.getPublisher(),
+                TextNormalizer.fold(book.getPublisher()), book.isAvailable());
+    }
+
+    /**
+     * Zmienia rok i wydawnictwo książki, zachowując jej dostępność (edycja jej nie zmienia)
+     */
+    void update(Book book) {
+        int id = book.getId();
+        if (!all.contains(id)) {
+            return;
+        }
+        boolean isAvailable = available.contains(id);
+        remove(id);
+        add(id, book.getYear(), book.getPublisher(), TextNormalizer.fold(book.getPublisher()), isAvailable);
+    }
+
+    void remove(int id) {
+        if (!all.remove(id)) {
+            return;
+        }
+        available.remove(id);
+        CompressedBitSet years = byYear.get(yearById[id]);
+        if (years != null) {
+            years.remove(id);
+            if (years.isEmpty()) {
+                byYear.remove(yearById[id]);
+            }
+        }
+        publisherSets.get(publisherById[id]).remove(id);
+    }
+
+    void setAvailable(int id, boolean isAvailable) {
+        if (!all.contains(id)) {
+            return;
+        }
+        if (isAvailable) {
+            available.add(id);
+        } else {
+            available.remove(id);
+        }
+    }
+
+    private void add(int id, int year, String publisher, String publisherKey, boolean isAvailable) {
+        if (id >= yearById.length) {
+            int capacity = Math.max(id + 1, yearById.length * 2);
+            yearById = Arrays.copyOf(yearById, capacity);
+            publisherById = Arrays.copyOf(publisherById, capacity);
+        }
+        String key = publisherKey == null ? "" : publisherKey;
+        Integer number = publisherNumbers.get(key);
+        if (number == null) {
+            number = publisherKeys.size();
+            publisherNumbers.put(key, number);
+            publisherKeys.add(key);
+            publisherNames.add(publisher == null ? "" : publisher);
+            publisherSets.add(new CompressedBitSet());
+        }
+
+        all.add(id);
+        if (isAvailable) {
+            available.add(id);
+        }
+        byYear.computeIfAbsent(year, y -> new CompressedBitSet()).add(id);
+        publisherSets.get(number).add(id);
+        yearById[id] = year;
+        publisherById[id] = number;
+    }
+
+    /**
+     * Filtruje książki i liczy je w grupach: dekady, wydawnictwa, dostępne/wypożyczone.
+     * textMatches - id pasujące do filtrów tytułu i autora (null = bez filtra tekstowego).
+     * Filtry roku, wydawnictwa i dostępności działają jak w searchBooksWithFilters. Każda
+     * grupa jest liczona z pozostałymi filtrami, ale bez własnego - panel filtrów pokazuje
+     * wtedy, ile książek dałby wybór innej dekady, wydawnictwa czy statusu.
+     */
+    BookService.FacetResult query(CompressedBitSet textMatches, String publisherFilter,
+                                  Integer yearFrom, Integer yearTo, Boolean availableOnly) {
+        lock.readLock().lock();
+        try {
+            CompressedBitSet years = yearSet(yearFrom, yearTo);
+            CompressedBitSet publishers = publisherSet(publisherFilter);
+            CompressedBitSet availability = availableOnly == null ? null
+                    : availableOnly ? available : all.andNot(available);
+
+            // null oznacza brak filtra (wszystkie książki)
+            CompressedBitSet matching = intersect(textMatches, years, publishers, availability);
+            int[] bookIds = (matching != null ? matching : all).toArray();
+
+            Map<Integer, Integer> decadeCounts = countDecades(intersect(textMatches, publishers, availability));
+            Map<String, Integer> publisherCounts = countPublishers(intersect(textMatches, years, availability));
+
+            CompressedBitSet statusBase = intersect(textMatches, years, publishers);
+            int total = statusBase != null ? statusBase.cardinality() : all.cardinality();
+            int availableCount = statusBase != null ? statusBase.andCardinality(available) : available.cardinality();
+
+            return new BookService.FacetResult(bookIds, decadeCounts, publisherCounts,
+                    availableCount, total - availableCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Suma map lat z zakresu; lata <= 0 są pomijane jak w zapytaniu SQL
+    private CompressedBitSet yearSet(Integer yearFrom, Integer yearTo) {
+        boolean hasFrom = yearFrom != null && yearFrom > 0;
+        boolean hasTo = yearTo != null && yearTo > 0;
+        if (!hasFrom && !hasTo) {
+            return null;
+        }
+        int from = hasFrom ? yearFrom : Integer.MIN_VALUE;
+        int to = hasTo ? yearTo : Integer.MAX_VALUE;
+        if (from > to) {
+            return new CompressedBitSet();
+        }
+        return CompressedBitSet.union(byYear.subMap(from, true, to, true).values());
+    }
+
+    // Suma map wydawnictw, których klucz zawiera fragment (jak instr() w zapytaniu SQL)
+    private CompressedBitSet publisherSet(String publisherFilter) {
+        if (publisherFilter == null || publisherFilter.trim().isEmpty()) {
+            return null;
+        }
+        String fragment = TextNormalizer.fold(publisherFilter);
+        List<CompressedBitSet> matching = new ArrayList<>();
+        for (int number = 0; number < publisherKeys.size(); number++) {
+            if (publisherKeys.get(number).contains(fragment)) {
+                matching.add(publisherSets.get(number));
+            }
+        }
+        return CompressedBitSet.union(matching);
+    }
+
+    private static CompressedBitSet intersect(CompressedBitSet... sets) {
+        CompressedBitSet result = null;
+        for (CompressedBitSet set : sets) {
+            if (set != null) {
+                result = result == null ? set : result.and(set);
+            }
+        }
+        return result;
+    }
+
+    // Dekada (pierwszy rok) -> liczba książek; książki bez roku nie są liczone
+    private Map<Integer, Integer> countDecades(CompressedBitSet base) {
+        Map<Integer, Integer> counts = new TreeMap<>();
+        for (Map.Entry<Integer, CompressedBitSet> entry : byYear.tailMap(1, true).entrySet()) {
+            int count = base != null ? base.andCardinality(entry.getValue()) : entry.getValue().cardinality();
+            if (count > 0) {
+                counts.merge(entry.getKey() / 10 * 10, count, Integer::sum);
+            }
+        }
+        return counts;
+    }
+
+    // Nazwa wydawnictwa -> liczba książek, od najliczniejszych
+    private Map<String, Integer> countPublishers(CompressedBitSet base) {
+        int[] counts = new int[publisherKeys.size()];
+        if (base != null) {
+            // Jedno przejście po wyniku zamiast iloczynu z mapą każdego wydawnictwa
+            base.forEach(id -> counts[publisherById[id]]++);
+        } else {
+            for (int number = 0; number < counts.length; number++) {
+                counts[number] = publisherSets.get(number).cardinality();
+            }
+        }
+
+        List<Integer> numbers = new ArrayList<>();
+        for (int number = 0; number < counts.length; number++) {
+            if (counts[number] > 0 && !publisherKeys.get(number).isEmpty()) {
+                numbers.add(number);
+            }
+        }
+        numbers.sort((a, b) -> counts[a] != counts[b] ? Integer.compare(counts[b], counts[a])
+                : publisherKeys.get(a).compareTo(publisherKeys.get(b)));
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int number : numbers) {
+            result.merge(publisherNames.get(number), counts[number], Integer::sum);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,188 @@
+package services;
+
+import database.DatabaseManager;
+import models.Book;
+import util.BKTree;
+import util.TextNormalizer;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Słowniki słów tytułów i autorów w drzewach BK - do wyszukiwania z literówkami
+ * (BookService.searchBooksFuzzy). Słowa są czytane z books_fts_vocab, czyli są dokładnie
+ * tymi tokenami, które zna indeks pełnotekstowy. Nowe słowa są dopisywane po zatwierdzeniu
+ * zapisów; słowa usuniętych książek zostają w słowniku - dopasowanie do nich po prostu
+ * nie znajdzie żadnej książki.
+ */
+class FuzzyIndex {
+    // Limit czasu na rozwinięcie wszystkich słów zapytania w drzewach BK
+    static final long BUDGET_MILLIS = 100;
+    // Ile najbliższych słów słownika brać dla jednego słowa zapytania
+    static final int MAX_EXPANSIONS = 20;
+    // Od tej długości słowo może mieć 2 literówki (krótsze - 1, do 3 znaków - żadnej)
+    private static final int TWO_EDITS_MIN_LENGTH = 6;
+    private static final int ONE_EDIT_MIN_LENGTH = 4;
+
+    private static volatile FuzzyIndex instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BKTree titleWords = new BKTree();
+    private final BKTree authorWords = new BKTree();
+
+    private volatile boolean ready = false;
+
+    enum Field { TITLE, AUTHOR }
+
+    private FuzzyIndex() {}
+
+    /**
+     * Zwraca słowniki (wczytując je przy pierwszym wywołaniu) albo null, jeśli nie udało się ich wczytać
+     */
+    static FuzzyIndex getInstance() {
+        FuzzyIndex index = instance;
+        if (index != null) {
+            return index;
+        }
+        synchronized (FuzzyIndex.class) {
+            if (instance == null) {
+                index = new FuzzyIndex();
+                // Jak w CatalogueIndex: słowa zatwierdzone w trakcie wczytywania czekają na blokadzie
+                index.lock.writeLock().lock();
+                try {
+                    instance = index;
+                    index.load();
+                } catch (SQLException | RuntimeException e) {
+                    instance = null;
+                    e.printStackTrace();
+                    System.err.println("Nie udało się wczytać słownika wyszukiwania przybliżonego: " + e.getMessage());
+                    return null;
+                } finally {
+                    index.lock.writeLock().unlock();
+                }
+            }
+            return instance;
+        }
+    }
+
+    static boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Słowniki, jeśli są już wczytane; null, gdy wczytywanie trwa lub się nie udało
+     */
+    static FuzzyIndex getIfReady() {
+        FuzzyIndex index = instance;
+        return index != null && index.ready ? index : null;
+    }
+
+    /**
+     * Wczytuje słowniki w tle, żeby pierwsze wyszukiwanie nie czekało na nie
+     */
+    static void warmUp() {
+        if (isLoaded()) {
+            return;
+        }
+        Thread loader = new Thread(FuzzyIndex::getInstance, "fuzzy-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Rejestruje słowa zapisywanych książek (tytuły i autorzy) do dodania po zatwierdzeniu
+     * transakcji. O pominięciu decyduje stan po zatwierdzeniu: słowa zatwierdzone w trakcie
+     * wczytywania czekają na blokadzie (słowo już obecne w drzewie nie jest dodawane drugi raz).
+     */
+    static void afterCommit(List<Book> books) {
+        DatabaseManager.afterCommit(() -> {
+            FuzzyIndex index = instance;
+            if (index != null) {
+                index.addWords(books);
+            }
+        });
+    }
+
+    private void load() throws SQLException {
+        long start = System.currentTimeMillis();
+        List<String> titles = new ArrayList<>();
+        List<String> authors = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getReadConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT term, col FROM books_fts_vocab WHERE col IN ('title_key', 'author_key')")) {
+            while (rs.next()) {
+                ("title_key".equals(rs.getString("col")) ? titles : authors).add(rs.getString("term"));
+            }
+        }
+
+        // Słownik FTS jest posortowany - wstawianie w tej kolejności dałoby zdegenerowane drzewo
+        Collections.shuffle(titles, new Random(titles.size()));
+        Collections.shuffle(authors, new Random(authors.size()));
+        titles.forEach(titleWords::add);
+        authors.forEach(authorWords::add);
+        ready = true;
+
+        long loadMillis = System.currentTimeMillis() - start;
+        System.out.println("✅ Słownik wyszukiwania przybliżonego: " + titleWords.size() + " słów tytułów, "
+                + authorWords.size() + " słów autorów (" + loadMillis + " ms)");
+    }
+
+    private void addWords(List<Book> books) {
+        lock.writeLock().lock();
+        try {
+            for (Book book : books) {
+                addWords(titleWords, book.getTitle());
+                addWords(authorWords, book.getAuthor());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static void addWords(BKTree tree, String value) {
+        for (String word : TextNormalizer.words(TextNormalizer.fold(value))) {
+            tree.add(word);
+        }
+    }
+
+    /**
+     * Słowa słownika bliskie słowu zapytania (słowo -> odległość), od najbliższych.
+     * Najpierw szukane są słowa z jedną literówką; dwie są dopuszczane tylko dla długich
+     * słów, dla których nic bliższego nie ma. Krótkie słowa i liczby muszą pasować dokładnie.
+     */
+    Map<String, Integer> expand(Field field, String word, long deadlineNanos) {
+        Map<String, Integer> expansions = new LinkedHashMap<>();
+        if (word.length() < ONE_EDIT_MIN_LENGTH || word.chars().allMatch(Character::isDigit)) {
+            expansions.put(word, 0);
+            return expansions;
+        }
+
+        BKTree tree = field == Field.TITLE ? titleWords : authorWords;
+        lock.readLock().lock();
+        try {
+            List<BKTree.Match> matches = tree.search(word, 1, deadlineNanos).getMatches();
+            if (matches.isEmpty() && word.length() >= TWO_EDITS_MIN_LENGTH) {
+                matches = tree.search(word, 2, deadlineNanos).getMatches();
+            }
+            for (BKTree.Match match : matches) {
+                if (expansions.size() == MAX_EXPANSIONS) {
+                    break;
+                }
+                expansions.put(match.getWord(), match.getDistance());
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return expansions;
+    }
+}
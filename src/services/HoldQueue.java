@@ -0,0 +1,282 @@
+package services;
+
+import database.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Kolejki rezerwacji oczekujących (WAITING) w pamięci, po jednej na tytuł.
+ * Każdy wpis zna swój indeks w kolejce, a kolejka indeks swojej głowy, więc miejsce
+ * czytelnika to jedno odejmowanie - także przy setkach rezerwacji jednego tytułu.
+ * Przy kolejce trzymane są posortowane terminy zwrotu wypożyczonych egzemplarzy
+ * tytułu, z których liczona jest szacowana data przydziału. Wczytywane raz z bazy,
+ * potem aktualizowane po zatwierdzeniu zmian (HoldService, RentalService).
+ */
+class HoldQueue {
+    // Kolejka jest zagęszczana, gdy przed głową zbierze się tyle zdjętych wpisów (i co najmniej połowa listy)
+    private static final int COMPACT_THRESHOLD = 32;
+
+    private static volatile HoldQueue instance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, TitleQueue> titles = new HashMap<>();
+    private final Map<Integer, Entry> waiting = new HashMap<>();
+
+    private volatile boolean ready = false;
+
+    private HoldQueue() {}
+
+    /**
+     * Zwraca kolejki (wczytując je przy pierwszym wywołaniu) albo null, jeśli nie udało się ich wczytać
+     */
+    static HoldQueue getInstance() {
+        HoldQueue queue = instance;
+        if (queue != null) {
+            return queue;
+        }
+        synchronized (HoldQueue.class) {
+            if (instance == null) {
+                queue = new HoldQueue();
+                // Jak w CatalogueIndex: zmiany zatwierdzone w trakcie wczytywania czekają na blokadzie
+                queue.lock.lock();
+                try {
+                    instance = queue;
+                    queue.load();
+                } catch (SQLException | RuntimeException e) {
+                    instance = null;
+                    e.printStackTrace();
+                    System.err.println("Nie udało się wczytać kolejek rezerwacji: " + e.getMessage());
+                    return null;
+                } finally {
+                    queue.lock.unlock();
+                }
+            }
+            return instance;
+        }
+    }
+
+    static boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Kolejki, jeśli są już wczytane; null, gdy wczytywanie trwa lub się nie udało
+     */
+    static HoldQueue getIfReady() {
+        HoldQueue queue = instance;
+        return queue != null && queue.ready ? queue : null;
+    }
+
+    /**
+     * Wczytuje kolejki w tle, żeby pierwsze wyświetlenie rezerwacji nie czekało na nie
+     */
+    static void warmUp() {
+        if (isLoaded()) {
+            return;
+        }
+        Thread loader = new Thread(HoldQueue::getInstance, "hold-queue-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Rejestruje zmianę do wykonania po zatwierdzeniu bieżącej operacji zapisu.
+     * O pominięciu decyduje stan po zatwierdzeniu, jak w OverdueTracker: zmiana zatwierdzona
+     * w trakcie wczytywania czeka na blokadzie (add i remove są idempotentne).
+     */
+    static void afterCommit(Consumer<HoldQueue> change) {
+        DatabaseManager.afterCommit(() -> {
+            HoldQueue queue = instance;
+            if (queue != null) {
+                queue.lock.lock();
+                try {
+                    change.accept(queue);
+                } finally {
+                    queue.lock.unlock();
+                }
+            }
+        });
+    }
+
+    private void load() throws SQLException {
+        long start = System.currentTimeMillis();
+        String holdsSql = "SELECT id, title_key, author_key FROM holds WHERE status = 'WAITING' ORDER BY id";
+        // Terminy zwrotu tylko dla tytułów, na które ktoś czeka
+        String dueSql = """
+            SELECT b.title_key, b.author_key, r.expected_return_date
+            FROM rentals r
+            JOIN books b ON r.book_id = b.id
+            WHERE r.status = 'ACTIVE' AND r.expected_return_date IS NOT NULL
+            AND EXISTS (SELECT 1 FROM holds h WHERE h.title_key = b.title_key
+                        AND h.author_key = b.author_key AND h.status = 'WAITING')
+            """;
+
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            try (PreparedStatement pstmt = conn.prepareStatement(holdsSql);
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    add(rs.getInt("id"), rs.getString("title_key"), rs.getString("author_key"));
+                }
+            }
+
+            Map<String, List<LocalDate>> dueDates = new HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(dueSql);
+                 ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    dueDates.computeIfAbsent(titleId(rs.getString("title_key"), rs.getString("author_key")),
+                            key -> new ArrayList<>()).add(LocalDate.parse(rs.getString("expected_return_date")));
+                }
+            }
+            dueDates.forEach((titleId, dates) -> {
+                TitleQueue queue = titles.get(titleId);
+                if (queue != null) {
+                    Collections.sort(dates);
+                    queue.dueDates = dates;
+                }
+            });
+        }
+        ready = true;
+
+        long loadMillis = System.currentTimeMillis() - start;
+        System.out.println("✅ Kolejki rezerwacji: " + titles.size() + " tytułów, " + waiting.size()
+                + " oczekujących (" + loadMillis + " ms)");
+    }
+
+    /**
+     * Dodaje oczekującą rezerwację na miejsce wynikające z jej id (zwykle na koniec kolejki)
+     */
+    void add(int holdId, String titleKey, String authorKey) {
+        if (waiting.containsKey(holdId)) {
+            return;
+        }
+        TitleQueue queue = titles.computeIfAbsent(titleId(titleKey, authorKey), TitleQueue::new);
+        Entry entry = new Entry(holdId, queue);
+
+        // Wstawienie w środek zdarza się tylko przy powrocie rezerwacji do kolejki (usunięty egzemplarz)
+        int index = queue.entries.size();
+        while (index > queue.head && queue.entries.get(index - 1).holdId > holdId) {
+            index--;
+        }
+        queue.entries.add(index, entry);
+        reindex(queue, index);
+        waiting.put(holdId, entry);
+    }
+
+    /**
+     * Usuwa rezerwację z kolejki (przydział egzemplarza z głowy albo anulowanie)
+     */
+    void remove(int holdId) {
+        Entry entry = waiting.remove(holdId);
+        if (entry == null) {
+            return;
+        }
+        TitleQueue queue = entry.queue;
+        if (entry.index == queue.head) {
+            queue.entries.set(queue.head, null);
+            queue.head++;
+        } else {
+            queue.entries.remove(entry.index);
+            reindex(queue, entry.index);
+        }
+
+        if (queue.head == queue.entries.size()) {
+            titles.remove(queue.titleId);
+        } else if (queue.head >= COMPACT_THRESHOLD && queue.head * 2 >= queue.entries.size()) {
+            queue.entries.subList(0, queue.head).clear();
+            queue.head = 0;
+            reindex(queue, 0);
+        }
+    }
+
+    /**
+     * Nowe terminy zwrotu wypożyczonych egzemplarzy tytułu (pomijane, gdy nikt na niego nie czeka)
+     */
+    void setDueDates(String titleKey, String authorKey, List<LocalDate> dueDates) {
+        TitleQueue queue = titles.get(titleId(titleKey, authorKey));
+        if (queue != null) {
+            List<LocalDate> sorted = new ArrayList<>(dueDates);
+            Collections.sort(sorted);
+            queue.dueDates = sorted;
+        }
+    }
+
+    /**
+     * Miejsce w kolejce (1 = następny do przydziału) albo 0, gdy rezerwacja nie czeka
+     */
+    int getPosition(int holdId) {
+        lock.lock();
+        try {
+            Entry entry = waiting.get(holdId);
+            return entry != null ? entry.index - entry.queue.head + 1 : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Szacowana data przydziału: czytelnik z miejsca p dostaje egzemplarz z (p-1) % k-tego
+     * najbliższego zwrotu spośród k wypożyczonych, po (p-1) / k pełnych okresach wypożyczenia
+     * kolejnych osób z kolejki. Null, gdy rezerwacja nie czeka albo nic nie jest wypożyczone.
+     */
+    LocalDate getEstimatedDate(int holdId) {
+        lock.lock();
+        try {
+            Entry entry = waiting.get(holdId);
+            if (entry == null || entry.queue.dueDates.isEmpty()) {
+                return null;
+            }
+            List<LocalDate> dueDates = entry.queue.dueDates;
+            int ahead = entry.index - entry.queue.head;
+            LocalDate today = LocalDate.now();
+            LocalDate due = dueDates.get(ahead % dueDates.size());
+            LocalDate first = due.isBefore(today) ? today : due;
+            return first.plusDays((long) (ahead / dueDates.size()) * RentalService.DEFAULT_RENTAL_PERIOD_DAYS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void reindex(TitleQueue queue, int from) {
+        for (int i = from; i < queue.entries.size(); i++) {
+            queue.entries.get(i).index = i;
+        }
+    }
+
+    static String titleId(String titleKey, String authorKey) {
+        return titleKey + '\u0000' + authorKey;
+    }
+
+    private static class TitleQueue {
+        private final String titleId;
+        // Wpisy przed head zostały już zdjęte z kolejki (null do najbliższego zagęszczenia)
+        private final List<Entry> entries = new ArrayList<>();
+        private int head = 0;
+        private List<LocalDate> dueDates = Collections.emptyList();
+
+        TitleQueue(String titleId) {
+            this.titleId = titleId;
+        }
+    }
+
+    private static class Entry {
+        private final int holdId;
+        private final TitleQueue queue;
+        private int index;
+
+        Entry(int holdId, TitleQueue queue) {
+            this.holdId = holdId;
+            this.queue = queue;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+package services;
+
+import database.DatabaseManager;
+import database.WriteQueue;
+import models.Hold;
+import util.TextNormalizer;
+
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Rezerwacje tytułów: czytelnik staje w kolejce FIFO na tytuł, którego wszystkie egzemplarze
+ * są wypożyczone. Zwrot egzemplarza (RentalService) w tej samej transakcji przydziela go
+ * pierwszej osobie z kolejki - egzemplarz zostaje niedostępny, dopóki rezerwujący go
+ * nie odbierze (RentalService.pickUpHold) albo nie anuluje rezerwacji.
+ */
+public class HoldService {
+
+    /**
+     * Wczytuje kolejki rezerwacji w tle (miejsce w kolejce i szacowana data bez zapytań)
+     */
+    public void prepareHoldQueue() {
+        HoldQueue.warmUp();
+    }
+
+    // Pobiera aktywne (oczekujące i gotowe do odbioru) rezerwacje użytkownika z miejscem w kolejce
+    public List<Hold> getUserHolds(int userId) {
+        List<Hold> holds = new ArrayList<>();
+        String sql = "SELECT * FROM holds WHERE user_id = ? AND status IN ('WAITING', 'READY') ORDER BY id";
+        // Bez kolejek w pamięci miejsce liczymy z indeksu idx_holds_title_status
+        String positionSql = """
+            SELECT COUNT(*) FROM holds
+            WHERE title_key = ? AND author_key = ? AND status = 'WAITING' AND id <= ?
+            """;
+
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            pstmt.setInt(1, userId);
+            List<String[]> keys = new ArrayList<>();
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    holds.add(mapResultSetToHold(rs));
+                    keys.add(new String[] { rs.getString("title_key"), rs.getString("author_key") });
+                }
+            }
+
+            // Kolejki wczytują się w tle - do tego czasu miejsce liczy zapytanie, a daty brak
+            HoldQueue queue = HoldQueue.getIfReady();
+            if (queue == null) {
+                HoldQueue.warmUp();
+            }
+            for (int i = 0; i < holds.size(); i++) {
+                Hold hold = holds.get(i);
+                if (hold.isReady()) {
+                    continue;
+                }
+                if (queue != null) {
+                    hold.setPosition(queue.getPosition(hold.getId()));
+                    hold.setEstimatedDate(queue.getEstimatedDate(hold.getId()));
+                } else {
+                    try (PreparedStatement positionStmt = conn.prepareStatement(positionSql)) {
+                        positionStmt.setString(1, keys.get(i)[0]);
+                        positionStmt.setString(2, keys.get(i)[1]);
+                        positionStmt.setInt(3, hold.getId());
+                        try (ResultSet rs = positionStmt.executeQuery()) {
+                            hold.setPosition(rs.next() ? rs.getInt(1) : 0);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return holds;
+    }
+
+    public HoldOutcome placeHold(int userId, String title, String author) {
+        return WriteQueue.await(placeHoldAsync(userId, title, author), HoldOutcome.ERROR);
+    }
+
+    /**
+     * Dopisuje rezerwację na koniec kolejki tytułu. Tytułu z dostępnym egzemplarzem
+     * nie rezerwujemy (COPY_AVAILABLE), tak samo jak drugi raz tego samego tytułu.
+     */
+    public CompletableFuture<HoldOutcome> placeHoldAsync(int userId, String title, String author) {
+        String titleKey = TextNormalizer.fold(title);
+        String authorKey = TextNormalizer.fold(author);
+        String copiesSql = "SELECT COUNT(*), COALESCE(SUM(available), 0) FROM books WHERE title_key = ? AND author_key = ?";
+        String heldSql = """
+            SELECT 1 FROM holds
+            WHERE user_id = ? AND status IN ('WAITING', 'READY') AND title_key = ? AND author_key = ?
+            """;
+        String insertSql = """
+            INSERT INTO holds (user_id, title_key, author_key, title, author, status, created_at)
+            VALUES (?, ?, ?, ?, ?, 'WAITING', DATE('now'))
+            """;
+
+        return DatabaseManager.submitWrite(conn -> {
+            try (PreparedStatement copiesStmt = conn.prepareStatement(copiesSql)) {
+                copiesStmt.setString(1, titleKey);
+                copiesStmt.setString(2, authorKey);
+                try (ResultSet rs = copiesStmt.executeQuery()) {
+                    if (!rs.next() || rs.getInt(1) == 0) {
+                        return HoldOutcome.TITLE_NOT_FOUND;
+                    }
+                    if (rs.getInt(2) > 0) {
+                        return HoldOutcome.COPY_AVAILABLE;
+                    }
+                }
+            }
+
+            try (PreparedStatement heldStmt = conn.prepareStatement(heldSql)) {
+                heldStmt.setInt(1, userId);
+                heldStmt.setString(2, titleKey);
+                heldStmt.setString(3, authorKey);
+                try (ResultSet rs = heldStmt.executeQuery()) {
+                    if (rs.next()) {
+                        return HoldOutcome.ALREADY_HELD;
+                    }
+                }
+            }
+
+            try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+                insertStmt.setInt(1, userId);
+                insertStmt.setString(2, titleKey);
+                insertStmt.setString(3, authorKey);
+                insertStmt.setString(4, title);
+                insertStmt.setString(5, author);
+                insertStmt.executeUpdate();
+            }
+            int holdId;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT last_insert_rowid()")) {
+                holdId = rs.next() ? rs.getInt(1) : 0;
+            }
+
+            HoldQueue.afterCommit(queue -> queue.add(holdId, titleKey, authorKey));
+            refreshDueDates(conn, titleKey, authorKey);
+            return HoldOutcome.SUCCESS;
+        });
+    }
+
+    public boolean cancelHold(int holdId) {
+        return WriteQueue.await(cancelHoldAsync(holdId), false, "❌ Błąd podczas anulowania rezerwacji");
+    }
+
+    /**
+     * Anuluje rezerwację. Egzemplarz przydzielony anulowanej rezerwacji przechodzi
+     * na następną osobę z kolejki, a gdy nikt nie czeka - wraca do wypożyczalni.
+     */
+    public CompletableFuture<Boolean> cancelHoldAsync(int holdId) {
+        String selectSql = "SELECT status, book_id FROM holds WHERE id = ?";
+        String cancelSql = "UPDATE holds SET status = 'CANCELLED' WHERE id = ? AND status IN ('WAITING', 'READY')";
+        String releaseSql = "UPDATE books SET available = TRUE WHERE id = ?";
+
+        return DatabaseManager.submitWrite(conn -> {
+            String status;
+            int bookId;
+            try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, holdId);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    status = rs.getString("status");
+                    bookId = rs.getInt("book_id");
+                }
+            }
+
+            try (PreparedStatement cancelStmt = conn.prepareStatement(cancelSql)) {
+                cancelStmt.setInt(1, holdId);
+                if (cancelStmt.executeUpdate() == 0) {
+                    return false;
+                }
+            }
+            HoldQueue.afterCommit(queue -> queue.remove(holdId));
+
+            if ("READY".equals(status) && bookId > 0 && !assignReturnedCopy(conn, bookId)) {
+                try (PreparedStatement releaseStmt = conn.prepareStatement(releaseSql)) {
+                    releaseStmt.setInt(1, bookId);
+                    releaseStmt.executeUpdate();
+                }
+                CatalogueIndex.afterCommit(catalogue -> catalogue.setAvailable(bookId, true));
+                FacetIndex.afterCommit(facets -> facets.setAvailable(bookId, true));
+                SearchResultCache.invalidateAfterCommit();
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Przydziela zwrócony (lub zwolniony) egzemplarz pierwszej oczekującej rezerwacji
+     * jego tytułu, w bieżącej transakcji. Zwraca false, gdy nikt nie czeka - wtedy
+     * wywołujący oznacza egzemplarz jako dostępny.
+     */
+    static boolean assignReturnedCopy(Connection conn, int bookId) throws SQLException {
+        String headSql = """
+            SELECT h.id, b.title_key, b.author_key
+            FROM books b
+            JOIN holds h ON h.title_key = b.title_key AND h.author_key = b.author_key AND h.status = 'WAITING'
+            WHERE b.id = ?
+            ORDER BY h.id
+            LIMIT 1
+            """;
+        String readySql = "UPDATE holds SET status = 'READY', book_id = ?, ready_date = DATE('now') WHERE id = ? AND status = 'WAITING'";
+
+        int holdId;
+        String titleKey;
+        String authorKey;
+        try (PreparedStatement headStmt = conn.prepareStatement(headSql)) {
+            headStmt.setInt(1, bookId);
+            try (ResultSet rs = headStmt.executeQuery()) {
+                if (!rs.next()) {
+                    return false;
+                }
+                holdId = rs.getInt("id");
+                titleKey = rs.getString("title_key");
+                authorKey = rs.getString("author_key");
+            }
+        }
+
+        try (PreparedStatement readyStmt = conn.prepareStatement(readySql)) {
+            readyStmt.setInt(1, bookId);
+            readyStmt.setInt(2, holdId);
+            if (readyStmt.executeUpdate() == 0) {
+                return false;
+            }
+        }
+        HoldQueue.afterCommit(queue -> queue.remove(holdId));
+        refreshDueDates(conn, titleKey, authorKey);
+        return true;
+    }
+
+    /**
+     * Rezerwacje gotowe do odbioru usuwanego (lub przenoszonego do innego tytułu) egzemplarza
+     * wracają do kolejki na swoje miejsce. Zwraca true, gdy egzemplarz był komuś przydzielony.
+     */
+    static boolean requeueDeletedCopy(Connection conn, int bookId) throws SQLException {
+        String selectSql = "SELECT id, title_key, author_key FROM holds WHERE book_id = ? AND status = 'READY'";
+        String requeueSql = "UPDATE holds SET status = 'WAITING', book_id = NULL, ready_date = NULL WHERE id = ?";
+
+        boolean requeued = false;
+        try (PreparedStatement selectStmt = conn.prepareStatement(selectSql);
+             PreparedStatement requeueStmt = conn.prepareStatement(requeueSql)) {
+            selectStmt.setInt(1, bookId);
+            try (ResultSet rs = selectStmt.executeQuery()) {
+                while (rs.next()) {
+                    int holdId = rs.getInt("id");
+                    String titleKey = rs.getString("title_key");
+                    String authorKey = rs.getString("author_key");
+                    requeueStmt.setInt(1, holdId);
+                    requeueStmt.executeUpdate();
+                    HoldQueue.afterCommit(queue -> queue.add(holdId, titleKey, authorKey));
+                    requeued = true;
+                }
+            }
+        }
+        return requeued;
+    }
+
+    /**
+     * Po wypożyczeniu egzemplarza: nowe terminy zwrotu tytułu, jeśli ktoś na niego czeka
+     */
+    static void refreshDueDatesForBook(Connection conn, int bookId) throws SQLException {
+        refreshDueDatesIfWaiting(conn, "SELECT b.title_key, b.author_key FROM books b WHERE b.id = ?", bookId);
+    }
+
+    /**
+     * Po przedłużeniu wypożyczenia: nowe terminy zwrotu tytułu, jeśli ktoś na niego czeka
+     */
+    static void refreshDueDatesForRental(Connection conn, int rentalId) throws SQLException {
+        refreshDueDatesIfWaiting(conn,
+                "SELECT b.title_key, b.author_key FROM rentals r JOIN books b ON r.book_id = b.id WHERE r.id = ?",
+                rentalId);
+    }
+
+    // Czy ktoś czeka, sprawdza baza (indeks idx_holds_title_status), a nie stan kolejek przed zatwierdzeniem
+    private static void refreshDueDatesIfWaiting(Connection conn, String keysSql, int id) throws SQLException {
+        String waitingSql = keysSql + """
+             AND EXISTS (SELECT 1 FROM holds h WHERE h.title_key = b.title_key
+                         AND h.author_key = b.author_key AND h.status = 'WAITING')
+            """;
+        String titleKey;
+        String authorKey;
+        try (PreparedStatement pstmt = conn.prepareStatement(waitingSql)) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (!rs.next()) {
+                    return;
+                }
+                titleKey = rs.getString("title_key");
+                authorKey = rs.getString("author_key");
+            }
+        }
+        refreshDueDates(conn, titleKey, authorKey);
+    }
+
+    // Terminy zwrotu wypożyczonych egzemplarzy tytułu (w bieżącej transakcji) dla HoldQueue.
+    // CROSS JOIN ustala kolejność: bez statystyk planer zaczynał od wszystkich aktywnych
+    // wypożyczeń (status = 'ACTIVE'), zamiast od egzemplarzy tytułu i idx_rentals_book_status.
+    private static void refreshDueDates(Connection conn, String titleKey, String authorKey) throws SQLException {
+        String sql = """
+            SELECT r.expected_return_date
+            FROM books b
+            CROSS JOIN rentals r ON r.book_id = b.id AND r.status = 'ACTIVE'
+            WHERE b.title_key = ? AND b.author_key = ? AND r.expected_return_date IS NOT NULL
+            """;
+
+        List<LocalDate> dueDates = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, titleKey);
+            pstmt.setString(2, authorKey);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    dueDates.add(LocalDate.parse(rs.getString("expected_return_date")));
+                }
+            }
+        }
+        HoldQueue.afterCommit(queue -> queue.setDueDates(titleKey, authorKey, dueDates));
+    }
+
+    private static Hold mapResultSetToHold(ResultSet rs) throws SQLException {
+        Hold hold = new Hold();
+        hold.setId(rs.getInt("id"));
+        hold.setUserId(rs.getInt("user_id"));
+        hold.setTitle(rs.getString("title"));
+        hold.setAuthor(rs.getString("author"));
+        int bookId = rs.getInt("book_id");
+        hold.setBookId(rs.wasNull() ? null : bookId);
+        hold.setStatus(rs.getString("status"));
+
+        String createdAt = rs.getString("created_at");
+        if (createdAt != null && !createdAt.trim().isEmpty()) {
+            hold.setCreatedAt(LocalDate.parse(createdAt));
+        }
+        String readyDate = rs.getString("ready_date");
+        if (readyDate != null && !readyDate.trim().isEmpty()) {
+            hold.setReadyDate(LocalDate.parse(readyDate));
+        }
+        return hold;
+    }
+
+    /**
+     * Wynik złożenia rezerwacji
+     */
+    public enum HoldOutcome {
+        SUCCESS("Zarezerwowano tytuł - egzemplarz zostanie przydzielony przy zwrocie"),
+        COPY_AVAILABLE("Ten tytuł ma dostępny egzemplarz - można go wypożyczyć od razu"),
+        ALREADY_HELD("Ten tytuł jest już przez Ciebie zarezerwowany"),
+        TITLE_NOT_FOUND("Nie znaleziono tytułu"),
+        ERROR("Błąd bazy danych");
+
+        private final String message;
+
+        HoldOutcome(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() { return message; }
+    }
+}
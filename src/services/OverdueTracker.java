@@ -0,0 +1,356 @@
+package services;
+
+import database.DatabaseManager;
+import models.Rental;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Aktywne wypożyczenia w pamięci, żeby panel administratora nie łączył rentals, users
+ * i books przy każdym odświeżeniu. Wypożyczenia jeszcze nie przeterminowane czekają
+ * w kolejce priorytetowej wg expected_return_date; po północy (przy pierwszym zapytaniu
+ * nowego dnia) te z minioną datą przechodzą do zbioru przeterminowanych. Liczby
+ * wypożyczeń na najbliższe dni trzymane są w tablicy, więc "przeterminowane teraz"
+ * i "do zwrotu w ciągu N dni" to odczyt jednej liczby. Wczytywane raz z bazy, potem
+ * aktualizowane po zatwierdzeniu wypożyczeń, zwrotów i przedłużeń (RentalService).
+ * Dzień liczony jest wg LocalDate.now(), tak jak w Rental.isOverdue().
+ */
+class OverdueTracker {
+    // Liczby wypożyczeń na dni od dziś do HORIZON_DAYS - 1 (dalsze terminy liczone przy zmianie dnia)
+    static final int HORIZON_DAYS = 64;
+
+    private static volatile OverdueTracker instance;
+
+    private static final Comparator<Entry> BY_DUE_DATE =
+            Comparator.comparing((Entry entry) -> entry.due).thenComparingInt(entry -> entry.rental.getId());
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Integer, Entry> active = new HashMap<>();
+    // Zwrot i przedłużenie nie usuwają wpisu z kolejki - nieaktualny wpis jest pomijany przy zdejmowaniu
+    private final PriorityQueue<Entry> upcoming = new PriorityQueue<>(BY_DUE_DATE);
+    private final Map<Integer, Entry> overdue = new HashMap<>();
+    private final int[] dueOnDay = new int[HORIZON_DAYS];
+    // dueWithin[n] - suma dueOnDay[0..n], przeliczana przy pierwszym zapytaniu po zmianie
+    private final int[] dueWithin = new int[HORIZON_DAYS];
+    private boolean dueWithinStale = true;
+    private LocalDate today = LocalDate.now();
+
+    private volatile boolean ready = false;
+
+    private OverdueTracker() {}
+
+    /**
+     * Zwraca wypożyczenia (wczytując je przy pierwszym wywołaniu) albo null, jeśli nie udało się ich wczytać
+     */
+    static OverdueTracker getInstance() {
+        OverdueTracker tracker = instance;
+        if (tracker != null) {
+            return tracker;
+        }
+        synchronized (OverdueTracker.class) {
+            if (instance == null) {
+                tracker = new OverdueTracker();
+                // Jak w CatalogueIndex: zmiany zatwierdzone w trakcie wczytywania czekają na blokadzie
+                tracker.lock.lock();
+                try {
+                    instance = tracker;
+                    tracker.load();
+                } catch (SQLException | RuntimeException e) {
+                    instance = null;
+                    e.printStackTrace();
+                    System.err.println("Nie udało się wczytać aktywnych wypożyczeń: " + e.getMessage());
+                    return null;
+                } finally {
+                    tracker.lock.unlock();
+                }
+            }
+            return instance;
+        }
+    }
+
+    static boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Wypożyczenia, jeśli są już wczytane; null, gdy wczytywanie trwa lub się nie udało
+     */
+    static OverdueTracker getIfReady() {
+        OverdueTracker tracker = instance;
+        return tracker != null && tracker.ready ? tracker : null;
+    }
+
+    /**
+     * Wczytuje wypożyczenia w tle, żeby pierwsze odświeżenie panelu nie czekało na nie
+     */
+    static void warmUp() {
+        if (isLoaded()) {
+            return;
+        }
+        Thread loader = new Thread(OverdueTracker::getInstance, "overdue-tracker-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Rejestruje zmianę do wykonania po zatwierdzeniu bieżącej operacji zapisu.
+     * O pominięciu decyduje stan po zatwierdzeniu, jak w CatalogueIndex: jeśli wczytywanie
+     * jeszcze się nie zaczęło, i tak zobaczy zmianę; jeśli trwa, zmiana czeka na blokadzie.
+     * Zmiany są idempotentne, więc wpis już wczytany z bazy nie jest liczony drugi raz.
+     */
+    static void afterCommit(Consumer<OverdueTracker> change) {
+        DatabaseManager.afterCommit(() -> {
+            OverdueTracker tracker = instance;
+            if (tracker != null) {
+                tracker.lock.lock();
+                try {
+                    change.accept(tracker);
+                } finally {
+                    tracker.lock.unlock();
+                }
+            }
+        });
+    }
+
+    private void load() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Stream<Rental> rentals = new RentalService().streamAllActiveRentals(BookService.DEFAULT_FETCH_SIZE)) {
+            rentals.forEach(this::put);
+        }
+        ready = true;
+
+        long loadMillis = System.currentTimeMillis() - start;
+        System.out.println("✅ Aktywne wypożyczenia: " + active.size() + ", przeterminowane: " + overdue.size()
+                + " (" + loadMillis + " ms)");
+    }
+
+    /**
+     * Dodaje wypożyczenie (albo zastępuje zapisane pod tym samym id)
+     */
+    void put(Rental rental) {
+        remove(rental.getId());
+        Entry entry = new Entry(rental);
+        active.put(rental.getId(), entry);
+        if (entry.due == null) {
+            return;
+        }
+        if (entry.due.isBefore(today)) {
+            overdue.put(rental.getId(), entry);
+        } else {
+            upcoming.add(entry);
+            countDue(entry.due, 1);
+        }
+    }
+
+    void remove(int rentalId) {
+        Entry entry = active.remove(rentalId);
+        if (entry == null) {
+            return;
+        }
+        if (overdue.remove(rentalId) == null && entry.due != null) {
+            countDue(entry.due, -1);
+        }
+        // Kolejka nie rośnie bez końca z powodu nieaktualnych wpisów
+        if (upcoming.size() > 2 * active.size() + HORIZON_DAYS) {
+            upcoming.removeIf(queued -> active.get(queued.rental.getId()) != queued);
+        }
+    }
+
+    /**
+     * Nowy termin zwrotu po przedłużeniu
+     */
+    void extend(int rentalId, LocalDate expectedReturnDate, int extensionCount) {
+        Entry entry = active.get(rentalId);
+        if (entry == null) {
+            return;
+        }
+        Rental rental = copy(entry.rental);
+        rental.setExpectedReturnDate(expectedReturnDate);
+        rental.setExtensionCount(extensionCount);
+        put(rental);
+    }
+
+    /**
+     * Pomija wypożyczenia usuniętego egzemplarza - zapytania z JOIN books też ich nie pokazują
+     */
+    void removeBook(int bookId) {
+        List<Integer> rentalIds = new ArrayList<>();
+        for (Entry entry : active.values()) {
+            if (entry.rental.getBookId() == bookId) {
+                rentalIds.add(entry.rental.getId());
+            }
+        }
+        rentalIds.forEach(this::remove);
+    }
+
+    /**
+     * Nowy tytuł i autor egzemplarza (do wyświetlania)
+     */
+    void updateBook(int bookId, String title, String author) {
+        for (Entry entry : active.values()) {
+            if (entry.rental.getBookId() == bookId) {
+                entry.rental.setBookTitle(title);
+                entry.rental.setBookAuthor(author);
+            }
+        }
+    }
+
+    int getOverdueCount() {
+        lock.lock();
+        try {
+            rollOver();
+            return overdue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Liczba nieprzeterminowanych wypożyczeń z terminem zwrotu od dziś do dziś + days
+     */
+    int getDueWithinDays(int days) {
+        lock.lock();
+        try {
+            rollOver();
+            if (days < 0) {
+                return 0;
+            }
+            if (days >= HORIZON_DAYS) {
+                LocalDate last = today.plusDays(days);
+                int count = 0;
+                for (Entry entry : active.values()) {
+                    if (entry.due != null && !entry.due.isBefore(today) && !entry.due.isAfter(last)) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+            if (dueWithinStale) {
+                int sum = 0;
+                for (int day = 0; day < HORIZON_DAYS; day++) {
+                    sum += dueOnDay[day];
+                    dueWithin[day] = sum;
+                }
+                dueWithinStale = false;
+            }
+            return dueWithin[days];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getActiveCount() {
+        lock.lock();
+        try {
+            return active.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Kopie przeterminowanych wypożyczeń, od najdawniej oczekiwanych (jak RentalService.getOverdueRentals)
+     */
+    List<Rental> getOverdueRentals() {
+        lock.lock();
+        try {
+            rollOver();
+            List<Entry> entries = new ArrayList<>(overdue.values());
+            entries.sort(BY_DUE_DATE);
+            List<Rental> rentals = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                rentals.add(copy(entry.rental));
+            }
+            return rentals;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Kopie wszystkich aktywnych wypożyczeń, najnowsze pierwsze (jak RentalService.getAllActiveRentals)
+     */
+    List<Rental> getActiveRentals() {
+        lock.lock();
+        try {
+            List<Rental> rentals = new ArrayList<>(active.size());
+            for (Entry entry : active.values()) {
+                rentals.add(copy(entry.rental));
+            }
+            rentals.sort(Comparator.comparing(Rental::getRentDate, Comparator.nullsLast(Comparator.reverseOrder()))
+                    .thenComparing(Comparator.comparingInt(Rental::getId).reversed()));
+            return rentals;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Po zmianie dnia przenosi minione terminy z kolejki do przeterminowanych i przelicza liczby na dni
+    private void rollOver() {
+        LocalDate now = LocalDate.now();
+        if (!now.isAfter(today)) {
+            return;
+        }
+        today = now;
+        while (!upcoming.isEmpty() && upcoming.peek().due.isBefore(today)) {
+            Entry entry = upcoming.poll();
+            if (active.get(entry.rental.getId()) == entry) {
+                overdue.put(entry.rental.getId(), entry);
+            }
+        }
+
+        // Raz dziennie: terminy spoza poprzedniego okna wchodzą do nowego
+        Arrays.fill(dueOnDay, 0);
+        for (Entry entry : active.values()) {
+            if (entry.due != null && !entry.due.isBefore(today)) {
+                countDue(entry.due, 1);
+            }
+        }
+        dueWithinStale = true;
+    }
+
+    private void countDue(LocalDate due, int delta) {
+        long day = due.toEpochDay() - today.toEpochDay();
+        if (day >= 0 && day < HORIZON_DAYS) {
+            dueOnDay[(int) day] += delta;
+            dueWithinStale = true;
+        }
+    }
+
+    static Rental copy(Rental rental) {
+        Rental copy = new Rental();
+        copy.setId(rental.getId());
+        copy.setUserId(rental.getUserId());
+        copy.setBookId(rental.getBookId());
+        copy.setRentDate(rental.getRentDate());
+        copy.setReturnDate(rental.getReturnDate());
+        copy.setExpectedReturnDate(rental.getExpectedReturnDate());
+        copy.setStatus(rental.getStatus());
+        copy.setExtensionCount(rental.getExtensionCount());
+        copy.setUsername(rental.getUsername());
+        copy.setBookTitle(rental.getBookTitle());
+        copy.setBookAuthor(rental.getBookAuthor());
+        return copy;
+    }
+
+    private static class Entry {
+        private final Rental rental;
+        private final LocalDate due;
+
+        Entry(Rental rental) {
+            this.rental = rental;
+            this.due = rental.getExpectedReturnDate();
+        }
+    }
+}
@@ -1,19 +1,26 @@
 package services;
 
 import database.DatabaseManager;
+import database.JdbcStreams;
+import database.WriteQueue;
 import models.Rental;
 import models.ExtensionRequest;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class RentalService {
-    private BookService bookService = new BookService();
-
     // Domyślny okres wypożyczenia w dniach
-    private static final int DEFAULT_RENTAL_PERIOD_DAYS = 14;
+    static final int DEFAULT_RENTAL_PERIOD_DAYS = 14;
     // Maksymalna liczba samodzielnych przedłużeń
     private static final int MAX_SELF_EXTENSIONS = 2;
 
@@ -27,7 +34,7 @@ public class RentalService {
             ORDER BY r.rent_date DESC
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, userId);
@@ -44,7 +51,23 @@ public class RentalService {
     }
 
     public List<Rental> getAllActiveRentals() {
-        List<Rental> rentals = new ArrayList<>();
+        OverdueTracker tracker = OverdueTracker.getIfReady();
+        if (tracker != null) {
+            return tracker.getActiveRentals();
+        }
+
+        try (Stream<Rental> rentals = streamAllActiveRentals(BookService.DEFAULT_FETCH_SIZE)) {
+            return rentals.collect(Collectors.toList());
+        } catch (SQLException | JdbcStreams.StreamReadException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Strumień aktywnych wypożyczeń (najnowsze pierwsze). Strumień trzeba zamknąć.
+     */
+    public Stream<Rental> streamAllActiveRentals(int fetchSize) throws SQLException {
         String sql = """
             SELECT r.*, u.username, b.title as book_title, b.author as book_author 
             FROM rentals r 
@@ -54,14 +77,46 @@ public class RentalService {
             ORDER BY r.rent_date DESC
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        return JdbcStreams.stream(sql, null, rs -> {
+            Rental rental = mapResultSetToRental(rs);
+            rental.setUsername(rs.getString("username"));
+            return rental;
+        }, fetchSize);
+    }
 
-            while (rs.next()) {
-                Rental rental = mapResultSetToRental(rs);
-                rental.setUsername(rs.getString("username"));
-                rentals.add(rental);
+    /**
+     * Jedna strona aktywnych wypożyczeń (najnowsze pierwsze, przy równej dacie - wyższe id).
+     * Kursor to data i id ostatniego wypożyczenia z poprzedniej strony; afterRentDate == null
+     * oznacza pierwszą stronę. Zapytanie idzie po indeksie idx_rentals_status_rent_date.
+     */
+    public List<Rental> getActiveRentalsPage(LocalDate afterRentDate, int afterId, int limit) {
+        List<Rental> rentals = new ArrayList<>();
+        String sql = """
+            SELECT r.*, u.username, b.title as book_title, b.author as book_author 
+            FROM rentals r 
+            JOIN users u ON r.user_id = u.id 
+            JOIN books b ON r.book_id = b.id 
+            WHERE r.status = 'ACTIVE'
+            """ + (afterRentDate != null ? " AND (r.rent_date, r.id) < (?, ?)" : "") + """
+             ORDER BY r.rent_date DESC, r.id DESC LIMIT ?
+            """;
+
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            if (afterRentDate != null) {
+                pstmt.setString(index++, afterRentDate.toString());
+                pstmt.setInt(index++, afterId);
+            }
+            pstmt.setInt(index, limit);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Rental rental = mapResultSetToRental(rs);
+                    rental.setUsername(rs.getString("username"));
+                    rentals.add(rental);
+                }
             }
         } catch (SQLException e) {
             e.printStackTrace();
@@ -70,6 +125,11 @@ public class RentalService {
     }
 
     public List<Rental> getOverdueRentals() {
+        OverdueTracker tracker = OverdueTracker.getIfReady();
+        if (tracker != null) {
+            return tracker.getOverdueRentals();
+        }
+
         List<Rental> rentals = new ArrayList<>();
         String sql = """
             SELECT r.*, u.username, b.title as book_title, b.author as book_author 
@@ -80,7 +140,7 @@ public class RentalService {
             ORDER BY r.expected_return_date ASC
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -95,69 +155,458 @@ public class RentalService {
         return rentals;
     }
 
+    /**
+     * Wczytuje w tle aktywne wypożyczenia do OverdueTracker (wywoływane przy otwarciu panelu administratora)
+     */
+    public void prepareOverdueTracker() {
+        OverdueTracker.warmUp();
+    }
+
+    /**
+     * Liczba przeterminowanych wypożyczeń - z OverdueTracker bez zapytania, a dopóki się wczytuje, z bazy
+     */
+    public int getOverdueCount() {
+        OverdueTracker tracker = OverdueTracker.getIfReady();
+        if (tracker != null) {
+            return tracker.getOverdueCount();
+        }
+        return countActiveRentals("expected_return_date < DATE('now')", null);
+    }
+
+    /**
+     * Liczba nieprzeterminowanych wypożyczeń, które trzeba zwrócić w ciągu podanej liczby dni
+     */
+    public int getDueWithinDaysCount(int days) {
+        OverdueTracker tracker = OverdueTracker.getIfReady();
+        if (tracker != null) {
+            return tracker.getDueWithinDays(days);
+        }
+        return countActiveRentals(
+                "expected_return_date >= DATE('now') AND expected_return_date <= DATE('now', '+' || ? || ' days')", days);
+    }
+
+    private int countActiveRentals(String dateCondition, Integer days) {
+        String sql = "SELECT COUNT(*) FROM rentals WHERE status = 'ACTIVE' AND " + dateCondition;
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+
+            if (days != null) {
+                pstmt.setInt(1, days);
+            }
+            ResultSet rs = pstmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
     public boolean rentBook(int userId, int bookId) {
         return rentBook(userId, bookId, DEFAULT_RENTAL_PERIOD_DAYS);
     }
 
     public boolean rentBook(int userId, int bookId, int rentalPeriodDays) {
-        String sql = """
+        return checkoutBook(userId, bookId, rentalPeriodDays) == RentalOutcome.SUCCESS;
+    }
+
+    public CompletableFuture<Boolean> rentBookAsync(int userId, int bookId, int rentalPeriodDays) {
+        return checkoutBookAsync(userId, bookId, rentalPeriodDays)
+                .thenApply(outcome -> outcome == RentalOutcome.SUCCESS);
+    }
+
+    public RentalOutcome checkoutBook(int userId, int bookId) {
+        return checkoutBook(userId, bookId, DEFAULT_RENTAL_PERIOD_DAYS);
+    }
+
+    public RentalOutcome checkoutBook(int userId, int bookId, int rentalPeriodDays) {
+        RentalOutcome outcome = WriteQueue.await(checkoutBookAsync(userId, bookId, rentalPeriodDays), RentalOutcome.ERROR);
+        if (outcome == RentalOutcome.SUCCESS) {
+            LocalDate expectedReturn = LocalDate.now().plusDays(rentalPeriodDays);
+            System.out.println("Książka wypożyczona do: " + expectedReturn);
+        }
+        return outcome;
+    }
+
+    /**
+     * Wypożycza egzemplarz w jednej transakcji: najpierw warunkowo "zajmuje" egzemplarz
+     * (tylko jeśli jest dostępny), potem zapisuje wypożyczenie. Dwa stanowiska nie mogą
+     * wypożyczyć tego samego egzemplarza - drugie dostaje BOOK_NOT_AVAILABLE.
+     */
+    public CompletableFuture<RentalOutcome> checkoutBookAsync(int userId, int bookId, int rentalPeriodDays) {
+        return DatabaseManager.submitWrite(conn -> checkoutBook(conn, userId, bookId, rentalPeriodDays));
+    }
+
+    private RentalOutcome checkoutBook(Connection conn, int userId, int bookId, int rentalPeriodDays) throws SQLException {
+        String claimSql = "UPDATE books SET available = FALSE WHERE id = ? AND available = TRUE";
+        String existsSql = "SELECT 1 FROM books WHERE id = ?";
+        String insertSql = """
             INSERT INTO rentals (user_id, book_id, rent_date, expected_return_date, status, extension_count) 
             VALUES (?, ?, DATE('now'), DATE('now', '+' || ? || ' days'), 'ACTIVE', 0)
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, userId);
-            pstmt.setInt(2, bookId);
-            pstmt.setInt(3, rentalPeriodDays);
+        try (PreparedStatement claimStmt = conn.prepareStatement(claimSql)) {
+            claimStmt.setInt(1, bookId);
+            if (claimStmt.executeUpdate() == 0) {
+                try (PreparedStatement existsStmt = conn.prepareStatement(existsSql)) {
+                    existsStmt.setInt(1, bookId);
+                    ResultSet rs = existsStmt.executeQuery();
+                    return rs.next() ? RentalOutcome.BOOK_NOT_AVAILABLE : RentalOutcome.BOOK_NOT_FOUND;
+                }
+            }
+        }
 
-            int affectedRows = pstmt.executeUpdate();
-            if (affectedRows > 0) {
-                // Oznacz książkę jako wypożyczoną
-                bookService.updateBookAvailability(bookId, false);
-                LocalDate expectedReturn = LocalDate.now().plusDays(rentalPeriodDays);
-                System.out.println("Książka wypożyczona do: " + expectedReturn);
-                return true;
+        long lastRentalId = getMaxRentalId(conn);
+        try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+            insertStmt.setInt(1, userId);
+            insertStmt.setInt(2, bookId);
+            insertStmt.setInt(3, rentalPeriodDays);
+            if (insertStmt.executeUpdate() == 0) {
+                // Wycofanie zajęcia egzemplarza zapewnia SAVEPOINT kolejki zapisów
+                throw new SQLException("Nie udało się zapisać wypożyczenia książki " + bookId);
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
         }
-        return false;
+        trackRentalsAfter(conn, lastRentalId);
+        HoldService.refreshDueDatesForBook(conn, bookId);
+        CatalogueIndex.afterCommit(catalogue -> catalogue.setAvailable(bookId, false));
+        FacetIndex.afterCommit(facets -> facets.setAvailable(bookId, false));
+        SearchResultCache.invalidateAfterCommit();
+        return RentalOutcome.SUCCESS;
     }
 
     public boolean returnBook(int rentalId) {
-        String sql = "UPDATE rentals SET return_date = DATE('now'), status = 'RETURNED' WHERE id = ?";
-        String getBookIdSql = "SELECT book_id FROM rentals WHERE id = ?";
+        return checkinBook(rentalId) == RentalOutcome.SUCCESS;
+    }
+
+    public CompletableFuture<Boolean> returnBookAsync(int rentalId) {
+        return checkinBookAsync(rentalId).thenApply(outcome -> outcome == RentalOutcome.SUCCESS);
+    }
+
+    public RentalOutcome checkinBook(int rentalId) {
+        return WriteQueue.await(checkinBookAsync(rentalId), RentalOutcome.ERROR);
+    }
+
+    /**
+     * Zwraca egzemplarz w jednej transakcji: warunkowo zamyka aktywne wypożyczenie
+     * i przydziela egzemplarz pierwszej rezerwacji jego tytułu, a gdy nikt nie czeka -
+     * oznacza go jako dostępny. Ponowny zwrot daje ALREADY_RETURNED.
+     */
+    public CompletableFuture<RentalOutcome> checkinBookAsync(int rentalId) {
+        return DatabaseManager.submitWrite(conn -> checkinBook(conn, rentalId));
+    }
+
+    private RentalOutcome checkinBook(Connection conn, int rentalId) throws SQLException {
+        String selectSql = "SELECT book_id FROM rentals WHERE id = ?";
+        String closeSql = "UPDATE rentals SET return_date = DATE('now'), status = 'RETURNED' WHERE id = ? AND status = 'ACTIVE'";
+        String releaseSql = "UPDATE books SET available = TRUE WHERE id = ?";
+
+        int bookId;
+        try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+            selectStmt.setInt(1, rentalId);
+            ResultSet rs = selectStmt.executeQuery();
+            if (!rs.next()) {
+                return RentalOutcome.RENTAL_NOT_FOUND;
+            }
+            bookId = rs.getInt("book_id");
+        }
+
+        try (PreparedStatement closeStmt = conn.prepareStatement(closeSql)) {
+            closeStmt.setInt(1, rentalId);
+            if (closeStmt.executeUpdate() == 0) {
+                return RentalOutcome.ALREADY_RETURNED;
+            }
+        }
+
+        OverdueTracker.afterCommit(tracker -> tracker.remove(rentalId));
+        // Egzemplarz przydzielony rezerwacji pozostaje niedostępny - katalog się nie zmienia
+        if (HoldService.assignReturnedCopy(conn, bookId)) {
+            return RentalOutcome.SUCCESS;
+        }
+
+        try (PreparedStatement releaseStmt = conn.prepareStatement(releaseSql)) {
+            releaseStmt.setInt(1, bookId);
+            releaseStmt.executeUpdate();
+        }
+        CatalogueIndex.afterCommit(catalogue -> catalogue.setAvailable(bookId, true));
+        FacetIndex.afterCommit(facets -> facets.setAvailable(bookId, true));
+        SearchResultCache.invalidateAfterCommit();
+        return RentalOutcome.SUCCESS;
+    }
+
+    /**
+     * Wypożycza stos książek w jednej transakcji (JDBC batch).
+     * Zwraca wynik dla każdego egzemplarza w kolejności podanej listy (bez wartości null).
+     */
+    public Map<Integer, RentalOutcome> rentBooks(int userId, List<Integer> bookIds) {
+        return rentBooks(userId, bookIds, DEFAULT_RENTAL_PERIOD_DAYS);
+    }
+
+    public Map<Integer, RentalOutcome> rentBooks(int userId, List<Integer> bookIds, int rentalPeriodDays) {
+        Map<Integer, RentalOutcome> results = WriteQueue.await(rentBooksAsync(userId, bookIds, rentalPeriodDays), null);
+        return results != null ? results : allWithOutcome(bookIds, RentalOutcome.ERROR);
+    }
+
+    public CompletableFuture<Map<Integer, RentalOutcome>> rentBooksAsync(int userId, List<Integer> bookIds, int rentalPeriodDays) {
+        String claimSql = "UPDATE books SET available = FALSE WHERE id = ? AND available = TRUE";
+        String existsSql = "SELECT 1 FROM books WHERE id = ?";
+        String insertSql = """
+            INSERT INTO rentals (user_id, book_id, rent_date, expected_return_date, status, extension_count) 
+            VALUES (?, ?, DATE('now'), DATE('now', '+' || ? || ' days'), 'ACTIVE', 0)
+            """;
+        List<Integer> ids = distinctIds(bookIds);
+
+        return DatabaseManager.submitWrite(conn -> {
+            Map<Integer, RentalOutcome> results = new LinkedHashMap<>();
+            if (ids.isEmpty()) {
+                return results;
+            }
+
+            // 1. Warunkowe zajęcie wszystkich egzemplarzy jednym batchem
+            int[] claimed;
+            try (PreparedStatement claimStmt = conn.prepareStatement(claimSql)) {
+                for (int bookId : ids) {
+                    claimStmt.setInt(1, bookId);
+                    claimStmt.addBatch();
+                }
+                claimed = claimStmt.executeBatch();
+            }
+
+            // 2. Wypożyczenia dla zajętych egzemplarzy jednym batchem
+            long lastRentalId = getMaxRentalId(conn);
+            try (PreparedStatement insertStmt = conn.prepareStatement(insertSql);
+                 PreparedStatement existsStmt = conn.prepareStatement(existsSql)) {
+                boolean anyClaimed = false;
+                for (int i = 0; i < ids.size(); i++) {
+                    int bookId = ids.get(i);
+                    if (claimed[i] > 0) {
+                        insertStmt.setInt(1, userId);
+                        insertStmt.setInt(2, bookId);
+                        insertStmt.setInt(3, rentalPeriodDays);
+                        insertStmt.addBatch();
+                        results.put(bookId, RentalOutcome.SUCCESS);
+                        anyClaimed = true;
+                    } else {
+                        existsStmt.setInt(1, bookId);
+                        try (ResultSet rs = existsStmt.executeQuery()) {
+                            results.put(bookId, rs.next() ? RentalOutcome.BOOK_NOT_AVAILABLE : RentalOutcome.BOOK_NOT_FOUND);
+                        }
+                    }
+                }
+                if (anyClaimed) {
+                    insertStmt.executeBatch();
+                }
+            }
+            trackRentalsAfter(conn, lastRentalId);
+            for (Map.Entry<Integer, RentalOutcome> result : results.entrySet()) {
+                if (result.getValue() == RentalOutcome.SUCCESS) {
+                    HoldService.refreshDueDatesForBook(conn, result.getKey());
+                }
+            }
+            CatalogueIndex.afterCommit(catalogue -> results.forEach((bookId, outcome) -> {
+                if (outcome == RentalOutcome.SUCCESS) {
+                    catalogue.setAvailable(bookId, false);
+                }
+            }));
+            FacetIndex.afterCommit(facets -> results.forEach((bookId, outcome) -> {
+                if (outcome == RentalOutcome.SUCCESS) {
+                    facets.setAvailable(bookId, false);
+                }
+            }));
+            if (results.containsValue(RentalOutcome.SUCCESS)) {
+                SearchResultCache.invalidateAfterCommit();
+            }
+            return results;
+        });
+    }
+
+    /**
+     * Zwraca stos książek w jednej transakcji (JDBC batch).
+     * Zwraca wynik dla każdego wypożyczenia w kolejności podanej listy (bez wartości null).
+     */
+    public Map<Integer, RentalOutcome> returnBooks(List<Integer> rentalIds) {
+        Map<Integer, RentalOutcome> results = WriteQueue.await(returnBooksAsync(rentalIds), null);
+        return results != null ? results : allWithOutcome(rentalIds, RentalOutcome.ERROR);
+    }
+
+    public CompletableFuture<Map<Integer, RentalOutcome>> returnBooksAsync(List<Integer> rentalIds) {
+        String selectSql = "SELECT book_id, status FROM rentals WHERE id = ?";
+        String closeSql = "UPDATE rentals SET return_date = DATE('now'), status = 'RETURNED' WHERE id = ? AND status = 'ACTIVE'";
+        String releaseSql = "UPDATE books SET available = TRUE WHERE id = ?";
+        List<Integer> ids = distinctIds(rentalIds);
+
+        return DatabaseManager.submitWrite(conn -> {
+            Map<Integer, RentalOutcome> results = new LinkedHashMap<>();
+            List<Integer> toClose = new ArrayList<>();
+            List<Integer> bookIds = new ArrayList<>();
+
+            try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+                for (int rentalId : ids) {
+                    selectStmt.setInt(1, rentalId);
+                    try (ResultSet rs = selectStmt.executeQuery()) {
+                        if (!rs.next()) {
+                            results.put(rentalId, RentalOutcome.RENTAL_NOT_FOUND);
+                        } else if (!"ACTIVE".equals(rs.getString("status"))) {
+                            results.put(rentalId, RentalOutcome.ALREADY_RETURNED);
+                        } else {
+                            results.put(rentalId, RentalOutcome.SUCCESS);
+                            toClose.add(rentalId);
+                            bookIds.add(rs.getInt("book_id"));
+                        }
+                    }
+                }
+            }
+
+            if (!toClose.isEmpty()) {
+                try (PreparedStatement closeStmt = conn.prepareStatement(closeSql)) {
+                    for (int rentalId : toClose) {
+                        closeStmt.setInt(1, rentalId);
+                        closeStmt.addBatch();
+                    }
+                    closeStmt.executeBatch();
+                }
+                OverdueTracker.afterCommit(tracker -> toClose.forEach(tracker::remove));
+
+                // Kolejne egzemplarze tego samego tytułu trafiają do kolejnych osób z kolejki
+                List<Integer> released = new ArrayList<>();
+                for (int bookId : bookIds) {
+                    if (!HoldService.assignReturnedCopy(conn, bookId)) {
+                        released.add(bookId);
+                    }
+                }
+                if (!released.isEmpty()) {
+                    try (PreparedStatement releaseStmt = conn.prepareStatement(releaseSql)) {
+                        for (int bookId : released) {
+                            releaseStmt.setInt(1, bookId);
+                            releaseStmt.addBatch();
+                        }
+                        releaseStmt.executeBatch();
+                    }
+                    CatalogueIndex.afterCommit(catalogue -> released.forEach(bookId -> catalogue.setAvailable(bookId, true)));
+                    FacetIndex.afterCommit(facets -> released.forEach(bookId -> facets.setAvailable(bookId, true)));
+                    SearchResultCache.invalidateAfterCommit();
+                }
+            }
+            return results;
+        });
+    }
+
+    public RentalOutcome pickUpHold(int holdId) {
+        return WriteQueue.await(pickUpHoldAsync(holdId), RentalOutcome.ERROR);
+    }
+
+    /**
+     * Wypożycza rezerwującemu egzemplarz przydzielony jego rezerwacji (status READY)
+     * i zamyka rezerwację - w jednej transakcji. Egzemplarz był już niedostępny.
+     */
+    public CompletableFuture<RentalOutcome> pickUpHoldAsync(int holdId) {
+        String selectSql = "SELECT user_id, book_id FROM holds WHERE id = ? AND status = 'READY'";
+        String fulfillSql = "UPDATE holds SET status = 'FULFILLED' WHERE id = ? AND status = 'READY'";
+        String insertSql = """
+            INSERT INTO rentals (user_id, book_id, rent_date, expected_return_date, status, extension_count) 
+            VALUES (?, ?, DATE('now'), DATE('now', '+' || ? || ' days'), 'ACTIVE', 0)
+            """;
 
-        try (Connection conn = DatabaseManager.getConnection()) {
-            // Pobierz ID książki
+        return DatabaseManager.submitWrite(conn -> {
+            int userId;
             int bookId;
-            try (PreparedStatement pstmt = conn.prepareStatement(getBookIdSql)) {
-                pstmt.setInt(1, rentalId);
-                ResultSet rs = pstmt.executeQuery();
-                if (rs.next()) {
+            try (PreparedStatement selectStmt = conn.prepareStatement(selectSql)) {
+                selectStmt.setInt(1, holdId);
+                try (ResultSet rs = selectStmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return RentalOutcome.HOLD_NOT_READY;
+                    }
+                    userId = rs.getInt("user_id");
                     bookId = rs.getInt("book_id");
-                } else {
-                    return false;
                 }
             }
 
-            // Zaktualizuj wypożyczenie
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setInt(1, rentalId);
+            try (PreparedStatement fulfillStmt = conn.prepareStatement(fulfillSql)) {
+                fulfillStmt.setInt(1, holdId);
+                if (fulfillStmt.executeUpdate() == 0) {
+                    return RentalOutcome.HOLD_NOT_READY;
+                }
+            }
 
-                int affectedRows = pstmt.executeUpdate();
-                if (affectedRows > 0) {
-                    // Oznacz książkę jako dostępną
-                    bookService.updateBookAvailability(bookId, true);
-                    return true;
+            long lastRentalId = getMaxRentalId(conn);
+            try (PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
+                insertStmt.setInt(1, userId);
+                insertStmt.setInt(2, bookId);
+                insertStmt.setInt(3, DEFAULT_RENTAL_PERIOD_DAYS);
+                if (insertStmt.executeUpdate() == 0) {
+                    // Wycofanie zamknięcia rezerwacji zapewnia SAVEPOINT kolejki zapisów
+                    throw new SQLException("Nie udało się zapisać wypożyczenia zarezerwowanej książki " + bookId);
                 }
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+            trackRentalsAfter(conn, lastRentalId);
+            HoldService.refreshDueDatesForBook(conn, bookId);
+            return RentalOutcome.SUCCESS;
+        });
+    }
+
+    private static long getMaxRentalId(Connection conn) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM rentals");
+             ResultSet rs = pstmt.executeQuery()) {
+            return rs.next() ? rs.getLong(1) : 0;
         }
-        return false;
+    }
+
+    /**
+     * Przekazuje do OverdueTracker wypożyczenia zapisane po lastRentalId (w bieżącej transakcji).
+     * Czyta zawsze - o tym, czy wypożyczenia są wczytane, decyduje dopiero zmiana po zatwierdzeniu.
+     */
+    private void trackRentalsAfter(Connection conn, long lastRentalId) throws SQLException {
+        String sql = """
+            SELECT r.*, u.username, b.title as book_title, b.author as book_author 
+            FROM rentals r 
+            JOIN users u ON r.user_id = u.id 
+            JOIN books b ON r.book_id = b.id 
+            WHERE r.id > ? AND r.status = 'ACTIVE'
+            """;
+
+        List<Rental> added = new ArrayList<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, lastRentalId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    Rental rental = mapResultSetToRental(rs);
+                    rental.setUsername(rs.getString("username"));
+                    added.add(rental);
+                }
+            }
+        }
+        OverdueTracker.afterCommit(tracker -> added.forEach(tracker::put));
+    }
+
+    // Nowy termin zwrotu i liczba przedłużeń dla OverdueTracker (w bieżącej transakcji)
+    private static void trackExtension(Connection conn, int rentalId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "SELECT expected_return_date, extension_count FROM rentals WHERE id = ?")) {
+            pstmt.setInt(1, rentalId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    LocalDate expectedReturnDate = LocalDate.parse(rs.getString("expected_return_date"));
+                    int extensionCount = rs.getInt("extension_count");
+                    OverdueTracker.afterCommit(tracker -> tracker.extend(rentalId, expectedReturnDate, extensionCount));
+                }
+            }
+        }
+    }
+
+    /**
+     * Id paczki bez powtórzeń (ten sam egzemplarz podany dwa razy liczymy raz) i bez null,
+     * który przerwałby polecenie w wątku zapisującym - dla null nie ma wyniku
+     */
+    private static List<Integer> distinctIds(List<Integer> ids) {
+        Set<Integer> distinct = new LinkedHashSet<>(ids);
+        distinct.remove(null);
+        return new ArrayList<>(distinct);
+    }
+
+    private static Map<Integer, RentalOutcome> allWithOutcome(List<Integer> ids, RentalOutcome outcome) {
+        Map<Integer, RentalOutcome> results = new LinkedHashMap<>();
+        for (int id : distinctIds(ids)) {
+            results.put(id, outcome);
+        }
+        return results;
     }
 
     /**
@@ -199,56 +648,8 @@ public class RentalService {
     }
 
     private boolean performExtension(int rentalId, int additionalDays) {
-        String selectSQL = "SELECT expected_return_date, extension_count FROM rentals WHERE id = ? AND status = 'ACTIVE'";
-        String updateSQL = "UPDATE rentals SET expected_return_date = DATE(expected_return_date, '+' || ? || ' days'), extension_count = extension_count + 1 WHERE id = ? AND status = 'ACTIVE'";
-
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement selectStmt = conn.prepareStatement(selectSQL);
-             PreparedStatement updateStmt = conn.prepareStatement(updateSQL)) {
-
-            // Pobierz obecną datę
-            selectStmt.setInt(1, rentalId);
-            ResultSet rs = selectStmt.executeQuery();
-
-            if (rs.next()) {
-                String currentExpectedDateStr = rs.getString("expected_return_date");
-                int currentExtensionCount = rs.getInt("extension_count");
-
-                if (currentExpectedDateStr == null || currentExpectedDateStr.trim().isEmpty()) {
-                    // Jeśli nie ma ustalonej daty, użyj daty dzisiejszej + dodatkowe dni
-                    String updateWithTodaySQL = "UPDATE rentals SET expected_return_date = DATE('now', '+' || ? || ' days'), extension_count = extension_count + 1 WHERE id = ? AND status = 'ACTIVE'";
-                    try (PreparedStatement todayStmt = conn.prepareStatement(updateWithTodaySQL)) {
-                        todayStmt.setInt(1, additionalDays);
-                        todayStmt.setInt(2, rentalId);
-                        int affectedRows = todayStmt.executeUpdate();
-                        if (affectedRows > 0) {
-                            LocalDate newExpectedDate = LocalDate.now().plusDays(additionalDays);
-                            System.out.println("Wypożyczenie " + rentalId + " przedłużone do: " + newExpectedDate +
-                                    " (przedłużenie nr " + (currentExtensionCount + 1) + ")");
-                            return true;
-                        }
-                    }
-                } else {
-                    // Oblicz nową datę na podstawie obecnej
-                    updateStmt.setInt(1, additionalDays);
-                    updateStmt.setInt(2, rentalId);
-
-                    int affectedRows = updateStmt.executeUpdate();
-                    if (affectedRows > 0) {
-                        LocalDate currentExpectedDate = LocalDate.parse(currentExpectedDateStr);
-                        LocalDate newExpectedDate = currentExpectedDate.plusDays(additionalDays);
-                        System.out.println("Wypożyczenie " + rentalId + " przedłużone do: " + newExpectedDate +
-                                " (przedłużenie nr " + (currentExtensionCount + 1) + ")");
-                        return true;
-                    }
-                }
-            }
-
-            return false;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+        return WriteQueue.await(DatabaseManager.submitWrite(
+                conn -> performExtensionWithConnection(conn, rentalId, additionalDays)), false);
     }
 
     /**
@@ -277,6 +678,8 @@ public class RentalService {
                         todayStmt.setInt(2, rentalId);
                         int affectedRows = todayStmt.executeUpdate();
                         if (affectedRows > 0) {
+                            trackExtension(conn, rentalId);
+                            HoldService.refreshDueDatesForRental(conn, rentalId);
                             LocalDate newExpectedDate = LocalDate.now().plusDays(additionalDays);
                             System.out.println("Wypożyczenie " + rentalId + " przedłużone do: " + newExpectedDate +
                                     " (przedłużenie nr " + (currentExtensionCount + 1) + ")");
@@ -290,6 +693,8 @@ public class RentalService {
 
                     int affectedRows = updateStmt.executeUpdate();
                     if (affectedRows > 0) {
+                        trackExtension(conn, rentalId);
+                        HoldService.refreshDueDatesForRental(conn, rentalId);
                         LocalDate currentExpectedDate = LocalDate.parse(currentExpectedDateStr);
                         LocalDate newExpectedDate = currentExpectedDate.plusDays(additionalDays);
                         System.out.println("Wypożyczenie " + rentalId + " przedłużone do: " + newExpectedDate +
@@ -306,7 +711,7 @@ public class RentalService {
     private Rental getRentalById(int rentalId) {
         String sql = "SELECT r.*, b.title as book_title, b.author as book_author FROM rentals r JOIN books b ON r.book_id = b.id WHERE r.id = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setInt(1, rentalId);
@@ -327,19 +732,15 @@ public class RentalService {
             VALUES (?, ?, ?, DATE('now'), 'PENDING')
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            pstmt.setInt(1, rentalId);
-            pstmt.setInt(2, userId);
-            pstmt.setInt(3, requestedDays);
+        return WriteQueue.await(DatabaseManager.submitWrite(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setInt(1, rentalId);
+                pstmt.setInt(2, userId);
+                pstmt.setInt(3, requestedDays);
 
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
-        }
+                return pstmt.executeUpdate() > 0;
+            }
+        }), false);
     }
 
     public List<ExtensionRequest> getPendingExtensionRequests() {
@@ -354,7 +755,7 @@ public class RentalService {
             ORDER BY er.request_date ASC
             """;
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
 
@@ -377,6 +778,15 @@ public class RentalService {
     }
 
     private boolean processExtensionRequest(int requestId, int adminId, String status, String comment) {
+        return WriteQueue.await(processExtensionRequestAsync(requestId, adminId, status, comment), false);
+    }
+
+    /**
+     * Przetwarza prośbę w jednej transakcji kolejki zapisów: najpierw przedłuża
+     * wypożyczenie (jeśli zatwierdzono), a dopiero potem zmienia status prośby,
+     * więc nieudane przedłużenie nie zostawia prośby oznaczonej jako zatwierdzona
+     */
+    public CompletableFuture<Boolean> processExtensionRequestAsync(int requestId, int adminId, String status, String comment) {
         String selectSQL = "SELECT rental_id, requested_days FROM extension_requests WHERE id = ? AND status = 'PENDING'";
         String updateSQL = """
             UPDATE extension_requests 
@@ -384,13 +794,9 @@ public class RentalService {
             WHERE id = ?
             """;
 
-        Connection conn = null;
-        try {
-            conn = DatabaseManager.getConnection();
-            conn.setAutoCommit(false); // Rozpocznij transakcję
-
-            int rentalId = -1;
-            int requestedDays = 0;
+        return DatabaseManager.submitWrite(conn -> {
+            int rentalId;
+            int requestedDays;
 
             // Pobierz szczegóły prośby
             try (PreparedStatement selectStmt = conn.prepareStatement(selectSQL)) {
@@ -400,7 +806,13 @@ public class RentalService {
                     rentalId = rs.getInt("rental_id");
                     requestedDays = rs.getInt("requested_days");
                 } else {
-                    conn.rollback();
+                    return false;
+                }
+            }
+
+            // Jeśli zatwierdzono, przedłuż wypożyczenie (w tej samej transakcji)
+            if ("APPROVED".equals(status)) {
+                if (!performExtensionWithConnection(conn, rentalId, requestedDays)) {
                     return false;
                 }
             }
@@ -413,38 +825,8 @@ public class RentalService {
                 updateStmt.setInt(4, requestId);
                 updateStmt.executeUpdate();
             }
-
-            // Jeśli zatwierdzono, przedłuż wypożyczenie (używając tego samego połączenia)
-            if ("APPROVED".equals(status)) {
-                if (!performExtensionWithConnection(conn, rentalId, requestedDays)) {
-                    conn.rollback();
-                    return false;
-                }
-            }
-
-            conn.commit(); // Zatwierdź transakcję
             return true;
-
-        } catch (SQLException e) {
-            e.printStackTrace();
-            if (conn != null) {
-                try {
-                    conn.rollback();
-                } catch (SQLException rollbackEx) {
-                    rollbackEx.printStackTrace();
-                }
-            }
-            return false;
-        } finally {
-            if (conn != null) {
-                try {
-                    conn.setAutoCommit(true); // Przywróć domyślne ustawienie
-                    conn.close();
-                } catch (SQLException closeEx) {
-                    closeEx.printStackTrace();
-                }
-            }
-        }
+        });
     }
 
     public int getDaysUntilReturn(Rental rental) {
@@ -584,6 +966,27 @@ public class RentalService {
         return request;
     }
 
+    /**
+     * Wynik wypożyczenia lub zwrotu egzemplarza
+     */
+    public enum RentalOutcome {
+        SUCCESS("Operacja zakończona powodzeniem"),
+        BOOK_NOT_FOUND("Nie znaleziono książki"),
+        BOOK_NOT_AVAILABLE("Ten egzemplarz został już wypożyczony"),
+        RENTAL_NOT_FOUND("Nie znaleziono wypożyczenia"),
+        ALREADY_RETURNED("To wypożyczenie zostało już zakończone"),
+        HOLD_NOT_READY("Rezerwacja nie czeka na odbiór"),
+        ERROR("Błąd bazy danych");
+
+        private final String message;
+
+        RentalOutcome(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() { return message; }
+    }
+
     /**
      * Klasa pomocnicza do zwracania wyników operacji przedłużania
      */
@@ -0,0 +1,180 @@
+package services;
+
+import database.DatabaseManager;
+import models.Book;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pamięć podręczna wyników wyszukiwania książek (searchBooks, searchBooksWithFilters i ich strony).
+ * Kluczem jest znormalizowany zestaw filtrów (BookService), ważność wyznacza wersja katalogu:
+ * każdy zapis zmieniający książki (BookService, wypożyczenia i zwroty w RentalService)
+ * podbija ją po zatwierdzeniu transakcji i czyści pamięć. Wynik zapamiętywany jest z wersją
+ * z chwili rozpoczęcia zapytania, więc odczyt, który wyprzedził zapis, nigdy nie trafi do
+ * pamięci jako aktualny. Najdawniej używane wyniki są usuwane po przekroczeniu liczby
+ * wpisów albo szacowanego rozmiaru w pamięci (LRU); bardzo duże wyniki nie są zapamiętywane.
+ */
+public class SearchResultCache {
+    static final int MAX_ENTRIES = 256;
+    static final long MAX_BYTES = 32L * 1024 * 1024;
+    // Wynik większy niż 1/8 budżetu (np. cały katalog przy pustych filtrach) wyparłby wszystko inne
+    private static final long MAX_ENTRY_BYTES = MAX_BYTES / 8;
+
+    private static final AtomicLong version = new AtomicLong();
+    // accessOrder = true - kolejność od najdawniej do najświeżej użytego
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private static long bytes = 0;
+
+    private static long hits = 0;
+    private static long misses = 0;
+    private static long evictions = 0;
+    private static long invalidations = 0;
+    private static long rejected = 0;
+
+    private SearchResultCache() {}
+
+    /**
+     * Wersja katalogu - odczytywana przed zapytaniem i przekazywana do put()
+     */
+    static long currentVersion() {
+        return version.get();
+    }
+
+    /**
+     * Zapamiętany wynik (kopie książek) albo null
+     */
+    static synchronized List<Book> get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.version != version.get()) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copyOf(entry.books);
+    }
+
+    /**
+     * Zapamiętuje wynik zapytania rozpoczętego przy wersji readVersion. Jeśli w międzyczasie
+     * zatwierdzono zapis, wynik może być nieaktualny i nie jest zapamiętywany.
+     */
+    static synchronized void put(String key, long readVersion, List<Book> books) {
+        if (readVersion != version.get()) {
+            return;
+        }
+        long size = estimateBytes(books);
+        if (size > MAX_ENTRY_BYTES) {
+            rejected++;
+            return;
+        }
+
+        Entry previous = entries.put(key, new Entry(readVersion, copyOf(books), size));
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += size;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while ((entries.size() > MAX_ENTRIES || bytes > MAX_BYTES) && it.hasNext()) {
+            bytes -= it.next().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Rejestruje podbicie wersji katalogu po zatwierdzeniu bieżącej operacji zapisu
+     */
+    static void invalidateAfterCommit() {
+        DatabaseManager.afterCommit(SearchResultCache::invalidate);
+    }
+
+    private static synchronized void invalidate() {
+        version.incrementAndGet();
+        invalidations += entries.size();
+        entries.clear();
+        bytes = 0;
+    }
+
+    public static synchronized CacheStats getStats() {
+        return new CacheStats(hits, misses, evictions, invalidations, rejected, entries.size(), bytes);
+    }
+
+    private static List<Book> copyOf(List<Book> books) {
+        List<Book> copy = new ArrayList<>(books.size());
+        for (Book book : books) {
+            copy.add(CatalogueIndex.copy(book));
+        }
+        return copy;
+    }
+
+    // Przybliżony rozmiar: obiekt Book z datą i referencją na liście plus napisy (do 2 bajtów na znak)
+    private static long estimateBytes(List<Book> books) {
+        long size = 64;
+        for (Book book : books) {
+            size += 96 + stringBytes(book.getIsbn()) + stringBytes(book.getTitle())
+                    + stringBytes(book.getAuthor()) + stringBytes(book.getPublisher());
+        }
+        return size;
+    }
+
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+
+    private static class Entry {
+        private final long version;
+        private final List<Book> books;
+        private final long bytes;
+
+        Entry(long version, List<Book> books, long bytes) {
+            this.version = version;
+            this.books = books;
+            this.bytes = bytes;
+        }
+    }
+
+    public static class CacheStats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final long rejected;
+        private final int entries;
+        private final long bytes;
+
+        public CacheStats(long hits, long misses, long evictions, long invalidations,
+                          long rejected, int entries, long bytes) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.rejected = rejected;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        public long getHits() { return hits; }
+        public long getMisses() { return misses; }
+        public long getEvictions() { return evictions; }
+        public long getInvalidations() { return invalidations; }
+        public long getRejected() { return rejected; }
+        public int getEntries() { return entries; }
+        public long getBytes() { return bytes; }
+
+        public double getHitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0.0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Cache wyników wyszukiwania: trafienia: %d, chybienia: %d (%.1f%% trafień), " +
+                            "usunięte: %d, unieważnione: %d, za duże: %d, wpisy: %d (%d KB)",
+                    hits, misses, getHitRate() * 100, evictions, invalidations, rejected, entries, bytes / 1024);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package services;
+
+import database.DatabaseManager;
+import models.Book;
+import util.PrefixIndex;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Podpowiedzi dla pól filtrów: różne tytuły, autorzy i wydawnictwa z wagą równą liczbie
+ * egzemplarzy (PrefixIndex). Wczytywane raz z tabeli books, potem aktualizowane po
+ * zatwierdzeniu dodania, zmiany i usunięcia książek. Zmiana zatwierdzona dokładnie
+ * w chwili wczytywania może zostać policzona dwa razy - wagi służą tylko do kolejności
+ * podpowiedzi, więc pojedynczy egzemplarz różnicy nie ma znaczenia, a waga nie spada
+ * poniżej zera (usunięta wartość znika z podpowiedzi także przy podwójnym odjęciu).
+ */
+class SuggestionIndex {
+    private static volatile SuggestionIndex instance;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PrefixIndex titles = new PrefixIndex();
+    private final PrefixIndex authors = new PrefixIndex();
+    private final PrefixIndex publishers = new PrefixIndex();
+    // Ustawiane po wczytaniu - do tego czasu podpowiadanie czekałoby na blokadzie
+    private volatile boolean ready = false;
+
+    enum Field { TITLE, AUTHOR, PUBLISHER }
+
+    private SuggestionIndex() {}
+
+    /**
+     * Zwraca podpowiedzi (wczytując je przy pierwszym wywołaniu) albo null, jeśli nie udało się ich wczytać
+     */
+    static SuggestionIndex getInstance() {
+        SuggestionIndex index = instance;
+        if (index != null) {
+            return index;
+        }
+        synchronized (SuggestionIndex.class) {
+            if (instance == null) {
+                index = new SuggestionIndex();
+                // Jak w CatalogueIndex: zmiany zatwierdzone w trakcie wczytywania czekają na blokadzie
+                index.lock.writeLock().lock();
+                try {
+                    instance = index;
+                    index.load();
+                } catch (SQLException | RuntimeException e) {
+                    instance = null;
+                    e.printStackTrace();
+                    System.err.println("Nie udało się wczytać podpowiedzi: " + e.getMessage());
+                    return null;
+                } finally {
+                    index.lock.writeLock().unlock();
+                }
+            }
+            return instance;
+        }
+    }
+
+    static boolean isLoaded() {
+        return instance != null;
+    }
+
+    /**
+     * Podpowiedzi, jeśli są już wczytane; null, gdy wczytywanie trwa lub się nie udało
+     */
+    static SuggestionIndex getIfReady() {
+        SuggestionIndex index = instance;
+        return index != null && index.ready ? index : null;
+    }
+
+    /**
+     * Wczytuje podpowiedzi w tle, żeby pierwsze wpisane znaki nie czekały na nie
+     */
+    static void warmUp() {
+        if (isLoaded()) {
+            return;
+        }
+        Thread loader = new Thread(SuggestionIndex::getInstance, "suggestion-index-loader");
+        loader.setDaemon(true);
+        loader.start();
+    }
+
+    /**
+     * Rejestruje zmianę egzemplarzy do nałożenia po zatwierdzeniu transakcji: removed - stare
+     * wartości usuniętych lub zmienionych książek, added - nowe. O pominięciu decyduje stan
+     * po zatwierdzeniu: zmiana zatwierdzona w trakcie wczytywania czeka na blokadzie.
+     */
+    static void afterCommit(List<Book> removed, List<Book> added) {
+        DatabaseManager.afterCommit(() -> {
+            SuggestionIndex index = instance;
+            if (index != null) {
+                index.apply(removed, -1);
+                index.apply(added, 1);
+            }
+        });
+    }
+
+    private void load() throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Connection conn = DatabaseManager.getReadConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.setFetchSize(BookService.DEFAULT_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery(
+                    "SELECT title, author, publisher, title_key, author_key, publisher_key FROM books")) {
+                // Klucze są już złożone w bazie - nie trzeba ich liczyć ponownie
+                while (rs.next()) {
+                    titles.add(rs.getString("title"), rs.getString("title_key"), 1);
+                    authors.add(rs.getString("author"), rs.getString("author_key"), 1);
+                    publishers.add(rs.getString("publisher"), rs.getString("publisher_key"), 1);
+                }
+            }
+        }
+        titles.build();
+        authors.build();
+        publishers.build();
+        ready = true;
+
+        long loadMillis = System.currentTimeMillis() - start;
+        System.out.println("✅ Podpowiedzi: " + titles.size() + " tytułów, " + authors.size() + " autorów, "
+                + publishers.size() + " wydawnictw (" + loadMillis + " ms)");
+    }
+
+    private void apply(List<Book> books, int delta) {
+        lock.writeLock().lock();
+        try {
+            for (Book book : books) {
+                titles.add(book.getTitle(), delta);
+                authors.add(book.getAuthor(), delta);
+                publishers.add(book.getPublisher(), delta);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Najwyżej limit najczęstszych wartości pola, których jakieś słowo zaczyna się od prefiksu
+     */
+    List<String> suggest(Field field, String prefix, int limit) {
+        PrefixIndex index = switch (field) {
+            case TITLE -> titles;
+            case AUTHOR -> authors;
+            case PUBLISHER -> publishers;
+        };
+        // PrefixIndex.suggest tylko czyta, ale drzewo segmentu zmienia się przy nakładaniu zmian
+        lock.readLock().lock();
+        try {
+            return index.suggest(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
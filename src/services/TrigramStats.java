@@ -0,0 +1,113 @@
+package services;
+
+import database.DatabaseManager;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Liczności trigramów (w ilu książkach występuje trigram) dla jednej tabeli trigramowej.
+ * Koszt przecięcia w FTS5 rośnie z długością czytanych list rowid, więc BookService
+ * przecina tylko kilka najrzadszych trigramów fragmentu - resztę i tak sprawdza instr().
+ * Liczność jest czytana z tabeli fts5vocab przy pierwszym użyciu trigramu i zapamiętywana;
+ * nieaktualna liczność zmienia tylko wybór trigramów, nigdy wynik wyszukiwania.
+ */
+class TrigramStats {
+    // Ile najrzadszych trigramów przecinać - kolejne zwykle nie zmniejszają już listy kandydatów
+    static final int MAX_TRIGRAMS = 3;
+    // Fragment, którego najrzadszy trigram występuje w co najmniej 1/DENSE_FRACTION książek,
+    // taniej sprawdzić samym instr() (przy stronicowaniu wystarczy krótkie przejście po indeksie tytułu)
+    static final int DENSE_FRACTION = 20;
+    // Górna granica zapamiętanych liczności na tabelę - po przekroczeniu pamięć jest czyszczona
+    private static final int MAX_CACHED = 50_000;
+
+    private static final Map<String, TrigramStats> BY_TABLE = new ConcurrentHashMap<>();
+
+    private final String countSql;
+    private final Map<String, Integer> docCounts = new ConcurrentHashMap<>();
+
+    private TrigramStats(String trigramTable) {
+        this.countSql = "SELECT doc FROM " + trigramTable + "_vocab WHERE term = ?";
+    }
+
+    static TrigramStats forTable(String trigramTable) {
+        return BY_TABLE.computeIfAbsent(trigramTable, TrigramStats::new);
+    }
+
+    /**
+     * Wszystkie różne trigramy fragmentu (po punktach kodowych), w kolejności wystąpienia
+     */
+    static List<String> trigrams(String fragment) {
+        int[] codePoints = fragment.codePoints().toArray();
+        Set<String> trigrams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= codePoints.length; i++) {
+            trigrams.add(new String(codePoints, i, 3));
+        }
+        return new ArrayList<>(trigrams);
+    }
+
+    /**
+     * Wybiera najrzadsze trigramy fragmentu do przecięcia. Pusta lista oznacza, że indeks
+     * się nie opłaca (fragment krótszy niż 3 znaki albo bardzo częsty) i wystarczy instr().
+     * Gdy liczności nie da się odczytać, zwracane są wszystkie trigramy.
+     */
+    List<String> selectTrigrams(String fragment) {
+        List<String> trigrams = trigrams(fragment);
+        if (trigrams.isEmpty()) {
+            return trigrams;
+        }
+
+        long books;
+        try (Connection conn = DatabaseManager.getReadConnection()) {
+            for (String trigram : trigrams) {
+                if (!docCounts.containsKey(trigram)) {
+                    remember(trigram, readDocCount(conn, trigram));
+                }
+            }
+            books = countBooks(conn);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return trigrams;
+        }
+
+        trigrams.sort(Comparator.comparingInt(trigram -> docCounts.getOrDefault(trigram, 0)));
+        if ((long) docCounts.getOrDefault(trigrams.get(0), 0) * DENSE_FRACTION >= books) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(trigrams.subList(0, Math.min(MAX_TRIGRAMS, trigrams.size())));
+    }
+
+    private int readDocCount(Connection conn, String trigram) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(countSql)) {
+            pstmt.setString(1, trigram);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    private void remember(String trigram, int docCount) {
+        if (docCounts.size() >= MAX_CACHED) {
+            docCounts.clear();
+        }
+        docCounts.put(trigram, docCount);
+    }
+
+    // MAX(id) zamiast COUNT(*) - odczyt z końca indeksu klucza głównego; wystarcza jako skala
+    private static long countBooks(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(id), 0) FROM books")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+}
@@ -1,19 +1,23 @@
 package services;
 
 import database.DatabaseManager;
+import database.JdbcStreams;
+import database.WriteQueue;
 import models.User;
 
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class UserService {
 
     public User login(String username, String password) {
         String sql = "SELECT * FROM users WHERE username = ? AND password = ?";
 
-        try (Connection conn = DatabaseManager.getConnection();
+        try (Connection conn = DatabaseManager.getReadConnection();
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
 
             pstmt.setString(1, username);
@@ -52,55 +56,55 @@ public class UserService {
     public boolean register(User user) {
         String sql = "INSERT INTO users (username, password, email, is_admin, created_at) VALUES (?, ?, ?, ?, DATE('now'))";
 
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+        return WriteQueue.await(DatabaseManager.submitWrite(conn -> {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, user.getUsername());
+                pstmt.setString(2, user.getPassword());
+                pstmt.setString(3, user.getEmail());
+                pstmt.setBoolean(4, user.isAdmin());
 
-            pstmt.setString(1, user.getUsername());
-            pstmt.setString(2, user.getPassword());
-            pstmt.setString(3, user.getEmail());
-            pstmt.setBoolean(4, user.isAdmin());
+                return pstmt.executeUpdate() > 0;
+            }
+        }), false);
+    }
 
-            int affectedRows = pstmt.executeUpdate();
-            return affectedRows > 0;
-        } catch (SQLException e) {
+    public List<User> getAllUsers() {
+        try (Stream<User> users = streamAllUsers(BookService.DEFAULT_FETCH_SIZE)) {
+            return users.collect(Collectors.toList());
+        } catch (SQLException | JdbcStreams.StreamReadException e) {
             e.printStackTrace();
-            return false;
+            return new ArrayList<>();
         }
     }
 
-    public List<User> getAllUsers() {
-        List<User> users = new ArrayList<>();
+    /**
+     * Strumień wszystkich użytkowników (bez haseł). Strumień trzeba zamknąć.
+     */
+    public Stream<User> streamAllUsers(int fetchSize) throws SQLException {
         String sql = "SELECT * FROM users ORDER BY username";
+        return JdbcStreams.stream(sql, null, this::mapResultSetToUser, fetchSize);
+    }
 
-        try (Connection conn = DatabaseManager.getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-
-            while (rs.next()) {
-                User user = new User();
-                user.setId(rs.getInt("id"));
-                user.setUsername(rs.getString("username"));
-                user.setEmail(rs.getString("email"));
-                user.setAdmin(rs.getBoolean("is_admin"));
-
-                // Bezpieczne odczytywanie created_at - używamy getString zamiast getDate
-                String createdAtStr = rs.getString("created_at");
-                if (createdAtStr != null && !createdAtStr.trim().isEmpty()) {
-                    try {
-                        user.setCreatedAt(LocalDate.parse(createdAtStr));
-                    } catch (Exception e) {
-                        // Jeśli parsowanie się nie uda, ustaw obecną datę
-                        user.setCreatedAt(LocalDate.now());
-                    }
-                } else {
-                    user.setCreatedAt(LocalDate.now());
-                }
-
-                users.add(user);
+    private User mapResultSetToUser(ResultSet rs) throws SQLException {
+        User user = new User();
+        user.setId(rs.getInt("id"));
+        user.setUsername(rs.getString("username"));
+        user.setEmail(rs.getString("email"));
+        user.setAdmin(rs.getBoolean("is_admin"));
+
+        // Bezpieczne odczytywanie created_at - używamy getString zamiast getDate
+        String createdAtStr = rs.getString("created_at");
+        if (createdAtStr != null && !createdAtStr.trim().isEmpty()) {
+            try {
+                user.setCreatedAt(LocalDate.parse(createdAtStr));
+            } catch (Exception e) {
+                // Jeśli parsowanie się nie uda, ustaw obecną datę
+                user.setCreatedAt(LocalDate.now());
             }
-        } catch (SQLException e) {
-            e.printStackTrace();
+        } else {
+            user.setCreatedAt(LocalDate.now());
         }
-        return users;
+
+        return user;
     }
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+package util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Drzewo BK (Burkhard-Keller) słów z odległością Levenshteina. Krawędź do dziecka jest
+ * opisana odległością dziecka od rodzica, więc szukając słów w odległości <= k od zapytania
+ * wystarczy zejść do dzieci z krawędzią w przedziale [d - k, d + k], gdzie d to odległość
+ * zapytania od węzła (nierówność trójkąta) - reszta drzewa jest pomijana.
+ * Klasa nie jest bezpieczna wątkowo - synchronizację zapewnia właściciel.
+ */
+public class BKTree {
+    // Co tyle odwiedzonych węzłów sprawdzany jest limit czasu wyszukiwania
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    private Node root;
+    private int size = 0;
+
+    /**
+     * Dodaje słowo. Zwraca false, jeśli słowo już jest w drzewie.
+     */
+    public boolean add(String word) {
+        if (root == null) {
+            root = new Node(word);
+            size++;
+            return true;
+        }
+
+        Node node = root;
+        while (true) {
+            int distance = distance(word, node.word);
+            if (distance == 0) {
+                return false;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                node.addChild(distance, new Node(word));
+                size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Zwraca słowa w odległości najwyżej maxDistance od zapytania, od najbliższych.
+     * Po przekroczeniu deadlineNanos (wg System.nanoTime()) przeszukiwanie jest przerywane
+     * i zwracane jest to, co znaleziono do tej pory (SearchResult.isTruncated()).
+     */
+    public SearchResult search(String query, int maxDistance, long deadlineNanos) {
+        List<Match> matches = new ArrayList<>();
+        boolean truncated = false;
+        int visited = 0;
+        QueryDistance queryDistance = new QueryDistance(query);
+
+        Deque<Node> pending = new ArrayDeque<>();
+        if (root != null) {
+            pending.push(root);
+        }
+        while (!pending.isEmpty()) {
+            if (++visited % DEADLINE_CHECK_INTERVAL == 0 && System.nanoTime() > deadlineNanos) {
+                truncated = true;
+                break;
+            }
+
+            Node node = pending.pop();
+            int distance = queryDistance.to(node.word);
+            if (distance <= maxDistance) {
+                matches.add(new Match(node.word, distance));
+            }
+            for (int i = 0; i < node.childCount; i++) {
+                if (Math.abs(node.edges[i] - distance) <= maxDistance) {
+                    pending.push(node.children[i]);
+                }
+            }
+        }
+
+        matches.sort(Comparator.comparingInt(Match::getDistance).thenComparing(Match::getWord));
+        return new SearchResult(matches, truncated, visited);
+    }
+
+    /**
+     * Odległość Levenshteina (wstawienie, usunięcie, zamiana - każde za 1)
+     */
+    public static int distance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (ca == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    /**
+     * Odległość od stałego zapytania do kolejnych słów - algorytm bitowo-równoległy Myersa
+     * (wariant Hyyrö dla odległości edycyjnej): maski pozycji znaków zapytania są liczone raz,
+     * a porównanie ze słowem to kilka operacji na long na każdy znak słowa.
+     * Zapytania dłuższe niż 64 znaki liczone są zwykłym programowaniem dynamicznym.
+     */
+    private static class QueryDistance {
+        private final String query;
+        private final int length;
+        private final long[] asciiMasks = new long[128];
+        private final Map<Character, Long> otherMasks = new HashMap<>();
+
+        QueryDistance(String query) {
+            this.query = query;
+            this.length = query.length();
+            if (length <= 64) {
+                for (int i = 0; i < length; i++) {
+                    char c = query.charAt(i);
+                    if (c < 128) {
+                        asciiMasks[c] |= 1L << i;
+                    } else {
+                        otherMasks.merge(c, 1L << i, (x, y) -> x | y);
+                    }
+                }
+            }
+        }
+
+        int to(String word) {
+            if (length == 0) {
+                return word.length();
+            }
+            if (length > 64) {
+                return distance(query, word);
+            }
+
+            long positive = -1L;
+            long negative = 0L;
+            long last = 1L << (length - 1);
+            int score = length;
+            for (int j = 0; j < word.length(); j++) {
+                char c = word.charAt(j);
+                long equal = c < 128 ? asciiMasks[c] : otherMasks.getOrDefault(c, 0L);
+                long vertical = equal | negative;
+                long horizontal = (((equal & positive) + positive) ^ positive) | equal;
+                long horizontalPositive = negative | ~(horizontal | positive);
+                long horizontalNegative = positive & horizontal;
+                if ((horizontalPositive & last) != 0) {
+                    score++;
+                } else if ((horizontalNegative & last) != 0) {
+                    score--;
+                }
+                // Pierwszy wiersz macierzy rośnie o 1 w każdej kolumnie (odległość, nie wyszukiwanie)
+                horizontalPositive = (horizontalPositive << 1) | 1L;
+                horizontalNegative = horizontalNegative << 1;
+                positive = horizontalNegative | ~(vertical | horizontalPositive);
+                negative = horizontalPositive & vertical;
+            }
+            return score;
+        }
+    }
+
+    private static class Node {
+        private final String word;
+        private int[] edges = new int[0];
+        private Node[] children = new Node[0];
+        private int childCount = 0;
+
+        Node(String word) {
+            this.word = word;
+        }
+
+        Node child(int edge) {
+            for (int i = 0; i < childCount; i++) {
+                if (edges[i] == edge) {
+                    return children[i];
+                }
+            }
+            return null;
+        }
+
+        void addChild(int edge, Node child) {
+            if (childCount == edges.length) {
+                int capacity = Math.max(2, childCount * 2);
+                edges = Arrays.copyOf(edges, capacity);
+                children = Arrays.copyOf(children, capacity);
+            }
+            edges[childCount] = edge;
+            children[childCount] = child;
+            childCount++;
+        }
+    }
+
+    public static class Match {
+        private final String word;
+        private final int distance;
+
+        public Match(String word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+
+        public String getWord() { return word; }
+        public int getDistance() { return distance; }
+    }
+
+    public static class SearchResult {
+        private final List<Match> matches;
+        private final boolean truncated;
+        private final int visitedNodes;
+
+        public SearchResult(List<Match> matches, boolean truncated, int visitedNodes) {
+            this.matches = matches;
+            this.truncated = truncated;
+            this.visitedNodes = visitedNodes;
+        }
+
+        public List<Match> getMatches() { return matches; }
+        public boolean isTruncated() { return truncated; }
+        public int getVisitedNodes() { return visitedNodes; }
+    }
+}
@@ -0,0 +1,485 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.IntConsumer;
+
+/**
+ * Zbiór nieujemnych liczb int (np. id książek) zapisany blokami po 65536 wartości (górne
+ * 16 bitów liczby). Blok z najwyżej 4096 elementami to posortowana tablica dolnych 16 bitów
+ * (2 bajty na element), większy - mapa bitowa 8 KB (bit na wartość). Zbiory rzadkie, np.
+ * książki jednego wydawnictwa, zajmują więc ułamek zwykłego BitSet, a gęste nie więcej niż on.
+ * Iloczyn, suma i różnica działają blok po bloku i zwracają nowe zbiory.
+ * Klasa nie jest bezpieczna wątkowo - synchronizację zapewnia właściciel.
+ */
+public class CompressedBitSet {
+    // Powyżej tylu elementów blok jest mapą bitową (tablica zajęłaby więcej niż 8 KB)
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    // Posortowane numery bloków, ich zawartość (char[] albo long[BITMAP_WORDS]) i liczność
+    private char[] keys;
+    private Object[] containers;
+    private int[] cardinalities;
+    private int size = 0;
+
+    public CompressedBitSet() {
+        this(4);
+    }
+
+    private CompressedBitSet(int capacity) {
+        keys = new char[capacity];
+        containers = new Object[capacity];
+        cardinalities = new int[capacity];
+    }
+
+    /**
+     * Dodaje wartość. Zwraca false, jeśli już była w zbiorze.
+     */
+    public boolean add(int value) {
+        char key = (char) (value >>> 16);
+        char low = (char) value;
+        int index = Arrays.binarySearch(keys, 0, size, key);
+        if (index < 0) {
+            insertContainer(-index - 1, key, new char[] { low }, 1);
+            return true;
+        }
+
+        int cardinality = cardinalities[index];
+        if (containers[index] instanceof long[] words) {
+            if ((words[low >>> 6] & (1L << low)) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= 1L << low;
+        } else {
+            char[] values = (char[]) containers[index];
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position >= 0) {
+                return false;
+            }
+            position = -position - 1;
+            if (cardinality == ARRAY_MAX) {
+                long[] words = toBitmap(values, cardinality);
+                words[low >>> 6] |= 1L << low;
+                containers[index] = words;
+            } else {
+                if (cardinality == values.length) {
+                    values = Arrays.copyOf(values, Math.min(ARRAY_MAX, Math.max(4, cardinality * 2)));
+                    containers[index] = values;
+                }
+                System.arraycopy(values, position, values, position + 1, cardinality - position);
+                values[position] = low;
+            }
+        }
+        cardinalities[index] = cardinality + 1;
+        return true;
+    }
+
+    /**
+     * Usuwa wartość. Zwraca false, jeśli jej nie było.
+     */
+    public boolean remove(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        int cardinality = cardinalities[index];
+
+        if (containers[index] instanceof long[] words) {
+            if ((words[low >>> 6] & (1L << low)) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~(1L << low);
+            cardinality--;
+            // Z zapasem, żeby wartości dodawane i usuwane na granicy nie przełączały postaci bloku
+            if (cardinality < ARRAY_MAX / 2) {
+                containers[index] = toArray(words, cardinality);
+            }
+        } else {
+            char[] values = (char[]) containers[index];
+            int position = Arrays.binarySearch(values, 0, cardinality, low);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(values, position + 1, values, position, cardinality - position - 1);
+            cardinality--;
+        }
+
+        if (cardinality == 0) {
+            removeContainer(index);
+        } else {
+            cardinalities[index] = cardinality;
+        }
+        return true;
+    }
+
+    public boolean contains(int value) {
+        int index = Arrays.binarySearch(keys, 0, size, (char) (value >>> 16));
+        if (index < 0) {
+            return false;
+        }
+        char low = (char) value;
+        if (containers[index] instanceof long[] words) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) containers[index], 0, cardinalities[index], low) >= 0;
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += cardinalities[i];
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Część wspólna z other (nowy zbiór)
+     */
+    public CompressedBitSet and(CompressedBitSet other) {
+        CompressedBitSet result = new CompressedBitSet(Math.max(1, Math.min(size, other.size)));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                result.appendContainer(keys[i], andContainers(containers[i], cardinalities[i],
+                        other.containers[j], other.cardinalities[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Liczność części wspólnej z other - bez budowania wyniku
+     */
+    public int andCardinality(CompressedBitSet other) {
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += andCardinality(containers[i], cardinalities[i], other.containers[j], other.cardinalities[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Suma z other (nowy zbiór)
+     */
+    public CompressedBitSet or(CompressedBitSet other) {
+        return union(Arrays.asList(this, other));
+    }
+
+    /**
+     * Elementy tego zbioru, których nie ma w other (nowy zbiór)
+     */
+    public CompressedBitSet andNot(CompressedBitSet other) {
+        CompressedBitSet result = new CompressedBitSet(Math.max(1, size));
+        int j = 0;
+        for (int i = 0; i < size; i++) {
+            while (j < other.size && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.size && other.keys[j] == keys[i]) {
+                result.appendContainer(keys[i], andNotContainers(containers[i], cardinalities[i],
+                        other.containers[j], other.cardinalities[j]));
+            } else {
+                result.appendContainer(keys[i], copyContainer(containers[i], cardinalities[i]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Suma dowolnej liczby zbiorów. Bloki są składane w mapach bitowych, więc koszt nie
+     * zależy od kolejności zbiorów (w przeciwieństwie do kolejnych or()).
+     */
+    public static CompressedBitSet union(Collection<CompressedBitSet> sets) {
+        int maxKey = -1;
+        for (CompressedBitSet set : sets) {
+            if (set.size > 0) {
+                maxKey = Math.max(maxKey, set.keys[set.size - 1]);
+            }
+        }
+        long[][] blocks = new long[maxKey + 1][];
+        for (CompressedBitSet set : sets) {
+            for (int i = 0; i < set.size; i++) {
+                long[] words = blocks[set.keys[i]];
+                if (words == null) {
+                    words = new long[BITMAP_WORDS];
+                    blocks[set.keys[i]] = words;
+                }
+                if (set.containers[i] instanceof long[] source) {
+                    for (int w = 0; w < BITMAP_WORDS; w++) {
+                        words[w] |= source[w];
+                    }
+                } else {
+                    char[] values = (char[]) set.containers[i];
+                    for (int k = 0; k < set.cardinalities[i]; k++) {
+                        words[values[k] >>> 6] |= 1L << values[k];
+                    }
+                }
+            }
+        }
+
+        CompressedBitSet result = new CompressedBitSet(Math.max(1, maxKey + 1));
+        for (int key = 0; key <= maxKey; key++) {
+            if (blocks[key] != null) {
+                result.appendContainer((char) key, compactBitmap(blocks[key]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Przekazuje elementy rosnąco
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            int high = keys[i] << 16;
+            if (containers[i] instanceof long[] words) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        action.accept(high | (w << 6) | Long.numberOfTrailingZeros(word));
+                        word &= word - 1;
+                    }
+                }
+            } else {
+                char[] values = (char[]) containers[i];
+                for (int k = 0; k < cardinalities[i]; k++) {
+                    action.accept(high | values[k]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Elementy rosnąco
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int[] position = { 0 };
+        forEach(value -> result[position[0]++] = value);
+        return result;
+    }
+
+    // Operacje na blokach. Wyniki mają dokładny rozmiar: tablica - długość równą liczności.
+
+    private static Object andContainers(Object a, int cardinalityA, Object b, int cardinalityB) {
+        if (a instanceof long[] wordsA && b instanceof long[] wordsB) {
+            long[] words = new long[BITMAP_WORDS];
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                words[w] = wordsA[w] & wordsB[w];
+            }
+            return compactBitmap(words);
+        }
+        if (a instanceof long[] words) {
+            return filterArray((char[]) b, cardinalityB, words, true);
+        }
+        if (b instanceof long[] words) {
+            return filterArray((char[]) a, cardinalityA, words, true);
+        }
+
+        char[] valuesA = (char[]) a;
+        char[] valuesB = (char[]) b;
+        char[] result = new char[Math.min(cardinalityA, cardinalityB)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardinalityA && j < cardinalityB) {
+            if (valuesA[i] < valuesB[j]) {
+                i++;
+            } else if (valuesA[i] > valuesB[j]) {
+                j++;
+            } else {
+                result[count++] = valuesA[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static int andCardinality(Object a, int cardinalityA, Object b, int cardinalityB) {
+        if (a instanceof long[] wordsA && b instanceof long[] wordsB) {
+            int count = 0;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                count += Long.bitCount(wordsA[w] & wordsB[w]);
+            }
+            return count;
+        }
+        if (a instanceof long[] || b instanceof long[]) {
+            long[] words = a instanceof long[] wordsA ? wordsA : (long[]) b;
+            char[] values = a instanceof long[] ? (char[]) b : (char[]) a;
+            int length = a instanceof long[] ? cardinalityB : cardinalityA;
+            int count = 0;
+            for (int k = 0; k < length; k++) {
+                if ((words[values[k] >>> 6] & (1L << values[k])) != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        char[] valuesA = (char[]) a;
+        char[] valuesB = (char[]) b;
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < cardinalityA && j < cardinalityB) {
+            if (valuesA[i] < valuesB[j]) {
+                i++;
+            } else if (valuesA[i] > valuesB[j]) {
+                j++;
+            } else {
+                count++;
+                i++;
+                j++;
+            }
+        }
+        return count;
+    }
+
+    private static Object andNotContainers(Object a, int cardinalityA, Object b, int cardinalityB) {
+        if (a instanceof long[] wordsA) {
+            long[] words = wordsA.clone();
+            if (b instanceof long[] wordsB) {
+                for (int w = 0; w < BITMAP_WORDS; w++) {
+                    words[w] &= ~wordsB[w];
+                }
+            } else {
+                char[] values = (char[]) b;
+                for (int k = 0; k < cardinalityB; k++) {
+                    words[values[k] >>> 6] &= ~(1L << values[k]);
+                }
+            }
+            return compactBitmap(words);
+        }
+        if (b instanceof long[] words) {
+            return filterArray((char[]) a, cardinalityA, words, false);
+        }
+
+        char[] valuesA = (char[]) a;
+        char[] valuesB = (char[]) b;
+        char[] result = new char[cardinalityA];
+        int count = 0;
+        int j = 0;
+        for (int i = 0; i < cardinalityA; i++) {
+            while (j < cardinalityB && valuesB[j] < valuesA[i]) {
+                j++;
+            }
+            if (j >= cardinalityB || valuesB[j] != valuesA[i]) {
+                result[count++] = valuesA[i];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    // Wartości tablicy obecne (keep = true) albo nieobecne w mapie bitowej
+    private static char[] filterArray(char[] values, int cardinality, long[] words, boolean keep) {
+        char[] result = new char[cardinality];
+        int count = 0;
+        for (int k = 0; k < cardinality; k++) {
+            if (((words[values[k] >>> 6] & (1L << values[k])) != 0) == keep) {
+                result[count++] = values[k];
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private static Object copyContainer(Object container, int cardinality) {
+        if (container instanceof long[] words) {
+            return words.clone();
+        }
+        return Arrays.copyOf((char[]) container, cardinality);
+    }
+
+    // Mapa bitowa z najwyżej ARRAY_MAX elementami zamieniana na tablicę
+    private static Object compactBitmap(long[] words) {
+        int cardinality = 0;
+        for (long word : words) {
+            cardinality += Long.bitCount(word);
+        }
+        return cardinality <= ARRAY_MAX ? toArray(words, cardinality) : words;
+    }
+
+    private static char[] toArray(long[] words, int cardinality) {
+        char[] values = new char[cardinality];
+        int count = 0;
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            long word = words[w];
+            while (word != 0) {
+                values[count++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                word &= word - 1;
+            }
+        }
+        return values;
+    }
+
+    private static long[] toBitmap(char[] values, int cardinality) {
+        long[] words = new long[BITMAP_WORDS];
+        for (int k = 0; k < cardinality; k++) {
+            words[values[k] >>> 6] |= 1L << values[k];
+        }
+        return words;
+    }
+
+    // Dopisuje blok na końcu (klucze rosnąco); puste bloki są pomijane
+    private void appendContainer(char key, Object container) {
+        int cardinality;
+        if (container instanceof long[] words) {
+            cardinality = 0;
+            for (long word : words) {
+                cardinality += Long.bitCount(word);
+            }
+        } else {
+            cardinality = ((char[]) container).length;
+        }
+        if (cardinality > 0) {
+            insertContainer(size, key, container, cardinality);
+        }
+    }
+
+    private void insertContainer(int index, char key, Object container, int cardinality) {
+        if (size == keys.length) {
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+            cardinalities = Arrays.copyOf(cardinalities, capacity);
+        }
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        cardinalities[index] = cardinality;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        System.arraycopy(cardinalities, index + 1, cardinalities, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+}
@@ -0,0 +1,102 @@
+package util;
+
+/**
+ * Kanoniczna postać numeru ISBN: ISBN-13 zapisany jako liczba (kolumna books.isbn_key).
+ * ISBN-10 jest zamieniany na ISBN-13 z prefiksem 978 i przeliczoną cyfrą kontrolną,
+ * więc "83-7574-811-0", "978-83-7574-811-6" i "9788375748116" dają ten sam klucz.
+ * Klucz nie sprawdza cyfry kontrolnej: dla ISBN-10 jest ona przeliczana, więc numer z błędną
+ * cyfrą kontrolną dostaje ten sam isbn_key co poprawny (ISBN-13 z błędną cyfrą - własny klucz).
+ * Błędną cyfrę wykrywa hasValidCheckDigit, przed którym ostrzegają okna dodawania i edycji książki.
+ */
+public class Isbn {
+
+    private Isbn() {}
+
+    /**
+     * Klucz ISBN-13 albo null, gdy tekst nie jest numerem ISBN-10 ani ISBN-13
+     */
+    public static Long toKey(String isbn) {
+        if (isbn == null) {
+            return null;
+        }
+
+        // Myślniki i spacje pomijamy bez tworzenia pośrednich napisów - toKey jest wołany dla każdej książki
+        char[] digits = new char[13];
+        int length = 0;
+        for (int i = 0; i < isbn.length(); i++) {
+            char c = isbn.charAt(i);
+            if (c == '-' || c == ' ' || c == '\t') {
+                continue;
+            }
+            boolean checkX = (c == 'X' || c == 'x') && length == 9;
+            if ((c < '0' || c > '9') && !checkX || length == 13) {
+                return null;
+            }
+            digits[length++] = checkX ? 'X' : c;
+        }
+
+        if (length == 13) {
+            return digits[12] == 'X' ? null : Long.parseLong(new String(digits));
+        }
+        if (length == 10) {
+            // ISBN-10 -> 978 + pierwsze 9 cyfr + cyfra kontrolna ISBN-13
+            long key = 978;
+            for (int i = 0; i < 9; i++) {
+                key = key * 10 + (digits[i] - '0');
+            }
+            return key * 10 + isbn13CheckDigit(key);
+        }
+        return null;
+    }
+
+    /**
+     * Czy tekst jest numerem ISBN-10 lub ISBN-13 (myślniki i spacje są pomijane) z poprawną cyfrą kontrolną
+     */
+    public static boolean hasValidCheckDigit(String isbn) {
+        if (isbn == null) {
+            return false;
+        }
+        String digits = isbn.replaceAll("[-\\s]", "").toUpperCase();
+        if (digits.matches("\\d{9}[\\dX]")) {
+            // Wagi 10..1, X = 10, suma podzielna przez 11
+            int sum = 0;
+            for (int i = 0; i < 10; i++) {
+                int digit = digits.charAt(i) == 'X' ? 10 : digits.charAt(i) - '0';
+                sum += digit * (10 - i);
+            }
+            return sum % 11 == 0;
+        }
+        if (digits.matches("\\d{13}")) {
+            long key = Long.parseLong(digits);
+            return isbn13CheckDigit(key / 10) == key % 10;
+        }
+        return false;
+    }
+
+    /**
+     * Klucz zapisany jako 13 cyfr (z zerami wiodącymi)
+     */
+    public static String format(long key) {
+        String digits = Long.toString(key);
+        return digits.length() >= 13 ? digits : "0".repeat(13 - digits.length()) + digits;
+    }
+
+    /**
+     * Dziewięć cyfr rdzenia ISBN-10 (bez cyfry kontrolnej) albo null, gdy klucz nie zaczyna się od 978
+     */
+    public static String isbn10Core(long key) {
+        String digits = format(key);
+        return digits.startsWith("978") ? digits.substring(3, 12) : null;
+    }
+
+    // Wagi 1 i 3 na przemian dla 12 cyfr
+    private static int isbn13CheckDigit(long first12) {
+        int sum = 0;
+        for (int i = 0; i < 12; i++) {
+            int digit = (int) (first12 % 10);
+            first12 /= 10;
+            sum += digit * (i % 2 == 0 ? 3 : 1);
+        }
+        return (10 - sum % 10) % 10;
+    }
+}
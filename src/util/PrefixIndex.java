@@ -0,0 +1,459 @@
+package util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Podpowiedzi (autouzupełnianie) dla zbioru napisów z wagami, np. tytułów z liczbą egzemplarzy.
+ * Prefiks pasuje do początku dowolnego słowa napisu ("sapk" -> "Andrzej Sapkowski"),
+ * bez względu na wielkość liter i polskie znaki (porównywane są klucze TextNormalizer.fold).
+ *
+ * Struktura jest zwarta - bez węzła na każdą literę jak w klasycznym drzewie trie:
+ * - segment to posortowana tablica początków słów (para: napis, przesunięcie), czyli tablica
+ *   sufiksów ograniczona do początków słów, oraz drzewo przedziałowe z największą wagą
+ *   w przedziale. Prefiks wyznacza spójny przedział tablicy (dwa wyszukiwania binarne),
+ *   a k najcięższych napisów w przedziale daje przeszukiwanie drzewa od najcięższych
+ *   węzłów - O(k log n), niezależnie od tego, ile napisów pasuje do prefiksu;
+ * - zmiana wagi istniejącego napisu aktualizuje drzewo jego segmentu (O(log n));
+ * - nowe napisy trafiają do krótkiej listy przeglądanej liniowo, a po jej zapełnieniu
+ *   do nowego segmentu; sąsiednie segmenty podobnej wielkości są scalane (jak w drzewie LSM),
+ *   więc segmentów jest O(log n), a koszt budowania rozkłada się na wstawienia.
+ *
+ * Do pierwszego wywołania build() napisy tylko są zbierane - wczytanie dużego zbioru
+ * i jedno build() jest dużo tańsze niż budowanie segmentów po drodze.
+ * Klasa nie jest bezpieczna wątkowo - synchronizację zapewnia właściciel.
+ */
+public class PrefixIndex {
+    // Ile nowych napisów jest przeglądanych liniowo, zanim trafią do segmentu
+    private static final int TAIL_LIMIT = 256;
+    // Ile początków słów jednego napisu indeksować (dalsze słowa długich tytułów są pomijane)
+    private static final int MAX_WORD_STARTS = 8;
+
+    private String[] displays = new String[16];
+    private String[] keys = new String[16];
+    private int[] weights = new int[16];
+    private int valueCount = 0;
+
+    private final List<Segment> segments = new ArrayList<>();
+    // Napisy o numerach >= tailStart nie są jeszcze w żadnym segmencie
+    private int tailStart = 0;
+    private final Map<String, Integer> tailIds = new HashMap<>();
+
+    /**
+     * Zmienia wagę napisu o delta (dodaje napis, jeśli go nie ma). Napis o wadze 0
+     * zostaje w strukturze, ale nie jest podpowiadany. Pierwsza dodana pisownia
+     * danego klucza jest tą, która jest podpowiadana.
+     */
+    public void add(String value, int delta) {
+        add(value, TextNormalizer.fold(value), delta);
+    }
+
+    /**
+     * Jak add(value, delta), z kluczem już złożonym przez TextNormalizer.fold
+     * (np. odczytanym z kolumny *_key) - bez ponownego składania przy wczytywaniu
+     */
+    public void add(String value, String key, int delta) {
+        if (value == null || key == null || key.isEmpty()) {
+            return;
+        }
+
+        int id = find(key);
+        if (id < 0) {
+            if (delta <= 0) {
+                return;
+            }
+            id = append(value.trim(), key);
+            tailIds.put(key, id);
+        }
+        weights[id] = Math.max(0, weights[id] + delta);
+
+        if (id < tailStart) {
+            segmentOf(id).update(id);
+        } else if (!segments.isEmpty() && valueCount - tailStart >= TAIL_LIMIT) {
+            flushTail();
+        }
+    }
+
+    /**
+     * Buduje jeden segment ze wszystkich napisów (po wczytaniu całego zbioru)
+     */
+    public void build() {
+        segments.clear();
+        tailIds.clear();
+        tailStart = valueCount;
+        if (valueCount > 0) {
+            segments.add(new Segment(0, valueCount));
+        }
+    }
+
+    public int size() {
+        return valueCount;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Najwyżej limit napisów o największej wadze, których jakieś słowo zaczyna się od prefiksu
+     * (od najcięższych, przy równej wadze alfabetycznie)
+     */
+    public List<String> suggest(String prefix, int limit) {
+        String folded = TextNormalizer.fold(prefix);
+        List<String> suggestions = new ArrayList<>();
+        if (folded == null || folded.isEmpty() || limit <= 0) {
+            return suggestions;
+        }
+
+        Set<Integer> candidates = new LinkedHashSet<>();
+        for (Segment segment : segments) {
+            segment.collect(folded, limit, candidates);
+        }
+        for (int id = tailStart; id < valueCount; id++) {
+            if (weights[id] > 0 && matchesWordStart(keys[id], folded)) {
+                candidates.add(id);
+            }
+        }
+
+        candidates.stream()
+                .sorted((a, b) -> weights[a] != weights[b] ? Integer.compare(weights[b], weights[a]) : keys[a].compareTo(keys[b]))
+                .limit(limit)
+                .forEach(id -> suggestions.add(displays[id]));
+        return suggestions;
+    }
+
+    private int append(String display, String key) {
+        if (valueCount == keys.length) {
+            int capacity = valueCount * 2;
+            displays = Arrays.copyOf(displays, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+        }
+        displays[valueCount] = display;
+        keys[valueCount] = key;
+        return valueCount++;
+    }
+
+    private int find(String key) {
+        Integer id = tailIds.get(key);
+        if (id != null) {
+            return id;
+        }
+        for (Segment segment : segments) {
+            int found = segment.find(key);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    private Segment segmentOf(int id) {
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            if (segments.get(middle).firstValue <= id) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    private void flushTail() {
+        segments.add(new Segment(tailStart, valueCount));
+        tailIds.clear();
+        tailStart = valueCount;
+
+        // Scalanie sąsiednich segmentów podobnej wielkości - segmentów zostaje O(log n)
+        while (segments.size() >= 2) {
+            Segment last = segments.get(segments.size() - 1);
+            Segment previous = segments.get(segments.size() - 2);
+            if (previous.valueCount() > last.valueCount() * 2) {
+                break;
+            }
+            segments.remove(segments.size() - 1);
+            segments.set(segments.size() - 1, new Segment(previous.firstValue, last.endValue));
+        }
+    }
+
+    private static boolean matchesWordStart(String key, String prefix) {
+        int starts = 0;
+        for (int offset = 0; offset < key.length() && starts < MAX_WORD_STARTS; offset++) {
+            if (isWordStart(key, offset)) {
+                starts++;
+                if (key.startsWith(prefix, offset)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Początek całego napisu też się liczy - po nim find() odnajduje napis w segmencie
+    private static boolean isWordStart(String key, int offset) {
+        return offset == 0 || Character.isLetterOrDigit(key.charAt(offset))
+                && !Character.isLetterOrDigit(key.charAt(offset - 1));
+    }
+
+    /**
+     * Posortowane początki słów napisów o numerach [firstValue, endValue) z drzewem
+     * przedziałowym największych wag. Pozycja w tablicy to para (numer napisu, przesunięcie)
+     * zapisana w jednym long.
+     */
+    private final class Segment {
+        private final int firstValue;
+        private final int endValue;
+        private final long[] entries;
+        // tree[leaves + i] = i; wyżej - pozycja o największej wadze w poddrzewie (-1: puste)
+        private final int[] tree;
+        private final int leaves;
+        // Pozycje początków słów napisu v: valuePositions[valueStart[v - firstValue] ..]
+        private final int[] valueStart;
+        private final int[] valuePositions;
+
+        Segment(int firstValue, int endValue) {
+            this.firstValue = firstValue;
+            this.endValue = endValue;
+
+            long[] collected = new long[Math.max(16, (endValue - firstValue) * 2)];
+            int count = 0;
+            for (int id = firstValue; id < endValue; id++) {
+                String key = keys[id];
+                int starts = 0;
+                for (int offset = 0; offset < key.length() && starts < MAX_WORD_STARTS; offset++) {
+                    if (isWordStart(key, offset)) {
+                        if (count == collected.length) {
+                            collected = Arrays.copyOf(collected, count * 2);
+                        }
+                        collected[count++] = ((long) id << 32) | offset;
+                        starts++;
+                    }
+                }
+            }
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            sort(collected, order, new long[count], 0, count, 0);
+            entries = new long[count];
+            for (int i = 0; i < count; i++) {
+                entries[i] = collected[order[i]];
+            }
+
+            valueStart = new int[endValue - firstValue + 1];
+            for (long entry : entries) {
+                valueStart[valueOf(entry) - firstValue + 1]++;
+            }
+            for (int i = 1; i < valueStart.length; i++) {
+                valueStart[i] += valueStart[i - 1];
+            }
+            valuePositions = new int[count];
+            int[] filled = Arrays.copyOf(valueStart, valueStart.length - 1);
+            for (int position = 0; position < count; position++) {
+                valuePositions[filled[valueOf(entries[position]) - firstValue]++] = position;
+            }
+
+            int size = 1;
+            while (size < Math.max(1, count)) {
+                size <<= 1;
+            }
+            leaves = size;
+            tree = new int[2 * size];
+            Arrays.fill(tree, -1);
+            for (int position = 0; position < count; position++) {
+                tree[size + position] = position;
+            }
+            for (int node = size - 1; node >= 1; node--) {
+                tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        int valueCount() {
+            return endValue - firstValue;
+        }
+
+        void update(int id) {
+            for (int i = valueStart[id - firstValue]; i < valueStart[id - firstValue + 1]; i++) {
+                for (int node = (leaves + valuePositions[i]) >> 1; node >= 1; node >>= 1) {
+                    tree[node] = heavier(tree[2 * node], tree[2 * node + 1]);
+                }
+            }
+        }
+
+        int find(String key) {
+            for (int position = lowerBound(key, false); position < entries.length; position++) {
+                long entry = entries[position];
+                if (compareSuffix(entry, key, false) != 0) {
+                    break;
+                }
+                // Ten sam tekst może być też końcówką dłuższego napisu - liczy się tylko cały napis
+                if (offsetOf(entry) == 0 && keys[valueOf(entry)].length() == key.length()) {
+                    return valueOf(entry);
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Dodaje do wyniku najwyżej limit najcięższych napisów pasujących do prefiksu
+         */
+        void collect(String prefix, int limit, Set<Integer> result) {
+            int from = lowerBound(prefix, true);
+            int to = upperBound(prefix);
+            if (from >= to) {
+                return;
+            }
+
+            PriorityQueue<Integer> nodes = new PriorityQueue<>((a, b) -> compareNodes(tree[a], tree[b]));
+            for (int left = from + leaves, right = to + leaves; left < right; left >>= 1, right >>= 1) {
+                if ((left & 1) == 1) {
+                    nodes.add(left++);
+                }
+                if ((right & 1) == 1) {
+                    nodes.add(--right);
+                }
+            }
+
+            int added = 0;
+            while (!nodes.isEmpty() && added < limit) {
+                int node = nodes.poll();
+                int position = tree[node];
+                if (position < 0 || weights[valueOf(entries[position])] == 0) {
+                    break;
+                }
+                if (node >= leaves) {
+                    if (result.add(valueOf(entries[position]))) {
+                        added++;
+                    }
+                } else {
+                    nodes.add(2 * node);
+                    nodes.add(2 * node + 1);
+                }
+            }
+        }
+
+        // Pierwsza pozycja, której sufiks (przycięty do długości prefiksu, gdy asPrefix) jest >= text
+        private int lowerBound(String text, boolean asPrefix) {
+            int low = 0;
+            int high = entries.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareSuffix(entries[middle], text, asPrefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        // Pierwsza pozycja, której sufiks nie zaczyna się od prefiksu i jest od niego większy
+        private int upperBound(String prefix) {
+            int low = 0;
+            int high = entries.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareSuffix(entries[middle], prefix, true) <= 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        private int compareNodes(int a, int b) {
+            int weightA = a < 0 ? -1 : weights[valueOf(entries[a])];
+            int weightB = b < 0 ? -1 : weights[valueOf(entries[b])];
+            if (weightA != weightB) {
+                return Integer.compare(weightB, weightA);
+            }
+            return Integer.compare(a, b);
+        }
+
+        private int heavier(int a, int b) {
+            if (a < 0) {
+                return b;
+            }
+            if (b < 0) {
+                return a;
+            }
+            return compareNodes(a, b) <= 0 ? a : b;
+        }
+
+        private int compareSuffix(long entry, String text, boolean asPrefix) {
+            String key = keys[valueOf(entry)];
+            int offset = offsetOf(entry);
+            int length = key.length() - offset;
+            int common = Math.min(length, text.length());
+            for (int i = 0; i < common; i++) {
+                char c = key.charAt(offset + i);
+                char t = text.charAt(i);
+                if (c != t) {
+                    return c < t ? -1 : 1;
+                }
+            }
+            if (asPrefix && length >= text.length()) {
+                return 0;
+            }
+            return Integer.compare(length, text.length());
+        }
+
+        /**
+         * Sortowanie pozycji order[from, to) wg sufiksów od znaku depth (MSD): para kolejnych
+         * znaków i numer pozycji są pakowane w jeden long i sortowane Arrays.sort na typie
+         * prostym, a grupy z tą samą parą - rekurencyjnie od następnej pary. Szybsze niż
+         * sortowanie z komparatorem porównującym całe napisy.
+         */
+        private void sort(long[] unsorted, int[] order, long[] packed, int from, int to, int depth) {
+            for (int i = from; i < to; i++) {
+                // Odwrócony bit znaku - Arrays.sort porównuje ze znakiem, a znaki są bez znaku
+                packed[i] = (((long) charPair(unsorted[order[i]], depth) << 32) | order[i]) ^ Long.MIN_VALUE;
+            }
+            Arrays.sort(packed, from, to);
+            for (int i = from; i < to; i++) {
+                order[i] = (int) packed[i];
+            }
+
+            int groupStart = from;
+            for (int i = from + 1; i <= to; i++) {
+                if (i < to && packed[i] >>> 32 == packed[groupStart] >>> 32) {
+                    continue;
+                }
+                long pair = packed[groupStart] >>> 32;
+                // Sufiksy skończyły się w tej parze znaków - są równe, dalej nie ma czego porównywać
+                boolean ended = (pair & 0xFFFF) == 0;
+                if (i - groupStart > 1 && !ended) {
+                    sort(unsorted, order, packed, groupStart, i, depth + 2);
+                }
+                groupStart = i;
+            }
+        }
+
+        // Znaki depth i depth + 1 sufiksu (0 za końcem napisu - przed każdym innym znakiem)
+        private int charPair(long entry, int depth) {
+            String key = keys[valueOf(entry)];
+            int position = offsetOf(entry) + depth;
+            int first = position < key.length() ? key.charAt(position) : 0;
+            int second = position + 1 < key.length() ? key.charAt(position + 1) : 0;
+            return (first << 16) | second;
+        }
+    }
+
+    private static int valueOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int offsetOf(long entry) {
+        return (int) entry;
+    }
+}
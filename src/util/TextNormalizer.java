@@ -0,0 +1,78 @@
+package util;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normalizacja tekstu do porównań i wyszukiwania: małe litery, bez znaków
+ * diakrytycznych (także "ł" -> "l", którego SQLite LOWER() nie obsługuje),
+ * bez nadmiarowych spacji. Wynik jest zapisywany w kolumnach *_key tabeli books.
+ */
+public class TextNormalizer {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private TextNormalizer() {}
+
+    public static String fold(String text) {
+        if (text == null) {
+            return null;
+        }
+
+        String trimmed = text.trim();
+        if (trimmed.isEmpty()) {
+            return "";
+        }
+
+        // Rozkład NFD oddziela znaki diakrytyczne (ą -> a + ˛), które potem pomijamy.
+        // Jedno przejście zamiast kilku wyrażeń regularnych - fold jest wołany dla każdej książki
+        String decomposed = Normalizer.normalize(trimmed, Normalizer.Form.NFD);
+        StringBuilder sb = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); ) {
+            int c = decomposed.codePointAt(i);
+            i += Character.charCount(c);
+
+            int type = Character.getType(c);
+            if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK
+                    || type == Character.COMBINING_SPACING_MARK) {
+                continue;
+            }
+            // Ciąg białych znaków zamieniamy na jedną spację
+            if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r') {
+                pendingSpace = true;
+                continue;
+            }
+            if (pendingSpace) {
+                sb.append(' ');
+                pendingSpace = false;
+            }
+            // Litery bez rozkładu kanonicznego
+            switch (c) {
+                case 'ł', 'Ł' -> sb.append('l');
+                case 'đ', 'Đ' -> sb.append('d');
+                case 'ø', 'Ø' -> sb.append('o');
+                case 'ß' -> sb.append("ss");
+                default -> sb.appendCodePoint(c);
+            }
+        }
+        if (pendingSpace) {
+            sb.append(' ');
+        }
+
+        return sb.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Dzieli złożony tekst (wynik fold) na słowa tak jak tokenizer FTS5 unicode61
+     */
+    public static String[] words(String folded) {
+        if (folded == null || folded.isEmpty()) {
+            return new String[0];
+        }
+        return Arrays.stream(NON_WORD.split(folded))
+                .filter(word -> !word.isEmpty())
+                .toArray(String[]::new);
+    }
+}
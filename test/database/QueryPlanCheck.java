@@ -0,0 +1,185 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Sprawdza plany (EXPLAIN QUERY PLAN) najczęstszych zapytań serwisów na świeżej bazie
+ * po wszystkich migracjach: każde zapytanie musi iść po swoim indeksie z zarządzanego
+ * zestawu SchemaMigrations.INDEXES, a każdy indeks zestawu musi mieć tu swoje zapytanie.
+ * Uruchamiane ręcznie (main) - kod wyjścia 1, gdy któryś plan się nie zgadza.
+ * Treść zapytań jest kopią z serwisów; przy zmianie zapytania trzeba zmienić i ją.
+ */
+public class QueryPlanCheck {
+
+    /**
+     * Zapytanie i fragmenty, które muszą wystąpić w jego planie
+     */
+    private static class Check {
+        private final String usedBy;
+        private final String sql;
+        private final String[] expected;
+
+        Check(String usedBy, String sql, String... expected) {
+            this.usedBy = usedBy;
+            this.sql = sql;
+            this.expected = expected;
+        }
+    }
+
+    private static final List<Check> CHECKS = List.of(
+            new Check("RentalService.getOverdueRentals", """
+                SELECT r.*, u.username, b.title as book_title, b.author as book_author
+                FROM rentals r
+                JOIN users u ON r.user_id = u.id
+                JOIN books b ON r.book_id = b.id
+                WHERE r.status = 'ACTIVE' AND r.expected_return_date < DATE('now')
+                ORDER BY r.expected_return_date ASC
+                """, "SEARCH r USING INDEX idx_rentals_status_expected"),
+            new Check("RentalService.getActiveRentalsPage", """
+                SELECT r.*, u.username, b.title as book_title, b.author as book_author
+                FROM rentals r
+                JOIN users u ON r.user_id = u.id
+                JOIN books b ON r.book_id = b.id
+                WHERE r.status = 'ACTIVE'
+                ORDER BY r.rent_date DESC, r.id DESC LIMIT ?
+                """, "SEARCH r USING INDEX idx_rentals_status_rent_date"),
+            new Check("RentalService.getUserRentals", """
+                SELECT r.*, b.title as book_title, b.author as book_author
+                FROM rentals r
+                JOIN books b ON r.book_id = b.id
+                WHERE r.user_id = ? AND r.status = 'ACTIVE'
+                ORDER BY r.rent_date DESC
+                """, "SEARCH r USING INDEX idx_rentals_user_status"),
+            new Check("BookService.countByIsbn (ISBN)",
+                    "SELECT COUNT(*) FROM books b WHERE b.isbn_key = ? AND b.available = TRUE",
+                    "USING COVERING INDEX idx_books_isbn_key"),
+            new Check("BookService.countByIsbn (tekst)", """
+                SELECT COUNT(*) FROM books_fts CROSS JOIN books b ON b.id = books_fts.rowid
+                WHERE books_fts MATCH ? AND b.isbn = ? AND b.available = TRUE
+                """, "SCAN books_fts VIRTUAL TABLE", "SEARCH b USING INTEGER PRIMARY KEY"),
+            new Check("BookService.streamAllBooks",
+                    "SELECT * FROM books ORDER BY title",
+                    "SCAN books USING INDEX idx_books_title"),
+            new Check("BookService.getAvailableBooks",
+                    "SELECT * FROM books WHERE available = TRUE ORDER BY title",
+                    "SEARCH books USING INDEX idx_books_available_title"),
+            new Check("HoldService.placeHold",
+                    "SELECT COUNT(*), COALESCE(SUM(available), 0) FROM books WHERE title_key = ? AND author_key = ?",
+                    "USING COVERING INDEX idx_books_title_author_key"),
+            new Check("ExtensionRequestService.getPendingRequests", """
+                SELECT er.*, u.username, b.title as book_title, b.author as book_author
+                FROM extension_requests er
+                JOIN rentals r ON er.rental_id = r.id
+                JOIN users u ON er.user_id = u.id
+                JOIN books b ON r.book_id = b.id
+                WHERE er.status = 'PENDING'
+                ORDER BY er.request_date ASC
+                """, "SEARCH er USING INDEX idx_ext_requests_status_date"),
+            new Check("ExtensionRequestService.getPendingRequestsCount",
+                    "SELECT COUNT(*) FROM extension_requests WHERE status = 'PENDING'",
+                    "USING COVERING INDEX idx_ext_requests_status_date"),
+            new Check("ExtensionRequestService.hasPendingRequestForRental",
+                    "SELECT COUNT(*) FROM extension_requests WHERE rental_id = ? AND status = 'PENDING'",
+                    "USING COVERING INDEX idx_ext_requests_rental_status"),
+            new Check("ExtensionRequestService.getUserExtensionRequests", """
+                SELECT er.*, r.user_id, b.title as book_title, b.author as book_author
+                FROM extension_requests er
+                JOIN rentals r ON er.rental_id = r.id
+                JOIN books b ON r.book_id = b.id
+                WHERE er.user_id = ?
+                ORDER BY er.request_date DESC
+                """, "SEARCH er USING INDEX idx_ext_requests_user_date"),
+            new Check("HoldService.assignReturnedCopy", """
+                SELECT h.id, b.title_key, b.author_key
+                FROM books b
+                JOIN holds h ON h.title_key = b.title_key AND h.author_key = b.author_key AND h.status = 'WAITING'
+                WHERE b.id = ?
+                ORDER BY h.id
+                LIMIT 1
+                """, "USING COVERING INDEX idx_holds_title_status"),
+            new Check("HoldService.getUserHolds",
+                    "SELECT * FROM holds WHERE user_id = ? AND status IN ('WAITING', 'READY') ORDER BY id",
+                    "SEARCH holds USING INDEX idx_holds_user_status"),
+            new Check("HoldService.getUserHolds (miejsce)", """
+                SELECT COUNT(*) FROM holds
+                WHERE title_key = ? AND author_key = ? AND status = 'WAITING' AND id <= ?
+                """, "USING COVERING INDEX idx_holds_title_status"),
+            new Check("HoldService.refreshDueDatesForBook", """
+                SELECT b.title_key, b.author_key FROM books b WHERE b.id = ?
+                 AND EXISTS (SELECT 1 FROM holds h WHERE h.title_key = b.title_key
+                             AND h.author_key = b.author_key AND h.status = 'WAITING')
+                """, "SEARCH h USING COVERING INDEX idx_holds_title_status"),
+            new Check("BookService.assignNewCopiesToHolds", """
+                SELECT b.id FROM books b
+                WHERE b.id > ? AND +b.available = TRUE
+                  AND EXISTS (SELECT 1 FROM holds h WHERE h.title_key = b.title_key
+                              AND h.author_key = b.author_key AND h.status = 'WAITING')
+                ORDER BY b.id
+                """, "SEARCH b USING INTEGER PRIMARY KEY", "SEARCH h USING COVERING INDEX idx_holds_title_status"),
+            new Check("HoldService.refreshDueDates", """
+                SELECT r.expected_return_date
+                FROM books b
+                CROSS JOIN rentals r ON r.book_id = b.id AND r.status = 'ACTIVE'
+                WHERE b.title_key = ? AND b.author_key = ? AND r.expected_return_date IS NOT NULL
+                """, "USING COVERING INDEX idx_books_title_author_key",
+                    "SEARCH r USING INDEX idx_rentals_book_status")
+    );
+
+    public static void main(String[] args) throws Exception {
+        java.io.File file = java.io.File.createTempFile("query-plan-check", ".db");
+        file.deleteOnExit();
+
+        List<String> failures = new ArrayList<>();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+            SchemaMigrations.migrate(conn);
+
+            Set<String> covered = new HashSet<>();
+            for (Check check : CHECKS) {
+                List<String> plan = explain(conn, check.sql);
+                boolean ok = true;
+                for (String expected : check.expected) {
+                    if (plan.stream().anyMatch(line -> line.contains(expected))) {
+                        covered.add(expected.substring(expected.lastIndexOf(' ') + 1));
+                    } else {
+                        ok = false;
+                        failures.add(check.usedBy + ": brak \"" + expected + "\" w planie " + plan);
+                    }
+                }
+                System.out.println((ok ? "OK   " : "BŁĄD ") + check.usedBy + ": " + String.join(" | ", plan));
+            }
+
+            for (SchemaMigrations.IndexDefinition index : SchemaMigrations.getIndexes()) {
+                if (!covered.contains(index.getName())) {
+                    failures.add(index.getName() + " (" + index.getUsedBy() + "): żadne sprawdzane zapytanie go nie używa");
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            failures.forEach(failure -> System.err.println("❌ " + failure));
+            System.exit(1);
+        }
+        System.out.println("✅ Plany zapytań: " + CHECKS.size() + " zapytań, "
+                + SchemaMigrations.getIndexes().size() + " indeksów");
+    }
+
+    private static List<String> explain(Connection conn, String sql) throws SQLException {
+        List<String> plan = new ArrayList<>();
+        // Parametry wiązane bez wartości są w planie traktowane jak NULL - wystarczy do wyboru indeksu
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("EXPLAIN QUERY PLAN " + sql)) {
+            while (rs.next()) {
+                plan.add(rs.getString("detail"));
+            }
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,127 @@
+package database;
+
+import gui.LoginFrame;
+
+import javax.swing.SwingUtilities;
+import java.awt.GraphicsEnvironment;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Pomiar czasu uruchomienia: od startu JVM do zakończenia DatabaseInitializer.initializeDatabase()
+ * i do wyświetlenia okna logowania (tylko gdy jest ekran - bez niego pomiar kończy się
+ * na bazie, a okno jest pomijane). Uruchamiany ręcznie w katalogu z database/library.db:
+ * - bez argumentów: jeden pomiar, wynik w jednej linii na standardowym wyjściu,
+ * - generate KSIĄŻKI WYPOŻYCZENIA: tworzy bazę testową (użytkownicy, książki, wypożyczenia
+ *   - co dziesiąte aktywne - i prośby o przedłużenie) tylko przez kolumny schematu bazowego,
+ *   więc działa także ze starszymi wersjami DatabaseInitializer.
+ */
+public class StartupTimer {
+    private static final int USERS = 1_000;
+    private static final int BATCH = 10_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 3 && "generate".equals(args[0])) {
+            generate(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            System.exit(0);
+        }
+
+        long start = System.nanoTime();
+        DatabaseInitializer.initializeDatabase();
+        long databaseMillis = sinceJvmStart();
+        long initMillis = (System.nanoTime() - start) / 1_000_000;
+
+        String window = "pominięte (brak ekranu)";
+        if (!GraphicsEnvironment.isHeadless()) {
+            SwingUtilities.invokeAndWait(() -> new LoginFrame().setVisible(true));
+            window = sinceJvmStart() + " ms";
+        }
+        System.out.println("initializeDatabase: " + initMillis + " ms, baza gotowa: " + databaseMillis
+                + " ms od startu JVM, okno: " + window);
+        System.exit(0);
+    }
+
+    private static long sinceJvmStart() {
+        return System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    private static void generate(int books, int rentals) throws Exception {
+        DatabaseInitializer.initializeDatabase();
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:database/library.db")) {
+            conn.setAutoCommit(false);
+            int firstUser;
+            int firstBook;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                         "SELECT COALESCE(MAX(id), 0) + 1, (SELECT COALESCE(MAX(id), 0) + 1 FROM books) FROM users")) {
+                rs.next();
+                firstUser = rs.getInt(1);
+                firstBook = rs.getInt(2);
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO users (username, password, email, is_admin, created_at) VALUES (?, 'haslo', NULL, FALSE, DATE('now'))")) {
+                for (int i = 0; i < USERS; i++) {
+                    pstmt.setString(1, "czytelnik" + i);
+                    add(pstmt, i);
+                }
+                pstmt.executeBatch();
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "INSERT INTO books (isbn, title, author, publisher, year, available, created_at) VALUES (?, ?, ?, ?, ?, ?, DATE('now'))")) {
+                for (int i = 0; i < books; i++) {
+                    pstmt.setString(1, String.format("978%010d", i));
+                    pstmt.setString(2, "Tytuł " + i / 3);
+                    pstmt.setString(3, "Autor " + i % 5_000);
+                    pstmt.setString(4, "Wydawnictwo " + i % 200);
+                    pstmt.setInt(5, 1950 + i % 75);
+                    pstmt.setBoolean(6, i % 10 != 0);
+                    add(pstmt, i);
+                }
+                pstmt.executeBatch();
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement("""
+                    INSERT INTO rentals (user_id, book_id, rent_date, return_date, expected_return_date, status, extension_count)
+                    VALUES (?, ?, DATE('now', '-20 days'), ?, DATE('now', '-6 days'), ?, 0)
+                    """)) {
+                for (int i = 0; i < rentals; i++) {
+                    boolean active = i % 10 == 0;
+                    pstmt.setInt(1, firstUser + i % USERS);
+                    pstmt.setInt(2, firstBook + i % books);
+                    pstmt.setString(3, active ? null : "2026-01-01");
+                    pstmt.setString(4, active ? "ACTIVE" : "RETURNED");
+                    add(pstmt, i);
+                }
+                pstmt.executeBatch();
+            }
+
+            try (PreparedStatement pstmt = conn.prepareStatement("""
+                    INSERT INTO extension_requests (rental_id, user_id, requested_days, request_date, status)
+                    VALUES (?, ?, 7, DATE('now', '-3 days'), ?)
+                    """)) {
+                for (int i = 0; i < rentals / 100; i++) {
+                    pstmt.setInt(1, 1 + i * 100);
+                    pstmt.setInt(2, firstUser + i * 100 % USERS);
+                    pstmt.setString(3, i % 5 == 0 ? "PENDING" : "APPROVED");
+                    add(pstmt, i);
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        }
+        System.out.println("Baza testowa: " + books + " książek, " + rentals + " wypożyczeń");
+    }
+
+    private static void add(PreparedStatement pstmt, int row) throws Exception {
+        pstmt.addBatch();
+        if (row % BATCH == BATCH - 1) {
+            pstmt.executeBatch();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package database;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sprawdza, że zapytanie oddane do cache (StatementCache) nie przenosi stanu do następnego
+ * użytkownika połączenia zapisu: polecenie kolejki zapisów przerwane w połowie batcha,
+ * a potem wykonane ponownie, zapisuje tylko swoje wiersze, a zmieniony max rows / fetch size
+ * nie obowiązuje kolejnego wykonania. Uruchamiany ręcznie (main) w pustym katalogu
+ * roboczym - tworzy tam database/library.db; kod wyjścia 1, gdy coś się nie zgadza.
+ */
+public class StatementCacheCheck {
+    private static final String INSERT_SQL = "INSERT INTO cache_check (value) VALUES (?)";
+    private static final String SELECT_SQL = "SELECT value FROM cache_check ORDER BY value";
+
+    private static final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        if (new File("database/library.db").exists()) {
+            System.err.println("❌ database/library.db już istnieje - uruchom w pustym katalogu roboczym");
+            System.exit(1);
+        }
+        new File("database").mkdirs();
+
+        try {
+            DatabaseManager.submitWrite(conn -> {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("CREATE TABLE cache_check (value INTEGER)");
+                }
+                return null;
+            }).get();
+
+            // 1. Batch przerwany po pierwszym wierszu - polecenie kończy się błędem
+            try {
+                DatabaseManager.submitWrite(conn -> {
+                    try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                        pstmt.setInt(1, 1);
+                        pstmt.addBatch();
+                        throw new SQLException("Przerwanie w połowie batcha");
+                    }
+                }).get();
+                failures.add("Przerwane polecenie zakończyło się powodzeniem");
+            } catch (ExecutionException expected) {
+                // Oczekiwane
+            }
+
+            // 2. Ponowne wykonanie tego samego polecenia z innym wierszem
+            int[] counts = DatabaseManager.submitWrite(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                    pstmt.setInt(1, 2);
+                    pstmt.addBatch();
+                    return pstmt.executeBatch();
+                }
+            }).get();
+            expect("wiersze wykonanego batcha", 1, counts.length);
+            expect("zawartość tabeli", List.of(2), readValues(false));
+
+            // 3. Ustawienia zapytania nie przechodzą na następne wykonanie
+            DatabaseManager.submitWrite(conn -> {
+                try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL)) {
+                    pstmt.setInt(1, 3);
+                    pstmt.addBatch();
+                    return pstmt.executeBatch();
+                }
+            }).get();
+            expect("wiersze przy max rows = 1", List.of(2), readValues(true));
+            expect("wiersze po oddaniu zapytania", List.of(2, 3), readValues(false));
+        } finally {
+            DatabaseManager.closeConnection();
+        }
+
+        if (!failures.isEmpty()) {
+            failures.forEach(failure -> System.err.println("❌ " + failure));
+            System.exit(1);
+        }
+        System.out.println("✅ Cache zapytań: batch i ustawienia nie przechodzą między użyciami");
+    }
+
+    // Odczyt w poleceniu kolejki zapisów - to samo połączenie i ten sam cache co zapisy
+    private static List<Integer> readValues(boolean limitToOne) throws Exception {
+        return DatabaseManager.submitWrite(conn -> {
+            List<Integer> values = new ArrayList<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(SELECT_SQL)) {
+                if (limitToOne) {
+                    pstmt.setMaxRows(1);
+                    pstmt.setFetchSize(1);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        values.add(rs.getInt(1));
+                    }
+                }
+            }
+            return values;
+        }).get();
+    }
+
+    private static void expect(String what, Object expected, Object actual) {
+        if (!expected.equals(actual)) {
+            failures.add(what + ": oczekiwano " + expected + ", jest " + actual);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package services;
+
+import database.DatabaseInitializer;
+import database.DatabaseManager;
+import models.Book;
+import models.User;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test obciążeniowy wypożyczeń: wiele wątków (stanowisk) naraz wypożycza i zwraca te same
+ * egzemplarze pojedynczo (checkoutBook, checkinBook) i paczkami (rentBooks, returnBooks).
+ * Sprawdza, że warunkowe zajęcie egzemplarza nie pozwala wypożyczyć go dwa razy,
+ * zwrot kończy wypożyczenie dokładnie raz, a dostępność w bazie i w katalogu w pamięci
+ * zgadza się z aktywnymi wypożyczeniami. Uruchamiany ręcznie (main) w pustym katalogu
+ * roboczym - tworzy tam database/library.db; kod wyjścia 1, gdy coś się nie zgadza.
+ */
+public class RentalConcurrencyCheck {
+    private static final int THREADS = 16;
+    private static final int COPIES = 60;
+    private static final int BATCH_SIZE = 5;
+    private static final int CHURN_ROUNDS = 200;
+
+    private static final List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+    private final BookService bookService = new BookService();
+    private final RentalService rentalService = new RentalService();
+
+    public static void main(String[] args) throws Exception {
+        if (new File("database/library.db").exists()) {
+            System.err.println("❌ database/library.db już istnieje - uruchom w pustym katalogu roboczym");
+            System.exit(1);
+        }
+        DatabaseInitializer.initializeDatabase();
+
+        RentalConcurrencyCheck check = new RentalConcurrencyCheck();
+        ExecutorService desks = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Integer> userIds = check.createUsers();
+            List<Integer> bookIds = check.createCopies();
+            // Katalog w pamięci wczytany przed testem - sprawdzamy też zmiany po zatwierdzeniu
+            CatalogueIndex.getInstance();
+
+            check.rentSameCopies(desks, userIds, bookIds);
+            check.returnSameRentals(desks);
+            check.churn(desks, userIds, bookIds);
+        } finally {
+            desks.shutdown();
+            DatabaseManager.closeConnection();
+        }
+
+        if (!failures.isEmpty()) {
+            failures.forEach(failure -> System.err.println("❌ " + failure));
+            System.exit(1);
+        }
+        System.out.println("✅ Wypożyczenia współbieżne: bez podwójnych wypożyczeń i zwrotów");
+    }
+
+    private List<Integer> createUsers() throws SQLException {
+        UserService userService = new UserService();
+        for (int i = 0; i < THREADS; i++) {
+            userService.register(new User("stanowisko" + i, "haslo", null, false));
+        }
+        return queryIds("SELECT id FROM users WHERE username LIKE 'stanowisko%' ORDER BY id");
+    }
+
+    private List<Integer> createCopies() throws SQLException {
+        for (int i = 0; i < COPIES; i++) {
+            // Po kilka egzemplarzy tego samego tytułu
+            bookService.addBook(new Book(null, "Tytuł " + (i / 3), "Autor " + (i / 3), "Wydawnictwo", 2000 + i % 20));
+        }
+        // Razem z przykładowymi książkami z migracji 2
+        return queryIds("SELECT id FROM books ORDER BY id");
+    }
+
+    /**
+     * Każde stanowisko próbuje wypożyczyć każdy egzemplarz - co druga pojedynczo, co druga paczkami.
+     * Każdy egzemplarz może mieć dokładnie jeden SUCCESS.
+     */
+    private void rentSameCopies(ExecutorService desks, List<Integer> userIds, List<Integer> bookIds) throws Exception {
+        Map<Integer, AtomicInteger> successes = new ConcurrentHashMap<>();
+        AtomicInteger notAvailable = new AtomicInteger();
+        runOnAllDesks(desks, desk -> {
+            List<Integer> order = new ArrayList<>(bookIds);
+            Collections.shuffle(order, new Random(desk));
+            int userId = userIds.get(desk);
+            if (desk % 2 == 0) {
+                for (int bookId : order) {
+                    count(bookId, rentalService.checkoutBook(userId, bookId), successes, notAvailable);
+                }
+            } else {
+                for (int from = 0; from < order.size(); from += BATCH_SIZE) {
+                    List<Integer> batch = order.subList(from, Math.min(from + BATCH_SIZE, order.size()));
+                    rentalService.rentBooks(userId, batch)
+                            .forEach((bookId, outcome) -> count(bookId, outcome, successes, notAvailable));
+                }
+            }
+        });
+
+        for (int bookId : bookIds) {
+            int count = successes.getOrDefault(bookId, new AtomicInteger()).get();
+            if (count != 1) {
+                failures.add("Egzemplarz " + bookId + " wypożyczony " + count + " razy");
+            }
+        }
+        expect("BOOK_NOT_AVAILABLE", THREADS * bookIds.size() - bookIds.size(), notAvailable.get());
+        checkInvariants("po wypożyczeniu");
+        System.out.println("Wypożyczenie: " + THREADS * bookIds.size() + " prób, " + bookIds.size() + " sukcesów, "
+                + notAvailable.get() + " odmów");
+    }
+
+    /**
+     * Każde stanowisko zwraca wszystkie aktywne wypożyczenia - każde może się zakończyć tylko raz
+     */
+    private void returnSameRentals(ExecutorService desks) throws Exception {
+        List<Integer> rentalIds = queryIds("SELECT id FROM rentals WHERE status = 'ACTIVE' ORDER BY id");
+        Map<Integer, AtomicInteger> successes = new ConcurrentHashMap<>();
+        AtomicInteger alreadyReturned = new AtomicInteger();
+        runOnAllDesks(desks, desk -> {
+            List<Integer> order = new ArrayList<>(rentalIds);
+            Collections.shuffle(order, new Random(desk));
+            if (desk % 2 == 0) {
+                for (int rentalId : order) {
+                    count(rentalId, rentalService.checkinBook(rentalId), successes, alreadyReturned);
+                }
+            } else {
+                for (int from = 0; from < order.size(); from += BATCH_SIZE) {
+                    List<Integer> batch = order.subList(from, Math.min(from + BATCH_SIZE, order.size()));
+                    rentalService.returnBooks(batch)
+                            .forEach((rentalId, outcome) -> count(rentalId, outcome, successes, alreadyReturned));
+                }
+            }
+        });
+
+        for (int rentalId : rentalIds) {
+            int count = successes.getOrDefault(rentalId, new AtomicInteger()).get();
+            if (count != 1) {
+                failures.add("Wypożyczenie " + rentalId + " zakończone " + count + " razy");
+            }
+        }
+        expect("ALREADY_RETURNED", THREADS * rentalIds.size() - rentalIds.size(), alreadyReturned.get());
+        expect("aktywne wypożyczenia po zwrocie", 0, queryIds("SELECT id FROM rentals WHERE status = 'ACTIVE'").size());
+        checkInvariants("po zwrocie");
+        System.out.println("Zwrot: " + THREADS * rentalIds.size() + " prób, " + rentalIds.size() + " sukcesów, "
+                + alreadyReturned.get() + " odmów");
+    }
+
+    /**
+     * Losowe wypożyczenia i zwroty na przemian - po wszystkim stan musi być spójny
+     */
+    private void churn(ExecutorService desks, List<Integer> userIds, List<Integer> bookIds) throws Exception {
+        AtomicInteger operations = new AtomicInteger();
+        runOnAllDesks(desks, desk -> {
+            Random random = new Random(1000 + desk);
+            int userId = userIds.get(desk);
+            for (int round = 0; round < CHURN_ROUNDS; round++) {
+                List<Integer> batch = new ArrayList<>();
+                for (int i = 0; i < 1 + random.nextInt(BATCH_SIZE); i++) {
+                    batch.add(bookIds.get(random.nextInt(bookIds.size())));
+                }
+                if (random.nextBoolean()) {
+                    rentalService.rentBooks(userId, batch);
+                } else if (random.nextBoolean()) {
+                    rentalService.checkoutBook(userId, batch.get(0));
+                } else {
+                    List<Integer> active = new ArrayList<>();
+                    rentalService.getUserRentals(userId).forEach(rental -> active.add(rental.getId()));
+                    if (!active.isEmpty()) {
+                        // Część zwrotów powtarza się celowo - także między paczką a pojedynczym zwrotem
+                        Collections.shuffle(active, random);
+                        rentalService.returnBooks(active.subList(0, Math.min(active.size(), BATCH_SIZE)));
+                        rentalService.checkinBook(active.get(0));
+                    }
+                }
+                operations.incrementAndGet();
+            }
+        });
+        checkInvariants("po losowych operacjach");
+        System.out.println("Losowe operacje: " + operations.get());
+    }
+
+    /**
+     * Najwyżej jedno aktywne wypożyczenie na egzemplarz, a egzemplarz jest dostępny
+     * dokładnie wtedy, gdy nie ma aktywnego wypożyczenia - w bazie i w katalogu w pamięci
+     */
+    private void checkInvariants(String stage) throws SQLException {
+        List<Integer> doubled = queryIds("""
+            SELECT book_id FROM rentals WHERE status = 'ACTIVE'
+            GROUP BY book_id HAVING COUNT(*) > 1
+            """);
+        if (!doubled.isEmpty()) {
+            failures.add(stage + ": egzemplarze z więcej niż jednym aktywnym wypożyczeniem: " + doubled);
+        }
+
+        List<Integer> inconsistent = queryIds("""
+            SELECT b.id FROM books b
+            WHERE b.available = EXISTS (SELECT 1 FROM rentals r WHERE r.book_id = b.id AND r.status = 'ACTIVE')
+            """);
+        if (!inconsistent.isEmpty()) {
+            failures.add(stage + ": dostępność niezgodna z wypożyczeniami: " + inconsistent);
+        }
+
+        List<Integer> available = queryIds("SELECT id FROM books WHERE available = TRUE ORDER BY id");
+        List<Integer> catalogue = new ArrayList<>();
+        bookService.getAvailableBooks().forEach(book -> catalogue.add(book.getId()));
+        Collections.sort(catalogue);
+        if (!available.equals(catalogue)) {
+            failures.add(stage + ": katalog w pamięci ma " + catalogue.size() + " dostępnych, baza " + available.size());
+        }
+    }
+
+    private interface Desk {
+        void run(int desk) throws Exception;
+    }
+
+    // Wszystkie stanowiska startują razem, żeby ich operacje się przeplatały
+    private static void runOnAllDesks(ExecutorService desks, Desk task) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            int desk = i;
+            futures.add(desks.submit(() -> {
+                start.await();
+                task.run(desk);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static void count(int id, RentalService.RentalOutcome outcome,
+                              Map<Integer, AtomicInteger> successes, AtomicInteger refused) {
+        if (outcome == RentalService.RentalOutcome.SUCCESS) {
+            successes.computeIfAbsent(id, key -> new AtomicInteger()).incrementAndGet();
+        } else if (outcome == RentalService.RentalOutcome.BOOK_NOT_AVAILABLE
+                || outcome == RentalService.RentalOutcome.ALREADY_RETURNED) {
+            refused.incrementAndGet();
+        } else {
+            failures.add("Nieoczekiwany wynik dla " + id + ": " + outcome);
+        }
+    }
+
+    private static void expect(String what, int expected, int actual) {
+        if (expected != actual) {
+            failures.add(what + ": oczekiwano " + expected + ", jest " + actual);
+        }
+    }
+
+    private static List<Integer> queryIds(String sql) throws SQLException {
+        List<Integer> ids = new ArrayList<>();
+        try (Connection conn = DatabaseManager.getReadConnection();
+             PreparedStatement pstmt = conn.prepareStatement(sql);
+             ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                ids.add(rs.getInt(1));
+            }
+        }
+        return ids;
+    }
+}